@@ -0,0 +1,125 @@
+package timely.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import timely.core.TimesheetEntry;
+import timely.service.Query;
+import timely.service.RecordsService;
+import timely.store.RecordStore;
+
+/**
+ * Stress test of searches during sustained ingest: one thread imports
+ * batches while two search them, and every search checks it saw each batch
+ * whole or not at all.
+ *
+ * All the entries of batch k have project code Bk and department Dk, and
+ * nothing else has either. A search for both terms is driven by one index
+ * and checked against the other, so it returns all of the batch or none of
+ * it, unless it saw the batch half-imported (or one index ahead of the
+ * other): a torn read, which fails the benchmark.
+ *
+ * Read latency percentiles under ingest come from the "ingest" group's
+ * search; the "idle" group's is the same search with no writer, for
+ * comparison.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class ConcurrentIngestBenchmark {
+	@Param({"10000", "1000000"})
+	int rows;
+
+	@Param({"1000"})
+	int batchSize;
+
+	@Param({"HASH", "COLUMNAR"})
+	RecordStore.Type store;
+
+	private final EntryGenerator generator = new EntryGenerator();
+	private RecordsService recSvc;
+	// batches whose import has started
+	private volatile int batches;
+
+	/**
+	 * Per searching thread: which batches to look for.
+	 */
+	@State(Scope.Thread)
+	public static class Reader {
+		final SplittableRandom random = new SplittableRandom(7);
+	}
+
+	@Setup(Level.Trial)
+	public void load() {
+		recSvc = Datasets.load(store, rows);
+		// a few complete batches, so idle searches have something to find
+		for (int i = 0; i < 4; i++) {
+			ingest();
+		}
+	}
+
+	@Benchmark
+	@Group("ingest")
+	@GroupThreads(1)
+	public int ingest() {
+		int batch = batches++;
+		long first = rows + (long) batch * batchSize;
+		List<TimesheetEntry> entries = new ArrayList<>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			entries.add(tagged(generator.entry(first + i), batch));
+		}
+		return recSvc.importRecords(entries);
+	}
+
+	@Benchmark
+	@Group("ingest")
+	@GroupThreads(2)
+	public int search(Reader reader) {
+		return searchBatch(reader.random.nextInt(batches + 1));
+	}
+
+	@Benchmark
+	@Group("idle")
+	@GroupThreads(2)
+	public int searchIdle(Reader reader) {
+		return searchBatch(reader.random.nextInt(batches));
+	}
+
+	// Searches for one batch, failing on a torn read
+	private int searchBatch(int batch) {
+		Query query = new Query().where("projectCode", "B" + batch).where("department", "D" + batch);
+		int found = recSvc.find(query).getEntries().size();
+		if ( found != 0 && found != batchSize ) {
+			throw new IllegalStateException("Torn read: " + found + " of the " + batchSize + " entries of batch " + batch);
+		}
+		return found;
+	}
+
+	// The entry, tagged with its batch
+	private static TimesheetEntry tagged(TimesheetEntry e, int batch) {
+		return new TimesheetEntry(e.getDate(), e.getClient(), e.getProject(), "B" + batch, e.getTask(),
+				e.getHours(), e.getHoursRounded(), e.getIsBillable(), e.getIsInvoiced(), e.getIsApproved(),
+				e.getFirstName(), e.getLastName(), "D" + batch, e.getIsEmployee(),
+				e.getBillableRate(), e.getCostRate(), e.getCostAmount(), e.getCurrency(), e.getExternalRefURL());
+	}
+}
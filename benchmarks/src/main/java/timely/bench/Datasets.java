@@ -0,0 +1,39 @@
+package timely.bench;
+
+import java.util.List;
+
+import timely.TimelyConfiguration;
+import timely.core.TimesheetEntry;
+import timely.service.RecordsService;
+import timely.store.RecordStore;
+
+/**
+ * Builds the services benchmarks run against, loaded with generated entries.
+ */
+public final class Datasets {
+	// Entries per importRecords call, as in the default importBatchSize
+	public static final int BATCH_SIZE = 10000;
+
+	private Datasets() {
+	}
+
+	/**
+	 * @return an empty service on the given store, keeping the default rollups
+	 */
+	public static RecordsService newService(RecordStore.Type store) {
+		return new RecordsService(RecordStore.create(store), new TimelyConfiguration().getRollups());
+	}
+
+	/**
+	 * @return a service holding entries 0 to rows - 1 of the default generator
+	 */
+	public static RecordsService load(RecordStore.Type store, int rows) {
+		RecordsService recSvc = newService(store);
+		EntryGenerator generator = new EntryGenerator();
+		for (int from = 0; from < rows; from += BATCH_SIZE) {
+			List<TimesheetEntry> batch = generator.entries(from, Math.min(BATCH_SIZE, rows - from));
+			recSvc.importRecords(batch);
+		}
+		return recSvc;
+	}
+}
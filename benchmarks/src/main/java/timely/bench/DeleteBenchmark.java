@@ -0,0 +1,70 @@
+package timely.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import timely.core.TimesheetEntry;
+import timely.service.RecordsService;
+import timely.store.RecordStore;
+
+/**
+ * Deleting one entry from a loaded service, given the entry (as the
+ * DELETE /timeEntry body) or its id. Before each call the entry deleted by
+ * the previous one is put back (untimed), so the service stays full.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeleteBenchmark {
+	@Param({"10000", "1000000", "10000000"})
+	int rows;
+
+	@Param({"HASH", "COLUMNAR"})
+	RecordStore.Type store;
+
+	private final EntryGenerator generator = new EntryGenerator();
+	private RecordsService recSvc;
+	private long next;
+	private TimesheetEntry victim;
+	private int victimId;
+
+	@Setup(Level.Trial)
+	public void load() {
+		recSvc = Datasets.load(store, rows);
+	}
+
+	@Setup(Level.Invocation)
+	public void nextVictim() {
+		if ( victim != null ) {
+			recSvc.createEntry(victim);
+		}
+		victim = generator.entry(next++ % rows);
+		// stored already, so this just looks up its id
+		victimId = recSvc.createEntry(victim);
+	}
+
+	@Benchmark
+	public boolean deleteEntry() {
+		return recSvc.deleteEntry(victim);
+	}
+
+	@Benchmark
+	public boolean deleteEntryById() {
+		return recSvc.deleteEntry(victimId);
+	}
+}
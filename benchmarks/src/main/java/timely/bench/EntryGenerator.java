@@ -0,0 +1,184 @@
+package timely.bench;
+
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import timely.core.TimesheetEntry;
+
+/**
+ * Deterministic synthetic timesheet entries. Entry i depends only on the
+ * seed and i, so a data set can be rebuilt, streamed or sliced anywhere and
+ * still be the same, run after run.
+ *
+ * Cardinalities are those of a mid-sized consultancy: 2,000 people (40
+ * first names by 50 last names) in 11 departments plus a blank one, one in
+ * ten of them contractors; 8 clients, the larger ones booking most hours,
+ * with 5 projects each; 5,000 distinct tasks; three years of dates. Every
+ * entry has its own external reference, so no two entries are equal.
+ */
+public final class EntryGenerator {
+	public static final long DEFAULT_SEED = 42;
+
+	// Column headings of a CSV export, as UploadTask expects them
+	public static final String CSV_HEADINGS = "Date,Client,Project,Project Code,Task,Hours,Hours Rounded,"
+			+ "Billable?,Invoiced?,Approved?,First Name,Last Name,Department,Employee?,"
+			+ "Billable Rate,Cost Rate,Cost Amount,Currency,External Reference URL";
+
+	static final String[] CLIENTS = {
+			"Acme", "Globex", "Initech", "Umbrella", "Hooli", "Stark Industries", "Wayne Enterprises", "Cyberdyne" };
+	// Share of entries per client, in percent
+	private static final int[] CLIENT_WEIGHTS = { 30, 20, 15, 10, 10, 7, 5, 3 };
+	private static final int PROJECTS_PER_CLIENT = 5;
+	static final String[] DEPARTMENTS = {
+			"", "Eng", "QA", "Design", "Ops", "Data", "Security", "Support", "Sales", "Finance", "Legal", "HR" };
+	private static final String[] FIRST_NAMES = {
+			"James", "Mary", "John", "Patricia", "Robert", "Jennifer", "Michael", "Linda", "William", "Elizabeth",
+			"David", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+			"Wei", "Aiko", "Ravi", "Priya", "Olga", "Ivan", "Fatima", "Omar", "Lucia", "Mateo",
+			"Eve", "Bob", "Alice", "Carol", "Dan", "Erin", "Frank", "Grace", "Heidi", "Ivy" };
+	private static final String[] LAST_NAMES = {
+			"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+			"Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+			"Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson",
+			"Walker", "Young", "Allen", "King", "Wright", "Scott", "Torres", "Nguyen", "Hill", "Flores",
+			"Green", "Adams", "Nelson", "Baker", "Hall", "Rivera", "Campbell", "Mitchell", "Carter", "McAllister" };
+	static final int PEOPLE = FIRST_NAMES.length * LAST_NAMES.length;
+	private static final String[] TASK_KINDS = {
+			"Design", "Development", "Testing", "Meetings", "Code review", "Deployment", "Support", "Planning",
+			"Documentation", "Research" };
+	private static final int TASKS_PER_KIND = 500;
+	private static final long FIRST_DAY = LocalDate.of(2015, 1, 1).toEpochDay();
+	private static final int DAYS = 3 * 365;
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("M/d/yyyy");
+
+	private final long seed;
+
+	public EntryGenerator() {
+		this(DEFAULT_SEED);
+	}
+
+	public EntryGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the i-th entry
+	 */
+	public TimesheetEntry entry(long i) {
+		SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + i);
+		int person = random.nextInt(PEOPLE);
+		int client = client(random.nextInt(100));
+		int project = random.nextInt(PROJECTS_PER_CLIENT);
+		String task = TASK_KINDS[random.nextInt(TASK_KINDS.length)] + " " + random.nextInt(TASKS_PER_KIND);
+		String date = LocalDate.ofEpochDay(FIRST_DAY + random.nextInt(DAYS)).format(DATE_FORMAT);
+		double hours = random.nextInt(1, 1001) / 100.0;
+		double hoursRounded = Math.round(hours * 4) / 4.0;
+		boolean billable = random.nextInt(10) < 8;
+		boolean invoiced = billable && random.nextBoolean();
+		boolean approved = random.nextInt(10) < 7;
+		int billableRate = 100 + 25 * (person % 6);
+		int costRate = 50 + 10 * (person % 5);
+
+		return new TimesheetEntry(date,
+				CLIENTS[client],
+				"Proj " + CLIENTS[client].charAt(0) + (project + 1),
+				"P" + (100 + client * PROJECTS_PER_CLIENT + project),
+				task,
+				hours,
+				hoursRounded,
+				yesNo(billable),
+				yesNo(invoiced),
+				yesNo(approved),
+				FIRST_NAMES[person % FIRST_NAMES.length],
+				LAST_NAMES[person / FIRST_NAMES.length],
+				DEPARTMENTS[person % DEPARTMENTS.length],
+				yesNo(person % 10 != 0),
+				billableRate,
+				costRate,
+				(int) Math.round(hours * costRate),
+				"USD",
+				"https://tracker.example.com/T-" + i);
+	}
+
+	/**
+	 * @return entries from, from + 1, ..., from + count - 1
+	 */
+	public List<TimesheetEntry> entries(long from, int count) {
+		List<TimesheetEntry> entries = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			entries.add(entry(from + i));
+		}
+		return entries;
+	}
+
+	/**
+	 * @return the i-th entry as a line of a CSV export (without line separator)
+	 */
+	public String csvLine(long i) {
+		TimesheetEntry e = entry(i);
+		return String.join(",", e.getDate(), e.getClient(), e.getProject(), e.getProjectCode(), e.getTask(),
+				Double.toString(e.getHours()), Double.toString(e.getHoursRounded()),
+				e.getIsBillable(), e.getIsInvoiced(), e.getIsApproved(),
+				e.getFirstName(), e.getLastName(), e.getDepartment(), e.getIsEmployee(),
+				Integer.toString(e.getBillableRate()), Integer.toString(e.getCostRate()), Integer.toString(e.getCostAmount()),
+				e.getCurrency(), e.getExternalRefURL());
+	}
+
+	/**
+	 * @return a CSV export of entries 0 to rows - 1, with headings, generated
+	 *         as it's read (so it takes no memory however many rows)
+	 */
+	public Reader csv(long rows) {
+		return new CsvReader(rows);
+	}
+
+	// Client index for a percentile, per CLIENT_WEIGHTS
+	private static int client(int percentile) {
+		int client = 0;
+		for (int total = CLIENT_WEIGHTS[0]; percentile >= total; total += CLIENT_WEIGHTS[client]) {
+			client++;
+		}
+		return client;
+	}
+
+	private static String yesNo(boolean value) {
+		return value ? "Yes" : "No";
+	}
+
+	private final class CsvReader extends Reader {
+		private final long rows;
+		private final StringBuilder buffer = new StringBuilder(CSV_HEADINGS).append('\n');
+		private int position;
+		private long next;
+
+		CsvReader(long rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public int read(char[] chars, int offset, int length) {
+			if ( position == buffer.length() ) {
+				if ( next == rows ) {
+					return -1;
+				}
+				buffer.setLength(0);
+				position = 0;
+				for (int i = 0; i < 64 && next < rows; i++) {
+					buffer.append(csvLine(next++)).append('\n');
+				}
+			}
+			int n = Math.min(length, buffer.length() - position);
+			buffer.getChars(position, position + n, chars, offset);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package timely.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import timely.core.TimesheetEntry;
+import timely.service.RecordsService;
+import timely.store.RecordStore;
+
+/**
+ * RecordsService.importRecords of a whole data set, in batches, into an
+ * empty service. With duplicatePercent above 0, that share of the entries
+ * repeats earlier ones (as equal, but distinct, objects) and is skipped.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+	@Param({"10000", "1000000", "10000000"})
+	int rows;
+
+	@Param({"0", "50"})
+	int duplicatePercent;
+
+	@Param({"HASH", "COLUMNAR"})
+	RecordStore.Type store;
+
+	private List<List<TimesheetEntry>> batches;
+	private RecordsService recSvc;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		EntryGenerator generator = new EntryGenerator();
+		long distinct = Math.max(1, (long) rows * (100 - duplicatePercent) / 100);
+		batches = new ArrayList<>();
+		for (int from = 0; from < rows; from += Datasets.BATCH_SIZE) {
+			int size = Math.min(Datasets.BATCH_SIZE, rows - from);
+			List<TimesheetEntry> batch = new ArrayList<>(size);
+			for (int i = from; i < from + size; i++) {
+				batch.add(generator.entry(i % distinct));
+			}
+			batches.add(batch);
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void emptyService() {
+		recSvc = Datasets.newService(store);
+	}
+
+	@Benchmark
+	public int importRecords() {
+		int imported = 0;
+		for (List<TimesheetEntry> batch : batches) {
+			imported += recSvc.importRecords(batch);
+		}
+		return imported;
+	}
+}
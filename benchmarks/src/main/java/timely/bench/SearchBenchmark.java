@@ -0,0 +1,83 @@
+package timely.bench;
+
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import timely.core.TimesheetEntry;
+import timely.service.Page;
+import timely.service.Query;
+import timely.service.RecordsService;
+import timely.store.RecordStore;
+
+/**
+ * Searches of a loaded service: one term (findFieldWithValue) and three
+ * terms, each with and without date bounds. Successive calls cycle through
+ * the term values, so one lucky value doesn't decide the result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+	private static final String[] LAST_NAMES = { "Smith", "Nguyen", "McAllister", "Garcia", "Walker" };
+	private static final String[][] MULTI_TERMS = {
+			{ "Acme", "Eng", "No" }, { "Globex", "QA", "Yes" }, { "Hooli", "Ops", "No" }, { "Cyberdyne", "Data", "Yes" } };
+	// One quarter of the three years generated
+	private static final LocalDate START = LocalDate.of(2016, 4, 1);
+	private static final LocalDate END = LocalDate.of(2016, 6, 30);
+
+	@Param({"10000", "1000000", "10000000"})
+	int rows;
+
+	@Param({"HASH", "COLUMNAR"})
+	RecordStore.Type store;
+
+	private RecordsService recSvc;
+	private int call;
+
+	@Setup(Level.Trial)
+	public void load() {
+		recSvc = Datasets.load(store, rows);
+	}
+
+	@Benchmark
+	public Set<TimesheetEntry> singleTerm() {
+		return recSvc.findFieldWithValue("lastName", LAST_NAMES[call++ % LAST_NAMES.length], null, null);
+	}
+
+	@Benchmark
+	public Set<TimesheetEntry> singleTermDated() {
+		return recSvc.findFieldWithValue("lastName", LAST_NAMES[call++ % LAST_NAMES.length], START, END);
+	}
+
+	@Benchmark
+	public Page multiTerm() {
+		return recSvc.find(multiTermQuery());
+	}
+
+	@Benchmark
+	public Page multiTermDated() {
+		return recSvc.find(multiTermQuery().between(START, END));
+	}
+
+	private Query multiTermQuery() {
+		String[] terms = MULTI_TERMS[call++ % MULTI_TERMS.length];
+		return new Query().where("client", terms[0]).where("department", terms[1]).where("isApproved", terms[2]);
+	}
+}
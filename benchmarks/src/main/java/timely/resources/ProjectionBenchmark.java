@@ -0,0 +1,91 @@
+package timely.resources;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import io.dropwizard.jackson.Jackson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import timely.bench.Datasets;
+import timely.core.TimesheetEntry;
+import timely.service.Query;
+import timely.store.RecordStore;
+
+/**
+ * Writing one project's entries (about 6% of the rows) as the JSON of
+ * GET /timeEntry: every field, showFields (filter in) and removeFields
+ * (filter out). Output goes nowhere; returns the bytes written.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProjectionBenchmark {
+	@Param({"10000", "1000000", "10000000"})
+	int rows;
+
+	@Param({"HASH", "COLUMNAR"})
+	RecordStore.Type store;
+
+	private final JsonFactory jsonFactory = Jackson.newObjectMapper().getFactory();
+	private List<TimesheetEntry> entries;
+
+	@Setup(Level.Trial)
+	public void load() {
+		entries = Datasets.load(store, rows).find(new Query().where("project", "Proj A1")).getEntries();
+	}
+
+	@Benchmark
+	public long allFields() throws IOException {
+		return write(Projection.ALL);
+	}
+
+	@Benchmark
+	public long filterIn() throws IOException {
+		return write(Projection.including("date,client,project,hours,firstName,lastName".split(",")));
+	}
+
+	@Benchmark
+	public long filterOut() throws IOException {
+		return write(Projection.excluding("task,externalRefURL,currency".split(",")));
+	}
+
+	private long write(Projection projection) throws IOException {
+		CountingSink sink = new CountingSink();
+		projection.asJson(jsonFactory, entries).write(sink);
+		return sink.count;
+	}
+
+	// Discards what's written, counting it
+	private static final class CountingSink extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
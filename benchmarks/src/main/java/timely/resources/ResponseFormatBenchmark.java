@@ -0,0 +1,106 @@
+package timely.resources;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import io.dropwizard.jackson.Jackson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import timely.bench.Datasets;
+import timely.core.TimesheetEntry;
+import timely.service.Query;
+import timely.store.RecordStore;
+
+/**
+ * Writing one project's entries (about 6% of the rows) in each of the
+ * encodings GET /timeEntry negotiates, with and without gzip, every field
+ * or a few (showFields). Output goes nowhere; the bytes each response takes
+ * are printed at setup, and returned.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseFormatBenchmark {
+	@Param({"10000", "1000000"})
+	int rows;
+
+	@Param({"HASH"})
+	RecordStore.Type store;
+
+	// a ResponseFormat
+	@Param({"JSON", "ROWS", "SMILE", "CBOR"})
+	String encoding;
+
+	@Param({"false", "true"})
+	boolean gzip;
+
+	private final JsonFactory jsonFactory = Jackson.newObjectMapper().getFactory();
+	private final Projection some = Projection.including("date,client,project,hours,firstName,lastName".split(","));
+	private ResponseFormat format;
+	private List<TimesheetEntry> entries;
+
+	@Setup(Level.Trial)
+	public void load() throws IOException {
+		format = ResponseFormat.valueOf(encoding);
+		entries = Datasets.load(store, rows).find(new Query().where("project", "Proj A1")).getEntries();
+		System.out.println(format + (gzip ? "+gzip" : "") + ": " + entries.size() + " entries; "
+				+ write(Projection.ALL) + " bytes all fields, " + write(some) + " bytes showFields");
+	}
+
+	@Benchmark
+	public long allFields() throws IOException {
+		return write(Projection.ALL);
+	}
+
+	@Benchmark
+	public long filterIn() throws IOException {
+		return write(some);
+	}
+
+	private long write(Projection projection) throws IOException {
+		CountingSink sink = new CountingSink();
+		if ( gzip ) {
+			try (OutputStream out = new GZIPOutputStream(sink, 8192)) {
+				projection.as(format, jsonFactory, entries).write(out);
+			}
+		} else {
+			projection.as(format, jsonFactory, entries).write(sink);
+		}
+		return sink.count;
+	}
+
+	// Discards what's written, counting it
+	private static final class CountingSink extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
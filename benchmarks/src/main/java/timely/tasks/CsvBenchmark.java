@@ -0,0 +1,69 @@
+package timely.tasks;
+
+import com.codahale.metrics.MetricRegistry;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import timely.bench.Datasets;
+import timely.bench.EntryGenerator;
+import timely.store.RecordStore;
+
+/**
+ * CSV uploads as UploadTask and UploadServlet run them: a whole export,
+ * generated as it's read, parsed and imported into an empty service.
+ * Parsing alone is measured per line by {@link ParseLineBenchmark}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvBenchmark {
+	@Param({"10000", "1000000", "10000000"})
+	int rows;
+
+	@Param({"HASH", "COLUMNAR"})
+	RecordStore.Type store;
+
+	private final int threads = Runtime.getRuntime().availableProcessors();
+	private ExecutorService executor;
+	private CsvImporter importer;
+
+	@Setup(Level.Trial)
+	public void startExecutor() {
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	@Setup(Level.Invocation)
+	public void emptyService() {
+		importer = new CsvImporter(Datasets.newService(store), executor, threads, Datasets.BATCH_SIZE, new MetricRegistry());
+	}
+
+	@TearDown(Level.Trial)
+	public void stopExecutor() {
+		executor.shutdown();
+	}
+
+	@Benchmark
+	public ImportReport upload() throws IOException, InterruptedException {
+		return importer.importFrom(new EntryGenerator().csv(rows));
+	}
+}
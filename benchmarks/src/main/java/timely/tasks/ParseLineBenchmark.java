@@ -0,0 +1,48 @@
+package timely.tasks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import timely.bench.EntryGenerator;
+import timely.core.TimesheetEntry;
+
+/**
+ * CsvImporter.parseLine alone, cycling through 10,000 generated lines.
+ * The cost per line doesn't depend on the size of the upload.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseLineBenchmark {
+	private final String[] lines = new String[10000];
+	private int next;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		EntryGenerator generator = new EntryGenerator();
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = generator.csvLine(i);
+		}
+	}
+
+	@Benchmark
+	public TimesheetEntry parseLine() {
+		String line = lines[next];
+		next = (next + 1) % lines.length;
+		return CsvImporter.parseLine(line);
+	}
+}
@@ -0,0 +1,31 @@
+package timely.load;
+
+/**
+ * The requests a load test sends, each at a rate of its own.
+ */
+enum Endpoint {
+	// Searches of varied shapes: one or two terms, date ranges, showFields or removeFields
+	SEARCH("GET /timeEntry"),
+	// Single new entries, as JSON
+	CREATE("POST /timeEntry"),
+	// Batches of new entries as CSV, on the admin port
+	UPLOAD("POST /tasks/upload");
+
+	private final String description;
+
+	Endpoint(String description) {
+		this.description = description;
+	}
+
+	/**
+	 * @return name of the endpoint's options, e.g. search
+	 */
+	String optionName() {
+		return name().toLowerCase();
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
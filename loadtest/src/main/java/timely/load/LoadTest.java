@@ -0,0 +1,183 @@
+package timely.load;
+
+import ch.qos.logback.classic.Level;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import io.dropwizard.configuration.YamlConfigurationFactory;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.validation.Validators;
+import io.dropwizard.jetty.HttpConnectorFactory;
+import io.dropwizard.logging.DefaultLoggingFactory;
+import io.dropwizard.request.logging.LogbackAccessRequestLogFactory;
+import io.dropwizard.server.DefaultServerFactory;
+import io.dropwizard.testing.DropwizardTestSupport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import timely.TimelyApplication;
+import timely.TimelyConfiguration;
+
+/**
+ * End-to-end load test. Starts the application in this JVM with the given
+ * configuration (on free ports, with any persistence in a temporary
+ * directory), loads EntryGenerator's entries, sends an open loop of
+ * searches, creates and uploads (see Workload, OpenLoop) and reports each
+ * endpoint's throughput and latency percentiles.
+ *
+ * <pre>java -jar target/loadtest.jar rows=1000000 search=200 search.maxP99=100ms</pre>
+ *
+ * Options are listed in Options. Exits 1 if any request failed or an
+ * endpoint's p99 went over its maxP99, so a run can gate a release.
+ */
+public class LoadTest {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LoadTest.class);
+
+	public static void main(String[] args) throws Exception {
+		Options options;
+		try {
+			options = Options.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java -jar loadtest.jar [name=value ...]; see timely.load.Options");
+			System.exit(2);
+			return;
+		}
+		System.exit(new LoadTest().run(options, System.out) ? 0 : 1);
+	}
+
+	/**
+	 * @return true if no request failed and no p99 was over its limit
+	 */
+	boolean run(Options options, PrintStream out) throws Exception {
+		// keep a connection per thread alive between requests
+		System.setProperty("http.maxConnections", Integer.toString(options.connections));
+
+		Path data = Files.createTempDirectory("timely-loadtest");
+		ObjectMapper mapper = Jackson.newObjectMapper();
+		DropwizardTestSupport<TimelyConfiguration> app = new DropwizardTestSupport<>(TimelyApplication.class,
+				configuration(options, mapper, data));
+		app.before();
+		try {
+			long loading = System.nanoTime();
+			String report = Workload.seed(options, app.getAdminPort());
+			out.printf("Loaded %d rows in %.1fs: %s%n", options.rows, (System.nanoTime() - loading) / 1e9,
+					report.split("\n")[0]);
+
+			out.printf("Running for %s after %s warmup, %d connections%n", options.duration, options.warmup,
+					options.connections);
+			Workload workload = new Workload(options, app.getLocalPort(), app.getAdminPort(), mapper);
+			Map<Endpoint, OpenLoop.Stats> stats = new OpenLoop(workload, options).run();
+
+			print(stats, options.duration.toNanoseconds() / 1e9, out);
+			return check(stats, options, out);
+		} finally {
+			app.after();
+			delete(data);
+		}
+	}
+
+	/**
+	 * The configuration file, on free ports, logging only warnings (and no
+	 * requests), and persisting (if at all) to data.
+	 */
+	private static TimelyConfiguration configuration(Options options, ObjectMapper mapper, Path data) throws Exception {
+		TimelyConfiguration config = new YamlConfigurationFactory<>(TimelyConfiguration.class,
+				Validators.newValidator(), mapper, "dw").build(new File(options.config));
+		if ( options.store != null ) {
+			config.setRecordStore(options.store);
+		}
+		if ( config.getPersistence().isEnabled() ) {
+			config.getPersistence().setDirectory(data.toString());
+		}
+
+		DefaultServerFactory server = (DefaultServerFactory) config.getServerFactory();
+		for (HttpConnectorFactory connector : Stream.concat(server.getApplicationConnectors().stream(),
+				server.getAdminConnectors().stream()).map(HttpConnectorFactory.class::cast).collect(Collectors.toList())) {
+			connector.setPort(0);
+		}
+		LogbackAccessRequestLogFactory requestLog = new LogbackAccessRequestLogFactory();
+		requestLog.setAppenders(ImmutableList.of());
+		server.setRequestLogFactory(requestLog);
+
+		DefaultLoggingFactory logging = (DefaultLoggingFactory) config.getLoggingFactory();
+		logging.setLevel(Level.WARN);
+		logging.setLoggers(ImmutableMap.of());
+		return config;
+	}
+
+	private static void print(Map<Endpoint, OpenLoop.Stats> stats, double seconds, PrintStream out) {
+		out.printf("%-20s %9s %9s %9s %7s %9s %9s %9s %9s%n",
+				"Endpoint", "Target/s", "Done/s", "Requests", "Failed", "p50 ms", "p99 ms", "p99.9 ms", "Max ms");
+		for (Map.Entry<Endpoint, OpenLoop.Stats> entry : stats.entrySet()) {
+			OpenLoop.Stats endpoint = entry.getValue();
+			Histogram latencies = endpoint.getLatencies();
+			out.printf("%-20s %9.1f %9.1f %9d %7d %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(),
+					endpoint.getRate(), latencies.getTotalCount() / seconds, endpoint.getSent(), endpoint.getFailed(),
+					millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(99)),
+					millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMaxValue()));
+		}
+		for (Map.Entry<Endpoint, OpenLoop.Stats> entry : stats.entrySet()) {
+			Map<String, Long> failures = entry.getValue().getFailures();
+			if ( !failures.isEmpty() ) {
+				out.println(entry.getKey() + " failures: " + failures);
+			}
+		}
+	}
+
+	/**
+	 * @return true if no request failed and no p99 was over its limit
+	 */
+	private static boolean check(Map<Endpoint, OpenLoop.Stats> stats, Options options, PrintStream out) {
+		List<String> problems = new ArrayList<>();
+		for (Map.Entry<Endpoint, OpenLoop.Stats> entry : stats.entrySet()) {
+			OpenLoop.Stats endpoint = entry.getValue();
+			if ( endpoint.getFailed() > 0 ) {
+				problems.add(entry.getKey() + ": " + endpoint.getFailed() + " of " + endpoint.getSent() + " requests failed");
+			}
+			if ( options.maxP99.containsKey(entry.getKey()) ) {
+				double p99 = millis(endpoint.getLatencies().getValueAtPercentile(99));
+				double limit = options.maxP99.get(entry.getKey()).toNanoseconds() / 1e6;
+				if ( p99 > limit ) {
+					problems.add(String.format("%s: p99 %.2f ms is over the limit of %s", entry.getKey(), p99,
+							options.maxP99.get(entry.getKey())));
+				}
+			}
+		}
+		for (String problem : problems) {
+			out.println("FAIL " + problem);
+		}
+		if ( problems.isEmpty() ) {
+			out.println("PASS");
+		}
+		return problems.isEmpty();
+	}
+
+	private static double millis(long micros) {
+		return micros / 1000.0;
+	}
+
+	private static void delete(Path directory) {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		} catch (IOException e) {
+			LOGGER.warn("delete: couldn't remove " + directory + ": " + e);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package timely.load;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends each endpoint's requests at its fixed rate, whether or not earlier
+ * ones have been answered (an open loop, like independent users), from a
+ * pool of connections threads. When the server falls behind, requests queue
+ * for a thread rather than being sent late.
+ *
+ * Latency is measured from when a request was due to be sent, not when a
+ * thread got round to it, so time spent queued counts: a stall shows up in
+ * the latencies of every request it held up, not just the one it hit.
+ * Requests due during the warmup aren't measured.
+ */
+class OpenLoop {
+	private static final Logger LOGGER = LoggerFactory.getLogger(OpenLoop.class);
+	// How long to wait for requests still in flight at the end
+	private static final long DRAIN_SECONDS = 60;
+
+	private final Workload workload;
+	private final Options options;
+
+	/**
+	 * An endpoint's measurements.
+	 */
+	static final class Stats {
+		private final double rate;
+		// latencies of successful requests, in microseconds
+		private final Histogram latencies = new ConcurrentHistogram(3);
+		private final LongAdder sent = new LongAdder();
+		private final LongAdder completed = new LongAdder();
+		// failure (a status or an exception) -> count
+		private final SortedMap<String, LongAdder> failures = new ConcurrentSkipListMap<>();
+
+		Stats(double rate) {
+			this.rate = rate;
+		}
+
+		void succeeded(long nanos) {
+			latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+			completed.increment();
+		}
+
+		void failed(String failure) {
+			failures.computeIfAbsent(failure, f -> new LongAdder()).increment();
+			completed.increment();
+		}
+
+		/**
+		 * @return requests a second it was asked to send
+		 */
+		double getRate() {
+			return rate;
+		}
+
+		Histogram getLatencies() {
+			return latencies;
+		}
+
+		long getSent() {
+			return sent.sum();
+		}
+
+		/**
+		 * @return requests answered, successfully or not
+		 */
+		long getCompleted() {
+			return completed.sum();
+		}
+
+		/**
+		 * @return failed requests, and those still unanswered at the end
+		 */
+		long getFailed() {
+			return getSent() - latencies.getTotalCount();
+		}
+
+		/**
+		 * @return failures and their counts: statuses, exceptions and "unanswered"
+		 */
+		SortedMap<String, Long> getFailures() {
+			SortedMap<String, Long> counts = new ConcurrentSkipListMap<>();
+			failures.forEach((failure, count) -> counts.put(failure, count.sum()));
+			if ( getSent() > getCompleted() ) {
+				counts.put("unanswered", getSent() - getCompleted());
+			}
+			return counts;
+		}
+	}
+
+	OpenLoop(Workload workload, Options options) {
+		this.workload = workload;
+		this.options = options;
+	}
+
+	/**
+	 * Sends requests for the warmup and then the duration, and waits for
+	 * the last of them to be answered.
+	 *
+	 * @return measurements of each endpoint with a rate
+	 */
+	Map<Endpoint, Stats> run() throws InterruptedException {
+		ExecutorService connections = Executors.newFixedThreadPool(options.connections,
+				new ThreadFactoryBuilder().setNameFormat("load-%d").setDaemon(true).build());
+		long start = System.nanoTime();
+		long measureFrom = start + options.warmup.toNanoseconds();
+		long end = measureFrom + options.duration.toNanoseconds();
+
+		Map<Endpoint, Stats> stats = new EnumMap<>(Endpoint.class);
+		List<Thread> schedulers = new ArrayList<>();
+		for (Map.Entry<Endpoint, Double> rate : options.rates.entrySet()) {
+			if ( rate.getValue() > 0 ) {
+				Stats endpointStats = new Stats(rate.getValue());
+				stats.put(rate.getKey(), endpointStats);
+				Thread scheduler = new Thread(() -> schedule(rate.getKey(), endpointStats, connections, start, measureFrom, end),
+						"schedule-" + rate.getKey().optionName());
+				scheduler.start();
+				schedulers.add(scheduler);
+			}
+		}
+		for (Thread scheduler : schedulers) {
+			scheduler.join();
+		}
+		connections.shutdown();
+		if ( !connections.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS) ) {
+			LOGGER.warn("run: requests still unanswered after " + DRAIN_SECONDS + "s; giving up on them");
+			connections.shutdownNow();
+		}
+		return stats;
+	}
+
+	// Hands the endpoint's requests to the connections as each falls due
+	private void schedule(Endpoint endpoint, Stats stats, ExecutorService connections,
+			long start, long measureFrom, long end) {
+		long interval = (long) (TimeUnit.SECONDS.toNanos(1) / stats.getRate());
+		for (long n = 0;; n++) {
+			long due = start + n * interval;
+			if ( due - end >= 0 ) {
+				return;
+			}
+			for (long wait; (wait = due - System.nanoTime()) > 0;) {
+				LockSupport.parkNanos(wait);
+			}
+			boolean measured = due - measureFrom >= 0;
+			if ( measured ) {
+				stats.sent.increment();
+			}
+			long request = n;
+			connections.execute(() -> {
+				String failure;
+				try {
+					int status = workload.send(endpoint, request);
+					failure = status / 100 == 2 ? null : Integer.toString(status);
+				} catch (Exception e) {
+					failure = e.getClass().getSimpleName();
+				}
+				if ( measured ) {
+					if ( failure == null ) {
+						stats.succeeded(System.nanoTime() - due);
+					} else {
+						stats.failed(failure);
+					}
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package timely.load;
+
+import io.dropwizard.util.Duration;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+import timely.bench.EntryGenerator;
+import timely.store.RecordStore;
+
+/**
+ * A load test's settings, given on the command line as name=value pairs:
+ *
+ * <pre>
+ * config=../config.yml   the application's configuration
+ * store=columnar         record store, overriding the configuration's
+ * rows=100000            entries loaded before the test
+ * seed=42                EntryGenerator seed; the same seed sends the same requests
+ * warmup=10s             time at full load before measuring
+ * duration=60s           time measured
+ * connections=32         requests in flight at most; more wait their turn
+ * search=50              searches a second
+ * create=10              single-entry POSTs a second
+ * upload=0.1             CSV uploads a second
+ * uploadRows=1000        entries per CSV upload
+ * search.maxP99=250ms    fail the run if the endpoint's p99 latency is over this
+ * </pre>
+ */
+class Options {
+	String config = "../config.yml";
+	RecordStore.Type store;
+	long rows = 100_000;
+	long seed = EntryGenerator.DEFAULT_SEED;
+	Duration warmup = Duration.seconds(10);
+	Duration duration = Duration.seconds(60);
+	int connections = 32;
+	int uploadRows = 1000;
+	final Map<Endpoint, Double> rates = new EnumMap<>(Endpoint.class);
+	final Map<Endpoint, Duration> maxP99 = new EnumMap<>(Endpoint.class);
+
+	Options() {
+		rates.put(Endpoint.SEARCH, 50.0);
+		rates.put(Endpoint.CREATE, 10.0);
+		rates.put(Endpoint.UPLOAD, 0.1);
+	}
+
+	/**
+	 * @throws IllegalArgumentException on an unknown name or a bad value
+	 */
+	static Options parse(String... args) {
+		Options options = new Options();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if ( equals < 0 ) {
+				throw new IllegalArgumentException("Expected name=value: " + arg);
+			}
+			try {
+				options.set(arg.substring(0, equals), arg.substring(equals + 1));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(arg + ": " + e.getMessage(), e);
+			}
+		}
+		return options;
+	}
+
+	private void set(String name, String value) {
+		switch (name) {
+		case "config":
+			config = value;
+			return;
+		case "store":
+			store = RecordStore.Type.valueOf(value.toUpperCase(Locale.ROOT));
+			return;
+		case "rows":
+			rows = positive(Long.parseLong(value));
+			return;
+		case "seed":
+			seed = Long.parseLong(value);
+			return;
+		case "warmup":
+			warmup = Duration.parse(value);
+			return;
+		case "duration":
+			duration = Duration.parse(value);
+			return;
+		case "connections":
+			connections = (int) positive(Integer.parseInt(value));
+			return;
+		case "uploadRows":
+			uploadRows = (int) positive(Integer.parseInt(value));
+			return;
+		default:
+			break;
+		}
+		for (Endpoint endpoint : Endpoint.values()) {
+			if ( name.equals(endpoint.optionName()) ) {
+				double rate = Double.parseDouble(value);
+				if ( rate < 0 || Double.isNaN(rate) ) {
+					throw new IllegalArgumentException("must not be negative");
+				}
+				rates.put(endpoint, rate);
+				return;
+			}
+			if ( name.equals(endpoint.optionName() + ".maxP99") ) {
+				maxP99.put(endpoint, Duration.parse(value));
+				return;
+			}
+		}
+		throw new IllegalArgumentException("unknown option");
+	}
+
+	private static long positive(long value) {
+		if ( value <= 0 ) {
+			throw new IllegalArgumentException("must be positive");
+		}
+		return value;
+	}
+}
@@ -0,0 +1,218 @@
+package timely.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import timely.bench.EntryGenerator;
+import timely.core.TimesheetEntry;
+
+/**
+ * The requests of a load test. Request n to an endpoint depends only on the
+ * seed and n, so a run can be repeated exactly.
+ *
+ * Searches are built around an entry loaded at the start, so they always
+ * find something: one of its values (client, project, person, department,
+ * task or a last name prefix), usually with a date range around its date,
+ * often with showFields or removeFields, a limit and a sort. Creates and
+ * uploads add entries that follow the loaded ones, so none are duplicates.
+ */
+class Workload {
+	private static final DateTimeFormatter ENTRY_DATE = DateTimeFormatter.ofPattern("M/d/yyyy");
+	private static final int TIMEOUT = (int) TimeUnit.MINUTES.toMillis(1);
+
+	private final String entries;
+	private final String upload;
+	private final long rows;
+	private final long seed;
+	private final int uploadRows;
+	private final EntryGenerator generator;
+	private final ObjectMapper mapper;
+	// next entry to create or upload
+	private final AtomicLong next;
+
+	/**
+	 * @param port application port
+	 * @param adminPort admin port
+	 */
+	Workload(Options options, int port, int adminPort, ObjectMapper mapper) {
+		this.entries = "http://localhost:" + port + "/timeEntry";
+		this.upload = "http://localhost:" + adminPort + "/tasks/upload";
+		this.rows = options.rows;
+		this.seed = options.seed;
+		this.uploadRows = options.uploadRows;
+		this.generator = new EntryGenerator(options.seed);
+		this.mapper = mapper;
+		this.next = new AtomicLong(options.rows);
+	}
+
+	/**
+	 * Loads the first rows entries, streamed to the admin port's /upload.
+	 *
+	 * @return the import report
+	 */
+	static String seed(Options options, int adminPort) throws IOException {
+		HttpURLConnection connection = open("http://localhost:" + adminPort + "/upload");
+		connection.setReadTimeout(0);
+		connection.setDoOutput(true);
+		connection.setChunkedStreamingMode(64 * 1024);
+		connection.setRequestProperty("Content-Type", "text/csv");
+		try (Reader csv = new EntryGenerator(options.seed).csv(options.rows);
+				Writer out = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8)) {
+			char[] buffer = new char[64 * 1024];
+			for (int n; (n = csv.read(buffer)) > 0;) {
+				out.write(buffer, 0, n);
+			}
+		}
+		if ( connection.getResponseCode() != HttpURLConnection.HTTP_OK ) {
+			throw new IOException("Loading entries failed: " + connection.getResponseCode());
+		}
+		try (BufferedReader report = new BufferedReader(
+				new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+			return report.lines().collect(Collectors.joining("\n"));
+		}
+	}
+
+	/**
+	 * Sends request n to an endpoint.
+	 *
+	 * @return response status
+	 */
+	int send(Endpoint endpoint, long n) throws IOException {
+		switch (endpoint) {
+		case SEARCH:
+			return get(entries + "?" + search(n));
+		case CREATE:
+			return post(entries, "application/json", mapper.writeValueAsBytes(generator.entry(next.getAndIncrement())));
+		case UPLOAD:
+		default:
+			return post(upload, "text/csv", csv(next.getAndAdd(uploadRows), uploadRows));
+		}
+	}
+
+	/**
+	 * @return query string of search n
+	 */
+	String search(long n) {
+		SplittableRandom random = new SplittableRandom(seed * 31 + n);
+		TimesheetEntry e = generator.entry(random.nextLong(rows));
+		StringBuilder query = new StringBuilder();
+		boolean dated = random.nextInt(10) < 6;
+		switch (random.nextInt(6)) {
+		case 0:
+			// a client is a large share of the entries: always narrow it down
+			param(query, "client", e.getClient());
+			dated = true;
+			break;
+		case 1:
+			param(query, "project", e.getProject());
+			break;
+		case 2:
+			param(query, "lastName", e.getLastName());
+			param(query, "firstName", e.getFirstName());
+			break;
+		case 3:
+			param(query, "department", e.getDepartment().isEmpty() ? "Eng" : e.getDepartment());
+			param(query, "isApproved", e.getIsApproved());
+			break;
+		case 4:
+			param(query, "task", e.getTask());
+			break;
+		default:
+			param(query, "lastName", "prefix:" + e.getLastName().substring(0, 3));
+			param(query, "client", e.getClient());
+			break;
+		}
+		if ( dated ) {
+			LocalDate date = LocalDate.parse(e.getDate(), ENTRY_DATE);
+			param(query, "start", date.minusDays(random.nextInt(30)).toString());
+			param(query, "end", date.plusDays(random.nextInt(60)).toString());
+		}
+		int projection = random.nextInt(10);
+		if ( projection < 5 ) {
+			param(query, "showFields", "date,client,project,hours,firstName,lastName");
+		} else if ( projection < 7 ) {
+			param(query, "removeFields", "projectCode,currency,externalRefURL");
+		}
+		if ( random.nextInt(10) < 7 ) {
+			param(query, "limit", "100");
+			if ( random.nextInt(10) < 3 ) {
+				param(query, "sort", "-hours");
+			}
+		}
+		return query.toString();
+	}
+
+	// A CSV upload of count entries from first on
+	private byte[] csv(long first, int count) {
+		StringBuilder csv = new StringBuilder(EntryGenerator.CSV_HEADINGS).append('\n');
+		for (long i = first; i < first + count; i++) {
+			csv.append(generator.csvLine(i)).append('\n');
+		}
+		return csv.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void param(StringBuilder query, String name, String value) {
+		try {
+			query.append(query.length() == 0 ? "" : "&").append(name).append('=').append(URLEncoder.encode(value, "UTF-8"));
+		} catch (IOException e) {
+			throw new IllegalStateException(e);  // UTF-8 is always supported
+		}
+	}
+
+	private static int get(String url) throws IOException {
+		HttpURLConnection connection = open(url);
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		return finish(connection);
+	}
+
+	private static int post(String url, String type, byte[] body) throws IOException {
+		HttpURLConnection connection = open(url);
+		connection.setDoOutput(true);
+		connection.setFixedLengthStreamingMode(body.length);
+		connection.setRequestProperty("Content-Type", type);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body);
+		}
+		return finish(connection);
+	}
+
+	private static HttpURLConnection open(String url) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(TIMEOUT);
+		connection.setReadTimeout(TIMEOUT);
+		return connection;
+	}
+
+	// Reads the whole response, so the connection can be kept alive for the next request
+	private static int finish(HttpURLConnection connection) throws IOException {
+		int status = connection.getResponseCode();
+		InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		if ( body != null ) {
+			try (InputStream in = body) {
+				byte[] buffer = new byte[16 * 1024];
+				while (in.read(buffer) >= 0) {
+					// discard
+				}
+			}
+		}
+		return status;
+	}
+}
@@ -2,7 +2,7 @@
  * Timely
  * 
  * Demonstration timesheet application that allows:
- *  - importing entries (CSV)
+ *  - importing entries (CSV, or JSON in bulk)
  *  - creating individual entries
  *  - deleting individual entries
  *  - searching for entries with
@@ -13,10 +13,25 @@
 package timely;
 
 import io.dropwizard.Application;
+import io.dropwizard.lifecycle.ExecutorServiceManager;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import timely.health.ConsistencyHealthCheck;
+import timely.resources.ResponseCache;
+import timely.resources.SearchExecutor;
 import timely.resources.TimesheetEntryResource;
+import timely.service.GroupCommitter;
 import timely.service.RecordsService;
+import timely.store.RecordStore;
+import timely.tasks.CsvImporter;
+import timely.tasks.JsonImporter;
+import timely.tasks.UploadServlet;
+import timely.tasks.UploadTask;
 
 public class TimelyApplication extends Application<TimelyConfiguration> {
 
@@ -40,12 +55,55 @@ public class TimelyApplication extends Application<TimelyConfiguration> {
 
         //TODO: guicify, inject configuration and service(s)
 
-        final RecordsService rs = new RecordsService();
+        final int scanThreads = configuration.getScanThreads() > 0
+                ? configuration.getScanThreads()
+                : Runtime.getRuntime().availableProcessors();
+        final ForkJoinPool scanPool = new ForkJoinPool(scanThreads);
+        environment.lifecycle().manage(new ExecutorServiceManager(scanPool, Duration.seconds(5), "scan"));
+
+        final RecordsService rs = new RecordsService(RecordStore.create(configuration.getRecordStore()),
+                configuration.getRollups(), environment.metrics(), scanPool);
+        rs.setChangeRetention(configuration.getChangeRetention());
+        if ( configuration.getPersistence().isEnabled() ) {
+            // loads the persisted records before the server starts
+            environment.lifecycle().manage(configuration.getPersistence().build(rs));
+        }
+
+        final GroupCommitter committer = new GroupCommitter(rs,
+                configuration.getCommitBatchSize(), configuration.getCommitQueueSize());
+        environment.lifecycle().manage(committer);
+        final JsonImporter jsonImporter = new JsonImporter(rs, environment.getObjectMapper(), configuration.getImportBatchSize());
+
+        final ResponseCache responseCache = new ResponseCache(configuration.getResultCacheSize().toBytes(),
+                (int) configuration.getResultCacheMaxEntrySize().toBytes());
+
+        final int searchThreads = configuration.getSearchThreads() > 0
+                ? configuration.getSearchThreads()
+                : Runtime.getRuntime().availableProcessors();
+        final SearchExecutor searches = new SearchExecutor("search", searchThreads, configuration.getSearchQueueSize(),
+                configuration.getSearchRetryAfter(), environment.metrics());
+        environment.lifecycle().manage(searches);
+        final SearchExecutor exports = new SearchExecutor("export", configuration.getExportThreads(),
+                configuration.getExportQueueSize(), configuration.getSearchRetryAfter(), environment.metrics());
+        environment.lifecycle().manage(exports);
+
+        environment.jersey().register( new TimesheetEntryResource(rs, committer, jsonImporter,
+                environment.getObjectMapper().getFactory(), responseCache, searches, exports, environment.metrics()) );
+
+        final int importThreads = configuration.getImportThreads() > 0
+                ? configuration.getImportThreads()
+                : Runtime.getRuntime().availableProcessors();
+        final ExecutorService importExecutor = environment.lifecycle()
+                .executorService("csv-import-%d")
+                .minThreads(importThreads)
+                .maxThreads(importThreads)
+                .build();
+        final CsvImporter importer = new CsvImporter(rs, importExecutor, importThreads, configuration.getImportBatchSize(),
+                environment.metrics());
 
-        environment.jersey().register( new TimesheetEntryResource(rs) );
+        environment.admin().addTask(new UploadTask(importer));
+        environment.admin().addServlet("upload", new UploadServlet(importer)).addMapping("/upload");
 
-        environment.admin().addTask(new timely.tasks.UploadTask(rs));
-        
-        //TODO: create healthcheck
+        environment.healthChecks().register("consistency", new ConsistencyHealthCheck(rs));
     }
 }
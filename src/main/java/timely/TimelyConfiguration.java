@@ -1,8 +1,252 @@
 package timely;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import io.dropwizard.Configuration;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import io.dropwizard.util.SizeUnit;
+import io.dropwizard.validation.MaxSize;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import timely.persist.PersistenceFactory;
+import timely.store.RecordStore;
 
 public class TimelyConfiguration extends Configuration {
 	private boolean allowImports = true;
 	private boolean debug = true;
+
+	// Storage engine behind RecordsService: hash (default) or columnar
+	@NotNull
+	private RecordStore.Type recordStore = RecordStore.Type.HASH;
+
+	// Threads parsing CSV uploads; 0 means one per core
+	@Min(0)
+	private int importThreads = 0;
+
+	// Threads scanning the store for broad searches, and totalling aggregations; 0 means one per core
+	@Min(0)
+	private int scanThreads = 0;
+
+	// Searches and aggregations run at once, off the request threads; 0 means one per core
+	@Min(0)
+	private int searchThreads = 0;
+
+	// Searches and aggregations waiting to run; more are answered 503
+	@Min(1)
+	private int searchQueueSize = 100;
+
+	// Change feeds streamed at once, on a pool of their own
+	@Min(1)
+	private int exportThreads = 2;
+
+	// Change feeds waiting to stream; more are answered 503
+	@Min(1)
+	private int exportQueueSize = 10;
+
+	// Retry-After given with a 503
+	@NotNull
+	private Duration searchRetryAfter = Duration.seconds(1);
+
+	// Records per import batch (CSV uploads and bulk JSON)
+	@Min(1)
+	private int importBatchSize = 10000;
+
+	// Most single-entry POSTs stored together in one group commit
+	@Min(1)
+	private int commitBatchSize = 1000;
+
+	// Most single-entry POSTs waiting for a group commit; more wait to be queued
+	@Min(1)
+	private int commitQueueSize = 10000;
+
+	// Groupings (e.g. "client,month") whose totals are kept up to date for /timeEntry/aggregate
+	@NotNull
+	private List<String> rollups = Arrays.asList(
+			"client,month", "project,month", "department,month", "person,month",
+			"client,week", "person,week");
+
+	// Changes whose deletes the change log keeps; consumers further behind start over
+	@Min(0)
+	private long changeRetention = 1_000_000;
+
+	// Heap for cached search responses; 0 turns the cache off
+	@NotNull
+	private Size resultCacheSize = Size.megabytes(64);
+
+	// Largest search response worth caching
+	@NotNull
+	@MaxSize(value = 1, unit = SizeUnit.GIGABYTES)
+	private Size resultCacheMaxEntrySize = Size.megabytes(1);
+
+	// Where (and whether) records are kept on disk
+	@Valid
+	@NotNull
+	private PersistenceFactory persistence = new PersistenceFactory();
+
+	@JsonProperty
+	public RecordStore.Type getRecordStore() {
+		return recordStore;
+	}
+
+	@JsonProperty
+	public void setRecordStore(RecordStore.Type recordStore) {
+		this.recordStore = recordStore;
+	}
+
+	@JsonProperty
+	public int getImportThreads() {
+		return importThreads;
+	}
+
+	@JsonProperty
+	public void setImportThreads(int importThreads) {
+		this.importThreads = importThreads;
+	}
+
+	@JsonProperty
+	public int getScanThreads() {
+		return scanThreads;
+	}
+
+	@JsonProperty
+	public void setScanThreads(int scanThreads) {
+		this.scanThreads = scanThreads;
+	}
+
+	@JsonProperty
+	public int getSearchThreads() {
+		return searchThreads;
+	}
+
+	@JsonProperty
+	public void setSearchThreads(int searchThreads) {
+		this.searchThreads = searchThreads;
+	}
+
+	@JsonProperty
+	public int getSearchQueueSize() {
+		return searchQueueSize;
+	}
+
+	@JsonProperty
+	public void setSearchQueueSize(int searchQueueSize) {
+		this.searchQueueSize = searchQueueSize;
+	}
+
+	@JsonProperty
+	public int getExportThreads() {
+		return exportThreads;
+	}
+
+	@JsonProperty
+	public void setExportThreads(int exportThreads) {
+		this.exportThreads = exportThreads;
+	}
+
+	@JsonProperty
+	public int getExportQueueSize() {
+		return exportQueueSize;
+	}
+
+	@JsonProperty
+	public void setExportQueueSize(int exportQueueSize) {
+		this.exportQueueSize = exportQueueSize;
+	}
+
+	@JsonProperty
+	public Duration getSearchRetryAfter() {
+		return searchRetryAfter;
+	}
+
+	@JsonProperty
+	public void setSearchRetryAfter(Duration searchRetryAfter) {
+		this.searchRetryAfter = searchRetryAfter;
+	}
+
+	@JsonProperty
+	public int getImportBatchSize() {
+		return importBatchSize;
+	}
+
+	@JsonProperty
+	public void setImportBatchSize(int importBatchSize) {
+		this.importBatchSize = importBatchSize;
+	}
+
+	@JsonProperty
+	public int getCommitBatchSize() {
+		return commitBatchSize;
+	}
+
+	@JsonProperty
+	public void setCommitBatchSize(int commitBatchSize) {
+		this.commitBatchSize = commitBatchSize;
+	}
+
+	@JsonProperty
+	public int getCommitQueueSize() {
+		return commitQueueSize;
+	}
+
+	@JsonProperty
+	public void setCommitQueueSize(int commitQueueSize) {
+		this.commitQueueSize = commitQueueSize;
+	}
+
+	@JsonProperty
+	public List<String> getRollups() {
+		return rollups;
+	}
+
+	@JsonProperty
+	public void setRollups(List<String> rollups) {
+		this.rollups = rollups;
+	}
+
+	@JsonProperty
+	public long getChangeRetention() {
+		return changeRetention;
+	}
+
+	@JsonProperty
+	public void setChangeRetention(long changeRetention) {
+		this.changeRetention = changeRetention;
+	}
+
+	@JsonProperty
+	public Size getResultCacheSize() {
+		return resultCacheSize;
+	}
+
+	@JsonProperty
+	public void setResultCacheSize(Size resultCacheSize) {
+		this.resultCacheSize = resultCacheSize;
+	}
+
+	@JsonProperty
+	public Size getResultCacheMaxEntrySize() {
+		return resultCacheMaxEntrySize;
+	}
+
+	@JsonProperty
+	public void setResultCacheMaxEntrySize(Size resultCacheMaxEntrySize) {
+		this.resultCacheMaxEntrySize = resultCacheMaxEntrySize;
+	}
+
+	@JsonProperty
+	public PersistenceFactory getPersistence() {
+		return persistence;
+	}
+
+	@JsonProperty
+	public void setPersistence(PersistenceFactory persistence) {
+		this.persistence = persistence;
+	}
 }
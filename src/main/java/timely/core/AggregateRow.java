@@ -0,0 +1,30 @@
+package timely.core;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+
+import java.util.Map;
+
+/**
+ * One group of an aggregation: its group-by values (e.g. client and month)
+ * followed by the totals over its records, all as flat JSON properties.
+ */
+public class AggregateRow {
+	private final Map<String, String> group;
+	private final Totals totals;
+
+	public AggregateRow(Map<String, String> group, Totals totals) {
+		this.group = group;
+		this.totals = totals;
+	}
+
+	@JsonAnyGetter
+	public Map<String, String> getGroup() {
+		return group;
+	}
+
+	@JsonUnwrapped
+	public Totals getTotals() {
+		return totals;
+	}
+}
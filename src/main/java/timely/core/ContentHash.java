@@ -0,0 +1,67 @@
+package timely.core;
+
+/**
+ * 64-bit hash of a TimesheetEntry's contents (all fields).
+ *
+ * Computed once per entry at ingest and kept by the record store, so
+ * duplicate checks and deletes-by-content are a single hash lookup instead
+ * of re-running the Lombok hashCode/equals over 19 fields each time.
+ * Equal entries always hash equal; unequal entries collide with negligible
+ * probability, and stores still confirm matches with equals().
+ */
+public final class ContentHash {
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private ContentHash() {
+	}
+
+	public static long of(TimesheetEntry rec) {
+		long h = FNV_OFFSET;
+		h = mix(h, rec.getDate());
+		h = mix(h, rec.getClient());
+		h = mix(h, rec.getProject());
+		h = mix(h, rec.getProjectCode());
+		h = mix(h, rec.getTask());
+		h = mix(h, Double.doubleToLongBits(rec.getHours()));
+		h = mix(h, Double.doubleToLongBits(rec.getHoursRounded()));
+		h = mix(h, rec.getIsBillable());
+		h = mix(h, rec.getIsInvoiced());
+		h = mix(h, rec.getIsApproved());
+		h = mix(h, rec.getFirstName());
+		h = mix(h, rec.getLastName());
+		h = mix(h, rec.getDepartment());
+		h = mix(h, rec.getIsEmployee());
+		h = mix(h, rec.getBillableRate());
+		h = mix(h, rec.getCostRate());
+		h = mix(h, rec.getCostAmount());
+		h = mix(h, rec.getCurrency());
+		h = mix(h, rec.getExternalRefURL());
+		return finish(h);
+	}
+
+	private static long mix(long h, String s) {
+		if ( s == null ) {
+			return (h ^ 0xff) * FNV_PRIME;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			h = (h ^ s.charAt(i)) * FNV_PRIME;
+		}
+		// field separator, so ("ab","c") and ("a","bc") differ
+		return (h ^ 0x1f) * FNV_PRIME;
+	}
+
+	private static long mix(long h, long v) {
+		return (h ^ v) * FNV_PRIME;
+	}
+
+	// MurmurHash3 finalizer: spreads FNV's weak high bits
+	private static long finish(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
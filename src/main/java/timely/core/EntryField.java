@@ -0,0 +1,190 @@
+package timely.core;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Typed accessor for one TimesheetEntry field.
+ *
+ * The registry of accessors is built once, when the class loads: each
+ * (Lombok-generated) getter is bound through LambdaMetafactory, so reading
+ * a field is a plain interface call the JIT can inline - no reflection
+ * on the search path.
+ */
+public final class EntryField {
+	// Every TimesheetEntry field, in the column order of a CSV export (which
+	// is also the order of JSON output); getDeclaredFields() has no set order
+	private static final String[] NAMES = {
+			"date", "client", "project", "projectCode", "task", "hours", "hoursRounded",
+			"isBillable", "isInvoiced", "isApproved", "firstName", "lastName", "department", "isEmployee",
+			"billableRate", "costRate", "costAmount", "currency", "externalRefURL" };
+
+	private static final List<EntryField> FIELDS;
+	// lower-cased field name -> accessor
+	private static final Map<String, EntryField> BY_NAME = new HashMap<>();
+
+	static {
+		List<EntryField> fields = new ArrayList<>();
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		for (String name : NAMES) {
+			Field f;
+			try {
+				f = TimesheetEntry.class.getDeclaredField(name);
+			} catch (NoSuchFieldException e) {
+				throw new ExceptionInInitializerError(e);
+			}
+			EntryField field = new EntryField(lookup, name, f.getType());
+			fields.add(field);
+			BY_NAME.put(name.toLowerCase(Locale.ROOT), field);
+		}
+		// a field added to TimesheetEntry must be added to NAMES too
+		for (Field f : TimesheetEntry.class.getDeclaredFields()) {
+			if ( !Modifier.isStatic(f.getModifiers()) && !BY_NAME.containsKey(f.getName().toLowerCase(Locale.ROOT)) ) {
+				throw new ExceptionInInitializerError("TimesheetEntry." + f.getName() + " is missing from EntryField.NAMES");
+			}
+		}
+		FIELDS = Collections.unmodifiableList(fields);
+	}
+
+	private final String name;
+	private final Class<?> type;
+	private final Function<TimesheetEntry, String> stringGetter;
+	private final ToDoubleFunction<TimesheetEntry> doubleGetter;
+	private final ToIntFunction<TimesheetEntry> intGetter;
+
+	@SuppressWarnings("unchecked")
+	private EntryField(MethodHandles.Lookup lookup, String name, Class<?> type) {
+		this.name = name;
+		this.type = type;
+		String getterName = "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		try {
+			MethodHandle getter = lookup.findVirtual(TimesheetEntry.class, getterName, MethodType.methodType(type));
+			if ( type == String.class ) {
+				stringGetter = (Function<TimesheetEntry, String>) bind(lookup, getter, Function.class, "apply", Object.class);
+				doubleGetter = null;
+				intGetter = null;
+			} else if ( type == double.class ) {
+				stringGetter = null;
+				doubleGetter = (ToDoubleFunction<TimesheetEntry>) bind(lookup, getter, ToDoubleFunction.class, "applyAsDouble", double.class);
+				intGetter = null;
+			} else if ( type == int.class ) {
+				stringGetter = null;
+				intGetter = (ToIntFunction<TimesheetEntry>) bind(lookup, getter, ToIntFunction.class, "applyAsInt", int.class);
+				doubleGetter = intGetter::applyAsInt;
+			} else {
+				throw new IllegalStateException("Unsupported type " + type + " of TimesheetEntry." + name);
+			}
+		} catch (Throwable t) {
+			throw new ExceptionInInitializerError(t);
+		}
+	}
+
+	// Spins up a lambda of the given functional interface that calls getter
+	private static Object bind(MethodHandles.Lookup lookup, MethodHandle getter,
+			Class<?> iface, String method, Class<?> erasedReturn) throws Throwable {
+		CallSite site = LambdaMetafactory.metafactory(lookup,
+				method,
+				MethodType.methodType(iface),
+				MethodType.methodType(erasedReturn, Object.class),
+				getter,
+				getter.type());
+		return site.getTarget().invoke();
+	}
+
+	/**
+	 * @param name field name (case-insensitive)
+	 * @return accessor for that field
+	 * @throws UnknownFieldException if TimesheetEntry has no such field
+	 */
+	public static EntryField forName(String name) {
+		EntryField field = name == null ? null : BY_NAME.get(name.trim().toLowerCase(Locale.ROOT));
+		if ( field == null ) {
+			throw new UnknownFieldException(name);
+		}
+		return field;
+	}
+
+	/**
+	 * @return accessors for every TimesheetEntry field, in CSV column order
+	 */
+	public static List<EntryField> all() {
+		return FIELDS;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Class<?> getType() {
+		return type;
+	}
+
+	public boolean isString() {
+		return stringGetter != null;
+	}
+
+	public boolean isNumeric() {
+		return doubleGetter != null;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this isn't a String field
+	 */
+	public String getString(TimesheetEntry rec) {
+		if ( stringGetter == null ) {
+			throw new UnsupportedOperationException(name + " is not a text field");
+		}
+		return stringGetter.apply(rec);
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this isn't a numeric field
+	 */
+	public double getDouble(TimesheetEntry rec) {
+		if ( doubleGetter == null ) {
+			throw new UnsupportedOperationException(name + " is not a numeric field");
+		}
+		return doubleGetter.applyAsDouble(rec);
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this isn't an int field
+	 */
+	public int getInt(TimesheetEntry rec) {
+		if ( intGetter == null ) {
+			throw new UnsupportedOperationException(name + " is not an integer field");
+		}
+		return intGetter.applyAsInt(rec);
+	}
+
+	/**
+	 * @return the field value, boxed (for serialization and generic use)
+	 */
+	public Object get(TimesheetEntry rec) {
+		if ( stringGetter != null ) {
+			return stringGetter.apply(rec);
+		} else if ( intGetter != null ) {
+			return intGetter.applyAsInt(rec);
+		}
+		return doubleGetter.applyAsDouble(rec);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
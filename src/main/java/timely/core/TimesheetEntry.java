@@ -1,8 +1,5 @@
 package timely.core;
 
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-
 import lombok.Data;
 
 import org.hibernate.validator.constraints.NotBlank;
@@ -64,36 +61,4 @@ public class TimesheetEntry {
 	//NB: could be blank
 	@URL
 	final private String externalRefURL;  //FIXME: URL?
-
-	/**
-	 * Uses reflection to get arbitrary fields to be used as search terms.
-	 * 
-	 * @param field name whose getter we seek
-	 * @return getter of specified field
-	 * @throws ClassNotFoundException if the timeDataClass is coded/specified incorrectly
-	 * @throws NoSuchMethodException if the field doesn't exist
-	 */
-	public static Method getGetter(String field) throws ClassNotFoundException, NoSuchMethodException {
-		Method method = null;
-		//NB: if we move around TimesheetEntry, this reflection text must change
-		Class<?> timeDataClass = Class.forName("timely.core.TimesheetEntry");
-		Method[] methods = timeDataClass.getDeclaredMethods();
-		for (Method m : methods) {
-			String methodName = m.getName();
-
-			// Find the right (getter) method.
-			if ( Modifier.isPublic(m.getModifiers())
-					&& (m.getParameterTypes().length == 0)
-					&& (methodName.equalsIgnoreCase("get" + field) 
-						|| methodName.equalsIgnoreCase("is" + field)
-					   )
-			   ) {
-				return m;
-			}
-		}
-		if ( method == null ) {
-			throw new NoSuchMethodException("getter for " + field);
-		}
-		return method;
-	}
 }
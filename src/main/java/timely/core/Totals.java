@@ -0,0 +1,104 @@
+package timely.core;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+/**
+ * Running totals over a group of timesheet records: count, and sums (with
+ * averages) of hours, rounded hours, cost and billable value. Billable value
+ * is hours x billable rate for records marked billable, else 0.
+ *
+ * Sums are kept as fixed-point longs (hours in ten-thousandths), so a record
+ * counted out again takes away exactly what it added, however many other
+ * records came and went in between.
+ */
+@JsonPropertyOrder({"count", "hours", "hoursRounded", "costAmount", "billableValue",
+		"avgHours", "avgHoursRounded", "avgCostAmount", "avgBillableValue"})
+public class Totals {
+	// fixed-point units per hour
+	private static final long SCALE = 10_000;
+
+	private long count;
+	private long hours;
+	private long hoursRounded;
+	private long costAmount;
+	private long billableValue;
+
+	/**
+	 * Adds a record to (sign 1) or removes it from (sign -1) the totals.
+	 */
+	public synchronized void add(TimesheetEntry rec, int sign) {
+		long recHours = units(rec.getHours());
+		count += sign;
+		hours += sign * recHours;
+		hoursRounded += sign * units(rec.getHoursRounded());
+		costAmount += sign * (long) rec.getCostAmount();
+		billableValue += sign * (isBillable(rec) ? recHours * rec.getBillableRate() : 0);
+	}
+
+	public synchronized void add(Totals other) {
+		synchronized (other) {
+			count += other.count;
+			hours += other.hours;
+			hoursRounded += other.hoursRounded;
+			costAmount += other.costAmount;
+			billableValue += other.billableValue;
+		}
+	}
+
+	/**
+	 * @return a consistent copy of these totals
+	 */
+	public synchronized Totals copy() {
+		Totals copy = new Totals();
+		copy.add(this);
+		return copy;
+	}
+
+	public static double billableValue(TimesheetEntry rec) {
+		return isBillable(rec) ? rec.getHours() * rec.getBillableRate() : 0;
+	}
+
+	private static boolean isBillable(TimesheetEntry rec) {
+		return "yes".equalsIgnoreCase(rec.getIsBillable());
+	}
+
+	private static long units(double hours) {
+		return Math.round(hours * SCALE);
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized double getHours() {
+		return (double) hours / SCALE;
+	}
+
+	public synchronized double getHoursRounded() {
+		return (double) hoursRounded / SCALE;
+	}
+
+	public synchronized double getCostAmount() {
+		return costAmount;
+	}
+
+	public synchronized double getBillableValue() {
+		return (double) billableValue / SCALE;
+	}
+
+	public synchronized double getAvgHours() {
+		return count == 0 ? 0 : (double) hours / SCALE / count;
+	}
+
+	public synchronized double getAvgHoursRounded() {
+		return count == 0 ? 0 : (double) hoursRounded / SCALE / count;
+	}
+
+	public synchronized double getAvgCostAmount() {
+		return count == 0 ? 0 : (double) costAmount / count;
+	}
+
+	public synchronized double getAvgBillableValue() {
+		return count == 0 ? 0 : (double) billableValue / SCALE / count;
+	}
+}
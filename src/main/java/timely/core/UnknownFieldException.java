@@ -0,0 +1,19 @@
+package timely.core;
+
+/**
+ * Thrown when a request names a field TimesheetEntry doesn't have.
+ */
+public class UnknownFieldException extends IllegalArgumentException {
+	private static final long serialVersionUID = 1L;
+
+	private final String field;
+
+	public UnknownFieldException(String field) {
+		super("Unknown field: " + field);
+		this.field = field;
+	}
+
+	public String getField() {
+		return field;
+	}
+}
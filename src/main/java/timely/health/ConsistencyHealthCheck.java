@@ -0,0 +1,43 @@
+package timely.health;
+
+import com.codahale.metrics.health.HealthCheck;
+
+import java.util.List;
+
+import timely.service.RecordsService;
+
+/**
+ * Reports whether the search indexes and rollups agree with the stored
+ * records. A check that overlaps an import or delete may see them half
+ * updated, so it's retried; it only fails if the differences remain while
+ * no records are changing.
+ */
+public class ConsistencyHealthCheck extends HealthCheck {
+	// Records looked up in every index per check
+	private static final int SAMPLE_SIZE = 1000;
+	private static final int ATTEMPTS = 3;
+
+	private final RecordsService recSvc;
+
+	public ConsistencyHealthCheck(RecordsService recSvc) {
+		this.recSvc = recSvc;
+	}
+
+	@Override
+	protected Result check() {
+		List<String> problems = null;
+		boolean changing = false;
+		for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+			long generation = recSvc.getGeneration();
+			problems = recSvc.checkConsistency(SAMPLE_SIZE);
+			if ( problems.isEmpty() ) {
+				return Result.healthy(recSvc.size() + " records, indexes consistent");
+			}
+			changing = recSvc.getGeneration() != generation;
+		}
+		if ( changing ) {
+			return Result.healthy(recSvc.size() + " records, changing too fast to check");
+		}
+		return Result.unhealthy(String.join("; ", problems));
+	}
+}
@@ -0,0 +1,137 @@
+package timely.persist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import timely.core.TimesheetEntry;
+
+/**
+ * Binary form of the changes kept in the mutation log and snapshots:
+ *   ADD:    op, sequence number, id, then every TimesheetEntry field in CSV column order
+ *   DELETE: op, sequence number, id
+ * Text is written as its UTF-8 length (-1 for null) then bytes; numbers as is.
+ */
+final class EntryCodec {
+	static final byte ADD = 3;
+	static final byte DELETE = 4;
+
+	private EntryCodec() {
+	}
+
+	/**
+	 * A decoded change.
+	 */
+	static final class Change {
+		final long sequence;
+		final int id;
+		// null for deletes
+		final TimesheetEntry entry;
+
+		Change(long sequence, int id, TimesheetEntry entry) {
+			this.sequence = sequence;
+			this.id = id;
+			this.entry = entry;
+		}
+
+		boolean isDelete() {
+			return entry == null;
+		}
+	}
+
+	static byte[] encodeAdd(long sequence, int id, TimesheetEntry rec) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(ADD);
+			out.writeLong(sequence);
+			out.writeInt(id);
+			writeString(out, rec.getDate());
+			writeString(out, rec.getClient());
+			writeString(out, rec.getProject());
+			writeString(out, rec.getProjectCode());
+			writeString(out, rec.getTask());
+			out.writeDouble(rec.getHours());
+			out.writeDouble(rec.getHoursRounded());
+			writeString(out, rec.getIsBillable());
+			writeString(out, rec.getIsInvoiced());
+			writeString(out, rec.getIsApproved());
+			writeString(out, rec.getFirstName());
+			writeString(out, rec.getLastName());
+			writeString(out, rec.getDepartment());
+			writeString(out, rec.getIsEmployee());
+			out.writeInt(rec.getBillableRate());
+			out.writeInt(rec.getCostRate());
+			out.writeInt(rec.getCostAmount());
+			writeString(out, rec.getCurrency());
+			writeString(out, rec.getExternalRefURL());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);  // can't happen writing to memory
+		}
+		return bytes.toByteArray();
+	}
+
+	static byte[] encodeDelete(long sequence, int id) {
+		return ByteBuffer.allocate(13).put(DELETE).putLong(sequence).putInt(id).array();
+	}
+
+	/**
+	 * @throws IOException if the bytes aren't a change
+	 */
+	static Change decode(byte[] payload) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+		byte op = in.readByte();
+		long sequence = in.readLong();
+		int id = in.readInt();
+		switch (op) {
+		case DELETE:
+			return new Change(sequence, id, null);
+		case ADD:
+			return new Change(sequence, id, new TimesheetEntry(readString(in), // date
+					readString(in),  // client
+					readString(in),  // project
+					readString(in),  // project code
+					readString(in),  // task
+					in.readDouble(), // hours
+					in.readDouble(), // hoursRounded
+					readString(in),  // isBillable
+					readString(in),  // isInvoiced
+					readString(in),  // isApproved
+					readString(in),  // firstName
+					readString(in),  // lastName
+					readString(in),  // department
+					readString(in),  // isEmployee
+					in.readInt(),    // billableRate
+					in.readInt(),    // costRate
+					in.readInt(),    // costAmount
+					readString(in),  // currency
+					readString(in))); // externalRefUrl
+		default:
+			throw new IOException("Unknown change type " + op);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if ( s == null ) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if ( length < 0 ) {
+			return null;
+		}
+		byte[] utf8 = new byte[length];
+		in.readFully(utf8);
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+}
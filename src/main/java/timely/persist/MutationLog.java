@@ -0,0 +1,247 @@
+package timely.persist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of changes, kept in fixed-size memory-mapped segment files
+ * (log-0000000000.dat, log-0000000001.dat, ...).
+ *
+ * Each entry is [length][CRC32 of payload][payload]. The length is written
+ * last, so an entry cut short by a crash reads as a zero length (the end of
+ * the log) or fails its CRC; either way the log ends there on recovery.
+ * The rest of a segment is zeros. Appends land in the OS page cache, so they
+ * survive the process dying; sync() forces them to disk.
+ */
+class MutationLog implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MutationLog.class);
+	private static final String PREFIX = "log-";
+	private static final String SUFFIX = ".dat";
+	// length and CRC preceding each payload
+	private static final int HEADER_SIZE = 8;
+
+	/**
+	 * Receives the payloads of a log being replayed.
+	 */
+	interface Replayer {
+		void replay(byte[] payload) throws IOException;
+	}
+
+	private final Path directory;
+	private final int segmentSize;
+
+	private long segment;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	// entries appended since opening
+	private long appended;
+
+	MutationLog(Path directory, int segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Replays the log from a segment onward and positions it for appending
+	 * after the last intact entry. Anything after that (a torn or corrupt
+	 * entry, and any later segments) is discarded.
+	 *
+	 * @param fromSegment first segment to replay; earlier ones are ignored
+	 * @return number of entries replayed
+	 */
+	synchronized long open(long fromSegment, Replayer replayer) throws IOException {
+		List<Long> segments = new ArrayList<>();
+		for (long s : listSegments()) {
+			if ( s >= fromSegment ) {
+				segments.add(s);
+			}
+		}
+		if ( segments.isEmpty() ) {
+			startSegment(fromSegment);
+			return 0;
+		}
+
+		long replayed = 0;
+		for (int i = 0; i < segments.size(); i++) {
+			map(segments.get(i));
+			replayed += replaySegment(replayer);
+			if ( !atEnd() ) {
+				LOGGER.warn("open: log corrupt or torn at " + segmentPath(segment) + ":" + buffer.position()
+						+ "; discarding the rest of the log");
+				// clear the bad tail so later appends aren't followed by stale bytes
+				for (int p = buffer.position(); p < buffer.limit(); p++) {
+					buffer.put(p, (byte) 0);
+				}
+				for (int later = i + 1; later < segments.size(); later++) {
+					Files.deleteIfExists(segmentPath(segments.get(later)));
+				}
+				break;
+			}
+			if ( i < segments.size() - 1 ) {
+				channel.close();
+			}
+		}
+		return replayed;
+	}
+
+	// Replays the current segment from its start, leaving the buffer at the
+	// end of its last intact entry; returns the number of entries replayed
+	private long replaySegment(Replayer replayer) throws IOException {
+		long replayed = 0;
+		CRC32 crc = new CRC32();
+		while ( !atEnd() ) {
+			int start = buffer.position();
+			int length = buffer.getInt(start);
+			if ( length < 0 || length > buffer.limit() - start - HEADER_SIZE ) {
+				break;
+			}
+			byte[] payload = new byte[length];
+			buffer.position(start + HEADER_SIZE);
+			buffer.get(payload);
+			crc.reset();
+			crc.update(payload);
+			if ( (int) crc.getValue() != buffer.getInt(start + 4) ) {
+				buffer.position(start);
+				break;
+			}
+			try {
+				replayer.replay(payload);
+			} catch (IOException e) {
+				buffer.position(start);
+				LOGGER.warn("open: undecodable log entry: " + e);
+				break;
+			}
+			replayed++;
+		}
+		return replayed;
+	}
+
+	// True if the buffer is at the end of the segment's entries: the zeros
+	// after the last one, or too near the end to hold another
+	private boolean atEnd() {
+		return buffer.remaining() < HEADER_SIZE || buffer.getInt(buffer.position()) == 0;
+	}
+
+	/**
+	 * Appends one entry.
+	 *
+	 * @throws IllegalArgumentException if the payload can't fit in a segment
+	 */
+	synchronized void append(byte[] payload) throws IOException {
+		if ( payload.length + HEADER_SIZE > segmentSize ) {
+			throw new IllegalArgumentException("Log entry of " + payload.length + " bytes exceeds the segment size");
+		}
+		if ( buffer.remaining() < payload.length + HEADER_SIZE ) {
+			roll();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		int start = buffer.position();
+		buffer.position(start + 4);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(payload);
+		// length last: until it's written, the entry reads as the end of the log
+		buffer.putInt(start, payload.length);
+		appended++;
+	}
+
+	/**
+	 * Appends several entries under one lock.
+	 *
+	 * @throws IllegalArgumentException if a payload can't fit in a segment
+	 */
+	synchronized void append(List<byte[]> payloads) throws IOException {
+		for (byte[] payload : payloads) {
+			append(payload);
+		}
+	}
+
+	/**
+	 * Moves appends on to a new segment.
+	 *
+	 * @return number of the new segment; every earlier entry is in an earlier one
+	 */
+	synchronized long roll() throws IOException {
+		buffer.force();
+		channel.close();
+		startSegment(segment + 1);
+		return segment;
+	}
+
+	/**
+	 * Forces appended entries to disk.
+	 */
+	synchronized void sync() {
+		buffer.force();
+	}
+
+	synchronized long getAppended() {
+		return appended;
+	}
+
+	/**
+	 * Deletes the segments before the given one.
+	 */
+	void deleteBefore(long firstKept) throws IOException {
+		for (long s : listSegments()) {
+			if ( s < firstKept ) {
+				Files.deleteIfExists(segmentPath(s));
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if ( channel != null ) {
+			buffer.force();
+			channel.close();
+			channel = null;
+		}
+	}
+
+	private void startSegment(long number) throws IOException {
+		map(number);
+		Snapshot.syncDirectory(directory);  // so a crash can't lose the segment, synced entries and all
+		LOGGER.debug("startSegment: " + segmentPath(number));
+	}
+
+	private void map(long number) throws IOException {
+		segment = number;
+		channel = FileChannel.open(segmentPath(number),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, channel.size()));
+	}
+
+	private Path segmentPath(long number) {
+		return directory.resolve(String.format("%s%010d%s", PREFIX, number, SUFFIX));
+	}
+
+	private List<Long> listSegments() throws IOException {
+		List<Long> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					segments.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+				} catch (NumberFormatException e) {
+					LOGGER.warn("listSegments: ignoring " + file);
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+}
@@ -0,0 +1,198 @@
+package timely.persist;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import timely.core.TimesheetEntry;
+import timely.service.Journal;
+import timely.service.RecordsService;
+
+/**
+ * Keeps RecordsService's records on disk, so they survive restarts.
+ *
+ * Every add and delete is appended to a memory-mapped MutationLog. Now and
+ * then (and on shutdown) the records are written out as a Snapshot and the
+ * log segments it covers are deleted. On start, the latest snapshot is
+ * mapped and loaded, then only the log written since it is replayed; a log
+ * cut short by a crash is replayed up to its last intact entry.
+ *
+ * Changes are kept with their sequence numbers, so the numbering (and the
+ * feed id naming it, kept in feed-id) carries on across restarts.
+ */
+public class Persistence implements Managed, Journal {
+	private static final Logger LOGGER = LoggerFactory.getLogger(Persistence.class);
+	private static final String FEED_ID = "feed-id";
+
+	private final Path directory;
+	private final RecordsService recSvc;
+	private final MutationLog log;
+	private final long snapshotIntervalMillis;
+	private final long syncIntervalMillis;
+
+	private ScheduledExecutorService scheduler;
+	// log entries appended as of the last snapshot; -1 if the log has entries no snapshot covers
+	private long snapshotAppended;
+
+	public Persistence(Path directory, int segmentSize, long snapshotIntervalMillis, long syncIntervalMillis, RecordsService recSvc) {
+		this.directory = directory;
+		this.recSvc = recSvc;
+		this.log = new MutationLog(directory, segmentSize);
+		this.snapshotIntervalMillis = snapshotIntervalMillis;
+		this.syncIntervalMillis = syncIntervalMillis;
+	}
+
+	/**
+	 * Loads the persisted records into the (empty) service, then starts
+	 * journaling its changes.
+	 */
+	@Override
+	public void start() throws IOException {
+		long startNanos = System.nanoTime();
+		Files.createDirectories(directory);
+
+		long firstSegment = 0;
+		Path snapshot = Snapshot.latest(directory);
+		if ( snapshot != null ) {
+			firstSegment = Snapshot.load(snapshot, recSvc);
+		}
+		int restored = recSvc.size();
+		long replayed = log.open(firstSegment, this::replay);
+		snapshotAppended = replayed > 0 ? -1 : 0;
+		restoreFeedId();
+		recSvc.setJournal(this);
+
+		LOGGER.info("start: loaded " + restored + " records from " + (snapshot == null ? "no snapshot" : snapshot)
+				+ " and replayed " + replayed + " log entries in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms; "
+				+ recSvc.size() + " records in total");
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "persistence");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(log::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+		scheduler.scheduleWithFixedDelay(this::snapshotQuietly, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Takes a final snapshot, so the next start has no log to replay.
+	 */
+	@Override
+	public void stop() throws Exception {
+		scheduler.shutdown();
+		scheduler.awaitTermination(1, TimeUnit.MINUTES);
+		recSvc.setJournal(Journal.NONE);
+		snapshot();
+		log.close();
+	}
+
+	@Override
+	public void recordAdded(long sequence, int id, TimesheetEntry rec) {
+		append(EntryCodec.encodeAdd(sequence, id, rec));
+	}
+
+	@Override
+	public void recordsAdded(long firstSequence, int[] ids, List<TimesheetEntry> recs) {
+		List<byte[]> payloads = new ArrayList<>(ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			payloads.add(EntryCodec.encodeAdd(firstSequence + i, ids[i], recs.get(i)));
+		}
+		try {
+			log.append(payloads);
+		} catch (IOException e) {
+			LOGGER.error("recordsAdded: couldn't log " + ids.length + " changes", e);
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void recordDeleted(long sequence, int id) {
+		append(EntryCodec.encodeDelete(sequence, id));
+	}
+
+	/**
+	 * Writes a snapshot of the records, if they've changed since the last
+	 * one, and deletes the log it makes redundant.
+	 */
+	public synchronized void snapshot() throws IOException {
+		if ( log.getAppended() == snapshotAppended ) {
+			return;
+		}
+		long startNanos = System.nanoTime();
+		// changes from here on go to the new segment, which is kept
+		long firstSegment = log.roll();
+		long appended = log.getAppended();
+		long count = Snapshot.write(directory, firstSegment, recSvc);
+		Snapshot.deleteBefore(directory, firstSegment);
+		log.deleteBefore(firstSegment);
+		snapshotAppended = appended;
+		LOGGER.info("snapshot: wrote " + count + " changes in "
+				+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + " ms");
+	}
+
+	private void snapshotQuietly() {
+		try {
+			snapshot();
+		} catch (IOException | RuntimeException e) {
+			// the log still has every change; try again next time
+			LOGGER.error("snapshotQuietly: snapshot failed", e);
+		}
+	}
+
+	private void append(byte[] payload) {
+		try {
+			log.append(payload);
+		} catch (IOException e) {
+			LOGGER.error("append: couldn't log change", e);
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void replay(byte[] payload) throws IOException {
+		EntryCodec.Change change = EntryCodec.decode(payload);
+		if ( change.sequence <= recSvc.getSequence() ) {
+			return;  // logged while the snapshot was written, which has it
+		}
+		if ( change.isDelete() ) {
+			recSvc.restoreDelete(change.sequence, change.id);
+		} else {
+			recSvc.restoreEntry(change.sequence, change.id, change.entry);
+		}
+	}
+
+	// Carries on the feed id the restored numbering had, or keeps the new
+	// one if there's none
+	private void restoreFeedId() throws IOException {
+		Path file = directory.resolve(FEED_ID);
+		if ( Files.exists(file) ) {
+			recSvc.setFeedId(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+			return;
+		}
+		Path temp = directory.resolve(FEED_ID + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(recSvc.getFeedId().getBytes(StandardCharsets.UTF_8)));
+			channel.force(true);
+		}
+		Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+		Snapshot.syncDirectory(directory);
+	}
+}
@@ -0,0 +1,91 @@
+package timely.persist;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import io.dropwizard.util.SizeUnit;
+import io.dropwizard.validation.MaxSize;
+import io.dropwizard.validation.MinDuration;
+import io.dropwizard.validation.MinSize;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.constraints.NotNull;
+
+import timely.service.RecordsService;
+
+/**
+ * The persistence section of the configuration. Without a directory,
+ * records are kept in memory only.
+ */
+public class PersistenceFactory {
+	// Where the log and snapshots are kept
+	private String directory;
+
+	// Size of each memory-mapped log file
+	@NotNull
+	@MinSize(value = 1, unit = SizeUnit.MEGABYTES)
+	@MaxSize(value = 1, unit = SizeUnit.GIGABYTES)
+	private Size segmentSize = Size.megabytes(64);
+
+	// How often the records are snapshotted (if they've changed)
+	@NotNull
+	@MinDuration(value = 1, unit = TimeUnit.SECONDS)
+	private Duration snapshotInterval = Duration.minutes(10);
+
+	// How often logged changes are forced to disk
+	@NotNull
+	@MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+	private Duration syncInterval = Duration.seconds(1);
+
+	public boolean isEnabled() {
+		return directory != null;
+	}
+
+	public Persistence build(RecordsService recSvc) {
+		return new Persistence(Paths.get(directory), (int) segmentSize.toBytes(),
+				snapshotInterval.toMilliseconds(), syncInterval.toMilliseconds(), recSvc);
+	}
+
+	@JsonProperty
+	public String getDirectory() {
+		return directory;
+	}
+
+	@JsonProperty
+	public void setDirectory(String directory) {
+		this.directory = directory;
+	}
+
+	@JsonProperty
+	public Size getSegmentSize() {
+		return segmentSize;
+	}
+
+	@JsonProperty
+	public void setSegmentSize(Size segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
+	@JsonProperty
+	public Duration getSnapshotInterval() {
+		return snapshotInterval;
+	}
+
+	@JsonProperty
+	public void setSnapshotInterval(Duration snapshotInterval) {
+		this.snapshotInterval = snapshotInterval;
+	}
+
+	@JsonProperty
+	public Duration getSyncInterval() {
+		return syncInterval;
+	}
+
+	@JsonProperty
+	public void setSyncInterval(Duration syncInterval) {
+		this.syncInterval = syncInterval;
+	}
+}
@@ -0,0 +1,225 @@
+package timely.persist;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import timely.service.Change;
+import timely.service.RecordsService;
+
+/**
+ * Compact copy of every record (with its id and sequence number) as of some
+ * point in the mutation log, in snapshot-NNNNNNNNNN.dat. NNNNNNNNNN is the
+ * first log segment to replay over it.
+ *
+ * Layout: magic, first segment, entry count, latest sequence number, change
+ * floor, id limit (so ids of records deleted before it aren't reused), then
+ * one entry per change in the change log (every record's add, and the
+ * deletes kept) laid out as in the log ([length][CRC32][payload]). A
+ * snapshot is written to a temporary file and renamed into place once
+ * complete, so one that exists is whole.
+ */
+final class Snapshot {
+	private static final Logger LOGGER = LoggerFactory.getLogger(Snapshot.class);
+	private static final String PREFIX = "snapshot-";
+	private static final String SUFFIX = ".dat";
+	private static final long MAGIC = 0x54494d454c593032L;  // "TIMELY02"
+	private static final int COUNT_OFFSET = 16;
+
+	private Snapshot() {
+	}
+
+	/**
+	 * Writes a snapshot of the service's records. Records may change while
+	 * it's written; the changes are in the log from firstSegment on, and
+	 * replaying those numbered after the snapshot's latest yields the same
+	 * records either way.
+	 *
+	 * @return number of changes written
+	 */
+	static long write(Path directory, long firstSegment, RecordsService recSvc) throws IOException {
+		Path temp = directory.resolve(PREFIX + "tmp");
+		long count;
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+			out.writeLong(MAGIC);
+			out.writeLong(firstSegment);
+			// count, sequence, floor and id limit, filled in below
+			out.writeLong(0);
+			out.writeLong(0);
+			out.writeLong(0);
+			out.writeInt(0);
+			Writer writer = new Writer(out);
+			long sequence;
+			try {
+				sequence = recSvc.forEachChange(0, writer);
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			// read after, so they're no lower than the floor and ids of the changes written
+			long floor = recSvc.getChangeFloor();
+			int idLimit = recSvc.getIdLimit();
+			out.flush();
+			count = writer.count;
+			ByteBuffer header = ByteBuffer.allocate(28).putLong(count).putLong(sequence).putLong(floor)
+					.putInt(idLimit);
+			header.flip();
+			channel.write(header, COUNT_OFFSET);
+			channel.force(true);
+		}
+		Files.move(temp, path(directory, firstSegment), StandardCopyOption.ATOMIC_MOVE);
+		// the rename is only durable once the directory is; the old log is deleted next
+		syncDirectory(directory);
+		return count;
+	}
+
+	/**
+	 * Forces a directory's entries (files created, renamed or deleted in it)
+	 * to disk. Where directories can't be opened (e.g. Windows) it's left to
+	 * the file system.
+	 */
+	static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			LOGGER.debug("syncDirectory: can't force " + directory + ": " + e);
+		}
+	}
+
+	/**
+	 * Maps a snapshot and restores its records, and the numbering of
+	 * changes, into the service.
+	 *
+	 * @return the first log segment to replay over it
+	 * @throws IOException if the snapshot can't be read or is corrupt
+	 */
+	static long load(Path file, RecordsService recSvc) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if ( buffer.remaining() < 44 || buffer.getLong() != MAGIC ) {
+				throw new IOException(file + " is not a snapshot");
+			}
+			long firstSegment = buffer.getLong();
+			long count = buffer.getLong();
+			long sequence = buffer.getLong();
+			long floor = buffer.getLong();
+			int idLimit = buffer.getInt();
+			CRC32 crc = new CRC32();
+			for (long i = 0; i < count; i++) {
+				if ( buffer.remaining() < 8 ) {
+					throw new IOException(file + " is truncated after " + i + " of " + count + " records");
+				}
+				int length = buffer.getInt();
+				int expectedCrc = buffer.getInt();
+				if ( length < 0 || length > buffer.remaining() ) {
+					throw new IOException(file + " is corrupt at record " + i);
+				}
+				byte[] payload = new byte[length];
+				buffer.get(payload);
+				crc.reset();
+				crc.update(payload);
+				if ( (int) crc.getValue() != expectedCrc ) {
+					throw new IOException(file + " is corrupt at record " + i);
+				}
+				EntryCodec.Change change = EntryCodec.decode(payload);
+				if ( change.isDelete() ) {
+					recSvc.restoreDelete(change.sequence, change.id);
+				} else {
+					recSvc.restoreEntry(change.sequence, change.id, change.entry);
+				}
+			}
+			recSvc.restoreSequence(sequence, floor);
+			recSvc.restoreIdLimit(idLimit);
+			return firstSegment;
+		}
+	}
+
+	/**
+	 * @return the newest snapshot in the directory, or null if there is none
+	 */
+	static Path latest(Path directory) throws IOException {
+		Path latest = null;
+		long latestSegment = -1;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path file : files) {
+				long segment = segmentOf(file);
+				if ( segment > latestSegment ) {
+					latest = file;
+					latestSegment = segment;
+				}
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * Deletes the snapshots older than the given one.
+	 */
+	static void deleteBefore(Path directory, long firstSegment) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			for (Path file : files) {
+				long segment = segmentOf(file);
+				if ( segment >= 0 && segment < firstSegment ) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+
+	// Writes each change as a log entry
+	private static final class Writer implements Consumer<Change> {
+		private final DataOutputStream out;
+		private final CRC32 crc = new CRC32();
+		private long count;
+
+		Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void accept(Change change) {
+			byte[] payload = change.isDelete() ? EntryCodec.encodeDelete(change.getSequence(), change.getId())
+					: EntryCodec.encodeAdd(change.getSequence(), change.getId(), change.getEntry());
+			crc.reset();
+			crc.update(payload);
+			try {
+				out.writeInt(payload.length);
+				out.writeInt((int) crc.getValue());
+				out.write(payload);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			count++;
+		}
+	}
+
+	private static Path path(Path directory, long firstSegment) {
+		return directory.resolve(String.format("%s%010d%s", PREFIX, firstSegment, SUFFIX));
+	}
+
+	// segment number in a snapshot's name, or -1 if it has none
+	private static long segmentOf(Path file) {
+		String name = file.getFileName().toString();
+		try {
+			return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package timely.resources;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+import timely.service.Change;
+import timely.service.RecordsService;
+
+/**
+ * The changes after a sequence number (see RecordsService.forEachChange),
+ * written straight to the response stream as they're read, so the output
+ * can be any size: every record, for a full export.
+ *
+ * As newline-delimited JSON, one change per line:
+ *
+ * <pre>
+ * {"seq":1,"op":"add","id":0,"entry":{"date":"3/19/2016",...}}
+ * {"seq":2,"op":"delete","id":0}
+ * </pre>
+ *
+ * As CSV, the columns of a CSV upload in the same order, then the sequence
+ * number, add or delete, and the id. Deletes leave the upload columns empty.
+ * Values holding commas, double quotes or line breaks are quoted as RFC 4180
+ * has it, which CsvImporter reads back.
+ */
+class ChangeFeed {
+	static final String CSV = "text/csv";
+	// Response header naming the run whose sequence numbers these are
+	static final String FEED_ID_HEADER = "X-Feed-Id";
+
+	private static final MediaType NDJSON_TYPE = MediaType.valueOf(TimesheetEntryResource.NDJSON);
+	private static final MediaType CSV_TYPE = MediaType.valueOf(CSV);
+	private static final String CSV_HEADINGS = "Date,Client,Project,Project Code,Task,Hours,Hours Rounded,"
+			+ "Billable?,Invoiced?,Approved?,First Name,Last Name,Department,Employee?,"
+			+ "Billable Rate,Cost Rate,Cost Amount,Currency,External Reference URL,"
+			+ "Sequence,Change,Id";
+	private static final List<EntryField> FIELDS = EntryField.all();
+
+	private ChangeFeed() {
+	}
+
+	/**
+	 * @param acceptable media types the client accepts, most preferred first
+	 * @return true if it prefers CSV to newline-delimited JSON
+	 */
+	static boolean prefersCsv(List<MediaType> acceptable) {
+		for (MediaType type : acceptable) {
+			if ( type.isCompatible(NDJSON_TYPE) ) {
+				return false;
+			}
+			if ( type.isCompatible(CSV_TYPE) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return response entity writing the changes after since as newline-delimited JSON
+	 */
+	static StreamingOutput asNdjson(JsonFactory jsonFactory, RecordsService recSvc, long since) {
+		return out -> {
+			try (JsonGenerator gen = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+				gen.setRootValueSeparator(null);  // each line ends with its own newline
+				forEachChange(recSvc, since, change -> {
+					gen.writeStartObject();
+					gen.writeNumberField("seq", change.getSequence());
+					gen.writeStringField("op", change.isDelete() ? "delete" : "add");
+					gen.writeNumberField("id", change.getId());
+					if ( !change.isDelete() ) {
+						gen.writeFieldName("entry");
+						Projection.ALL.writeObject(gen, change.getEntry());
+					}
+					gen.writeEndObject();
+					gen.writeRaw('\n');
+				});
+			}
+		};
+	}
+
+	/**
+	 * @return response entity writing the changes after since as CSV, with a heading line
+	 */
+	static StreamingOutput asCsv(RecordsService recSvc, long since) {
+		return out -> {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			writer.write(CSV_HEADINGS);
+			writer.write('\n');
+			forEachChange(recSvc, since, change -> {
+				TimesheetEntry rec = change.getEntry();
+				for (EntryField field : FIELDS) {
+					if ( rec != null ) {
+						writeValue(writer, field, rec);
+					}
+					writer.write(',');
+				}
+				writer.write(Long.toString(change.getSequence()));
+				writer.write(change.isDelete() ? ",delete," : ",add,");
+				writer.write(Integer.toString(change.getId()));
+				writer.write('\n');
+			});
+			writer.flush();
+		};
+	}
+
+	// As CsvImporter reads it: empty for null, quoted only if need be
+	private static void writeValue(Writer writer, EntryField field, TimesheetEntry rec) throws IOException {
+		if ( field.isString() ) {
+			String value = field.getString(rec);
+			if ( value != null ) {
+				writeText(writer, value);
+			}
+		} else if ( field.getType() == int.class ) {
+			writer.write(Integer.toString(field.getInt(rec)));
+		} else {
+			writer.write(Double.toString(field.getDouble(rec)));
+		}
+	}
+
+	private static void writeText(Writer writer, String value) throws IOException {
+		if ( !needsQuotes(value) ) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ( c == '"' ) {
+				writer.write('"');  // doubled
+			}
+			writer.write(c);
+		}
+		writer.write('"');
+	}
+
+	private static boolean needsQuotes(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ( c == ',' || c == '"' || c == '\n' || c == '\r' ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes one change.
+	 */
+	private interface ChangeWriter {
+		void write(Change change) throws IOException;
+	}
+
+	private static void forEachChange(RecordsService recSvc, long since, ChangeWriter writer) throws IOException {
+		try {
+			recSvc.forEachChange(since, change -> {
+				try {
+					writer.write(change);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();  // e.g. the client went away
+		}
+	}
+}
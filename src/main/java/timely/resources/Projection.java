@@ -0,0 +1,185 @@
+package timely.resources;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+import timely.core.UnknownFieldException;
+
+/**
+ * The fields of TimesheetEntry to output (showFields/removeFields), compiled
+ * to accessors and pre-encoded field names. Records are written straight to
+ * the response stream in a single pass, emitting only those fields, in any
+ * of the ResponseFormats.
+ *
+ * Projections are compiled once per distinct field list and cached.
+ */
+class Projection {
+	// Distinct field lists cached; past this, projections are compiled per request
+	private static final int MAX_CACHED = 256;
+	private static final ConcurrentMap<String, Projection> CACHE = new ConcurrentHashMap<>();
+
+	static final Projection ALL = new Projection(EntryField.all());
+
+	private final EntryField[] fields;
+	private final SerializableString[] names;
+	private final String key;
+
+	private Projection(List<EntryField> fields) {
+		this.fields = fields.toArray(new EntryField[fields.size()]);
+		this.names = new SerializableString[this.fields.length];
+		String[] fieldNames = new String[this.fields.length];
+		for (int i = 0; i < names.length; i++) {
+			fieldNames[i] = this.fields[i].getName();
+			names[i] = new SerializedString(fieldNames[i]);
+		}
+		this.key = String.join(",", fieldNames);
+	}
+
+	/**
+	 * @param fieldNames fields to output, in order (case-insensitive)
+	 * @throws UnknownFieldException if any name isn't a TimesheetEntry field
+	 */
+	static Projection including(String[] fieldNames) {
+		return cached("+" + String.join(",", fieldNames), () -> {
+			Set<EntryField> fields = new LinkedHashSet<>();
+			for (String name : fieldNames) {
+				fields.add(EntryField.forName(name));
+			}
+			return new Projection(new ArrayList<>(fields));
+		});
+	}
+
+	/**
+	 * @param fieldNames fields to leave out (case-insensitive)
+	 * @throws UnknownFieldException if any name isn't a TimesheetEntry field
+	 */
+	static Projection excluding(String[] fieldNames) {
+		return cached("-" + String.join(",", fieldNames), () -> {
+			List<EntryField> fields = new ArrayList<>(EntryField.all());
+			for (String name : fieldNames) {
+				fields.remove(EntryField.forName(name));
+			}
+			return new Projection(fields);
+		});
+	}
+
+	private static Projection cached(String key, Supplier<Projection> compiler) {
+		Projection projection = CACHE.get(key);
+		if ( projection == null ) {
+			projection = compiler.get();
+			if ( CACHE.size() < MAX_CACHED ) {
+				CACHE.putIfAbsent(key, projection);
+			}
+		}
+		return projection;
+	}
+
+	List<EntryField> getFields() {
+		return Arrays.asList(fields);
+	}
+
+	/**
+	 * @return the fields output, in order; equal for projections with equal output
+	 */
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return response entity writing the records as a JSON array
+	 */
+	StreamingOutput asJson(JsonFactory jsonFactory, Iterable<TimesheetEntry> recs) {
+		return as(ResponseFormat.JSON, jsonFactory, recs);
+	}
+
+	/**
+	 * @param jsonFactory factory for the JSON formats
+	 * @return response entity writing the records in the given format
+	 */
+	StreamingOutput as(ResponseFormat format, JsonFactory jsonFactory, Iterable<TimesheetEntry> recs) {
+		JsonFactory factory = format.factory(jsonFactory);
+		return out -> {
+			try (JsonGenerator gen = factory.createGenerator(out, JsonEncoding.UTF8)) {
+				if ( format == ResponseFormat.ROWS ) {
+					writeRows(gen, recs);
+				} else {
+					writeArray(gen, recs);
+				}
+			}
+		};
+	}
+
+	void writeArray(JsonGenerator gen, Iterable<TimesheetEntry> recs) throws IOException {
+		gen.writeStartArray();
+		for (TimesheetEntry rec : recs) {
+			writeObject(gen, rec);
+		}
+		gen.writeEndArray();
+	}
+
+	/**
+	 * Writes the field names once, then each record as an array of values:
+	 * {"fields":[...],"rows":[[...],...]}
+	 */
+	void writeRows(JsonGenerator gen, Iterable<TimesheetEntry> recs) throws IOException {
+		gen.writeStartObject();
+		gen.writeFieldName("fields");
+		gen.writeStartArray();
+		for (SerializableString name : names) {
+			gen.writeString(name);
+		}
+		gen.writeEndArray();
+		gen.writeFieldName("rows");
+		gen.writeStartArray();
+		for (TimesheetEntry rec : recs) {
+			gen.writeStartArray();
+			for (EntryField field : fields) {
+				writeValue(gen, field, rec);
+			}
+			gen.writeEndArray();
+		}
+		gen.writeEndArray();
+		gen.writeEndObject();
+	}
+
+	void writeObject(JsonGenerator gen, TimesheetEntry rec) throws IOException {
+		gen.writeStartObject();
+		for (int i = 0; i < fields.length; i++) {
+			gen.writeFieldName(names[i]);
+			writeValue(gen, fields[i], rec);
+		}
+		gen.writeEndObject();
+	}
+
+	static void writeValue(JsonGenerator gen, EntryField field, TimesheetEntry rec) throws IOException {
+		if ( field.isString() ) {
+			String value = field.getString(rec);
+			if ( value == null ) {
+				gen.writeNull();
+			} else {
+				gen.writeString(value);
+			}
+		} else if ( field.getType() == int.class ) {
+			gen.writeNumber(field.getInt(rec));
+		} else {
+			gen.writeNumber(field.getDouble(rec));
+		}
+	}
+}
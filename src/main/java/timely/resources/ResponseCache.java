@@ -0,0 +1,139 @@
+package timely.resources;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serialized search responses, keyed on the normalized query and the
+ * projection, so a repeated search is answered with the bytes written last
+ * time instead of being run and serialized again.
+ *
+ * Each response is tagged with the records' generation when its search ran.
+ * It's only served while the generation is unchanged: any add or delete
+ * retires every cached response at once, without tracking which records
+ * each one contained.
+ *
+ * Bounded by total size (bodies, keys and a per-entry allowance), evicting
+ * the least recently used. Responses larger than maxEntrySize aren't kept.
+ */
+public class ResponseCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCache.class);
+	// Rough heap taken by an entry besides its key and body
+	private static final int ENTRY_OVERHEAD = 128;
+
+	/**
+	 * A response as it was written.
+	 */
+	static final class Cached {
+		final long generation;
+		final byte[] body;
+		final String nextCursor;
+
+		Cached(long generation, byte[] body, String nextCursor) {
+			this.generation = generation;
+			this.body = body;
+			this.nextCursor = nextCursor;
+		}
+	}
+
+	// null when caching is off
+	private final Cache<String, Cached> cache;
+	private final int maxEntrySize;
+
+	/**
+	 * @param maxSize most bytes to hold; 0 turns caching off
+	 * @param maxEntrySize largest response body kept, in bytes
+	 */
+	public ResponseCache(long maxSize, int maxEntrySize) {
+		this.maxEntrySize = maxEntrySize;
+		this.cache = maxSize == 0 ? null : CacheBuilder.newBuilder()
+				.maximumWeight(maxSize)
+				.weigher((String key, Cached cached) -> ENTRY_OVERHEAD + 2 * key.length() + cached.body.length)
+				.build();
+	}
+
+	/**
+	 * @return the response cached under the key for this generation, or null
+	 */
+	Cached get(String key, long generation) {
+		if ( cache == null ) {
+			return null;
+		}
+		Cached cached = cache.getIfPresent(key);
+		if ( cached == null ) {
+			return null;
+		}
+		if ( cached.generation != generation ) {
+			// records changed since; don't let it take up room until evicted
+			cache.asMap().remove(key, cached);
+			return null;
+		}
+		return cached;
+	}
+
+	/**
+	 * Wraps a response body so that, once written in full, a copy is cached
+	 * under the key. The copy is dropped if it grows past maxEntrySize.
+	 *
+	 * @param generation records' generation before the search that produced the body ran
+	 */
+	StreamingOutput capture(String key, long generation, StreamingOutput body, String nextCursor) {
+		if ( cache == null ) {
+			return body;
+		}
+		return out -> {
+			Tee tee = new Tee(out, maxEntrySize);
+			body.write(tee);
+			if ( tee.copy != null ) {
+				cache.put(key, new Cached(generation, tee.copy.toByteArray(), nextCursor));
+			} else {
+				LOGGER.debug("capture: response to " + key + " exceeds " + maxEntrySize + " bytes; not cached");
+			}
+		};
+	}
+
+	// Passes writes through, keeping a copy until it gets too large
+	private static final class Tee extends FilterOutputStream {
+		private final int limit;
+		private ByteArrayOutputStream copy = new ByteArrayOutputStream(8192);
+
+		Tee(OutputStream out, int limit) {
+			super(out);
+			this.limit = limit;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			if ( copy != null ) {
+				copy.write(b);
+				checkLimit();
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			if ( copy != null ) {
+				copy.write(b, off, len);
+				checkLimit();
+			}
+		}
+
+		private void checkLimit() {
+			if ( copy.size() > limit ) {
+				copy = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package timely.resources;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Encodings of search results, chosen by the request's Accept header.
+ *
+ * JSON, Smile and CBOR carry the same array of objects, one per record.
+ * ROWS is JSON that names the fields once, then gives each record as an
+ * array of values in that order:
+ *
+ * <pre>
+ * {"fields":["date","client",...],"rows":[["1/2/2017","Acme",...],...]}
+ * </pre>
+ */
+enum ResponseFormat {
+	JSON(MediaType.APPLICATION_JSON),
+	ROWS(ResponseFormat.ROWS_JSON),
+	SMILE(ResponseFormat.SMILE_TYPE),
+	CBOR(ResponseFormat.CBOR_TYPE);
+
+	static final String ROWS_JSON = "application/vnd.timely.rows+json";
+	static final String SMILE_TYPE = "application/x-jackson-smile";
+	static final String CBOR_TYPE = "application/cbor";
+
+	// Binary encoders; thread-safe once configured, like JSON's
+	private static final JsonFactory SMILE_FACTORY = new SmileFactory();
+	private static final JsonFactory CBOR_FACTORY = new CBORFactory();
+
+	private final MediaType mediaType;
+
+	ResponseFormat(String mediaType) {
+		this.mediaType = MediaType.valueOf(mediaType);
+	}
+
+	MediaType getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * @param jsonFactory factory for the JSON formats
+	 * @return factory of the generators writing this format
+	 */
+	JsonFactory factory(JsonFactory jsonFactory) {
+		switch (this) {
+		case SMILE:
+			return SMILE_FACTORY;
+		case CBOR:
+			return CBOR_FACTORY;
+		case JSON:
+		case ROWS:
+		default:
+			return jsonFactory;
+		}
+	}
+
+	/**
+	 * @param acceptable media types the client accepts, most preferred first
+	 * @return the first format the client accepts; JSON if it accepts none
+	 */
+	static ResponseFormat negotiate(List<MediaType> acceptable) {
+		for (MediaType type : acceptable) {
+			for (ResponseFormat format : values()) {
+				if ( type.isCompatible(format.mediaType) ) {
+					return format;
+				}
+			}
+		}
+		return JSON;
+	}
+}
@@ -0,0 +1,127 @@
+package timely.resources;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs heavy requests (searches and aggregations) off the request threads,
+ * on a fixed pool of its own with a bounded queue in front. The response,
+ * serialization included, is written from the pool.
+ *
+ * A request that finds the queue full is answered at once with 503 Service
+ * Unavailable and a Retry-After header, rather than waiting. So a burst of
+ * broad searches can't tie up the Jetty threads that light requests
+ * (single-entry POSTs, gets and deletes) are served on.
+ *
+ * Kinds of request that take very different times get pools of their own
+ * (long change exports aren't queued behind searches, nor searches behind
+ * them); each pool's metrics are under its name.
+ */
+public class SearchExecutor implements Managed {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SearchExecutor.class);
+
+	private final String name;
+	private final ThreadPoolExecutor executor;
+	private final long retryAfterSeconds;
+	private final Timer queueWait;
+	private final Timer execution;
+	private final Meter rejected;
+
+	/**
+	 * @param name what the pool runs (e.g. search); names its threads and metrics
+	 * @param threads requests run at once
+	 * @param queueSize most requests waiting to run; more are turned away
+	 * @param retryAfter how long turned away clients are told to wait
+	 */
+	public SearchExecutor(String name, int threads, int queueSize, Duration retryAfter, MetricRegistry metrics) {
+		this.name = name;
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize),
+				new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+		this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+		this.queueWait = metrics.timer(MetricRegistry.name(SearchExecutor.class, name, "queueWait"));
+		this.execution = metrics.timer(MetricRegistry.name(SearchExecutor.class, name, "execution"));
+		this.rejected = metrics.meter(MetricRegistry.name(SearchExecutor.class, name, "rejected"));
+		metrics.register(MetricRegistry.name(SearchExecutor.class, name, "queued"),
+				(Gauge<Integer>) () -> executor.getQueue().size());
+		metrics.register(MetricRegistry.name(SearchExecutor.class, name, "running"),
+				(Gauge<Integer>) executor::getActiveCount);
+	}
+
+	/**
+	 * Queues a request to be answered on the pool, or answers it with 503
+	 * now if the queue is full. Exceptions the request throws go to
+	 * Jersey's exception mappers, as they would on a request thread; so do
+	 * errors (e.g. OutOfMemoryError), so the client isn't left waiting,
+	 * before they're rethrown.
+	 *
+	 * @param request computes the response
+	 */
+	public void submit(AsyncResponse response, Supplier<Response> request) {
+		long queued = System.nanoTime();
+		try {
+			executor.execute(() -> {
+				queueWait.update(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+				Timer.Context running = execution.time();
+				try {
+					response.resume(request.get());
+				} catch (Throwable t) {
+					response.resume(t);
+					if ( t instanceof Error ) {
+						throw (Error) t;
+					}
+				} finally {
+					running.stop();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.mark();
+			LOGGER.info("submit: " + executor.getQueue().size() + " " + name + " requests queued; turning one away");
+			response.resume(overloaded());
+		}
+	}
+
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public void stop() throws InterruptedException {
+		executor.shutdown();
+		if ( !executor.awaitTermination(30, TimeUnit.SECONDS) ) {
+			LOGGER.warn("stop: " + name + " requests still running after 30 seconds; interrupting them");
+			executor.shutdownNow();
+		}
+	}
+
+	private Response overloaded() {
+		Response.Status status = Response.Status.SERVICE_UNAVAILABLE;
+		return Response.status(status)
+				.header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+				.type(MediaType.APPLICATION_JSON)
+				.entity(new ErrorMessage(status.getStatusCode(),
+						"Too many " + name + " requests in progress (" + executor.getQueue().size() + " queued); try again later"))
+				.build();
+	}
+}
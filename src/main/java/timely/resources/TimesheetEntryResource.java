@@ -1,154 +1,331 @@
 package timely.resources;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.lang.reflect.InvocationTargetException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.function.Supplier;
 
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
+import io.dropwizard.jersey.errors.ErrorMessage;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import timely.core.AggregateRow;
 import timely.core.TimesheetEntry;
+import timely.core.UnknownFieldException;
+import timely.service.Explain;
+import timely.service.GroupCommitter;
+import timely.service.NumericRange;
+import timely.service.Page;
+import timely.service.Query;
 import timely.service.RecordsService;
+import timely.service.TextMatch;
+import timely.tasks.JsonImporter;
+import timely.tasks.JsonImporter.JsonImportReport;
 
 @Path("/timeEntry")
 public class TimesheetEntryResource {
 	private static final Logger LOGGER = LoggerFactory.getLogger(TimesheetEntryResource.class);
+	// Per-request and per-entry messages; set its level to OFF to silence them under load
+	private static final Logger ENTRY_LOGGER = LoggerFactory.getLogger("timely.entries");
+	// Response header carrying the cursor for the next page of results
+	static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	// Newline-delimited JSON: one entry per line
+	static final String NDJSON = "application/x-ndjson";
 
 	final RecordsService recSvc;
-
-	public TimesheetEntryResource(RecordsService recSvc) {
+	private final GroupCommitter committer;
+	private final JsonImporter jsonImporter;
+	private final JsonFactory jsonFactory;
+	private final ResponseCache responseCache;
+	private final SearchExecutor searches;
+	// change feeds, which may run for as long as a full export takes
+	private final SearchExecutor exports;
+	// writing search results out, with their projection
+	private final Timer serializeTimer;
+	private final Meter cacheHits;
+	private final Meter cacheMisses;
+
+	public TimesheetEntryResource(RecordsService recSvc, GroupCommitter committer, JsonImporter jsonImporter,
+			JsonFactory jsonFactory, ResponseCache responseCache, SearchExecutor searches, SearchExecutor exports,
+			MetricRegistry metrics) {
 		this.recSvc = recSvc;
+		this.committer = committer;
+		this.jsonImporter = jsonImporter;
+		this.jsonFactory = jsonFactory;
+		this.responseCache = responseCache;
+		this.searches = searches;
+		this.exports = exports;
+		this.serializeTimer = metrics.timer(MetricRegistry.name(TimesheetEntryResource.class, "findEntries", "serialize"));
+		this.cacheHits = metrics.meter(MetricRegistry.name(TimesheetEntryResource.class, "findEntries", "cacheHits"));
+		this.cacheMisses = metrics.meter(MetricRegistry.name(TimesheetEntryResource.class, "findEntries", "cacheMisses"));
 	}
 
+	/**
+	 * Searches run on the search executor, unless answered from the response
+	 * cache; requests that can't be parsed are answered straight away.
+	 *
+	 * Results are JSON unless the Accept header asks for one of the other
+	 * ResponseFormats: row-array JSON, Smile or CBOR. Errors are always JSON.
+	 */
 	//TODO: Move business logic to a service. Keep resource simple
 	@GET
-	@Produces(MediaType.APPLICATION_JSON)
-	public Response findEntries(@Context UriInfo ui) {
+	@Timed
+	@Produces({MediaType.APPLICATION_JSON, ResponseFormat.ROWS_JSON, ResponseFormat.SMILE_TYPE, ResponseFormat.CBOR_TYPE})
+	public void findEntries(@Context UriInfo ui, @Context HttpHeaders headers, @Suspended AsyncResponse response) {
 		MultivaluedMap<String, String> queryParams = ui.getQueryParameters();
+		ResponseFormat format = ResponseFormat.negotiate(headers.getAcceptableMediaTypes());
 
 		// Fields to include in output
 		String filterInFieldsStr = ui.getQueryParameters().getFirst("showFields");
 		// Fields to exclude in output (don't combine with in-fields)
 		String filterOutFieldsStr = ui.getQueryParameters().getFirst("removeFields");
-		// Date range
-		String startDateStr = ui.getQueryParameters().getFirst("start");
-		String endDateStr = ui.getQueryParameters().getFirst("end");
+		Projection projection = Projection.ALL;
 
-		String inFields[] = null;
-		String outFields[] = null;
-
-		// Does request explicitly specify which fields to include - for each record?
-		if ( filterInFieldsStr != null ) {
-			LOGGER.info("findEntries: fields to show: " + filterInFieldsStr);
-			inFields = filterInFieldsStr.split(",");
+		try {
+			// Does request explicitly specify which fields to include - for each record?
+			if ( filterInFieldsStr != null ) {
+				if ( ENTRY_LOGGER.isInfoEnabled() ) {
+					ENTRY_LOGGER.info("findEntries: fields to show: " + filterInFieldsStr);
+				}
+				projection = Projection.including(filterInFieldsStr.split(","));
+			}
+			// Or, does it ask us to remove some fields from each record?
+			else if ( filterOutFieldsStr != null ) {
+				if ( ENTRY_LOGGER.isInfoEnabled() ) {
+					ENTRY_LOGGER.info("findEntries: fields to remove: " + filterOutFieldsStr);
+				}
+				projection = Projection.excluding(filterOutFieldsStr.split(","));
+			}
+		} catch (UnknownFieldException e) {
+			LOGGER.info("findEntries: " + e.getMessage());
+			response.resume(badRequest(e.getMessage()));
+			return;
 		}
-		// Or, does it ask us to remove some fields from each record?
-		else if ( filterOutFieldsStr != null ) {
-			LOGGER.info("findEntries: fields to remove: " + filterOutFieldsStr);
-			outFields = filterOutFieldsStr.split(",");
+
+		// Build a collection of records - based on search terms and ranges
+		Query query;
+		try {
+			// Date range
+			LocalDate startDate = getDate(queryParams.getFirst("start"));
+			LocalDate endDate = getDate(queryParams.getFirst("end"));
+			query = searchQuery(queryParams, startDate, endDate);
+
+			if ( query.isEmpty() ) {
+				response.resume(Response.status(Response.Status.NOT_FOUND).build());
+				return;
+			}
+
+			// Paging: sort=[-]field, limit=n, cursor=(X-Next-Cursor of the previous page)
+			String sort = queryParams.getFirst("sort");
+			if ( sort != null && !sort.isEmpty() ) {
+				boolean descending = sort.startsWith("-");
+				query.orderBy(descending ? sort.substring(1) : sort, descending);
+			}
+			String limit = queryParams.getFirst("limit");
+			if ( limit != null ) {
+				query.limit(Integer.parseInt(limit));
+			}
+			query.after(queryParams.getFirst("cursor"));
+		} catch (NumberFormatException e) {
+			response.resume(badRequest("Invalid limit: " + queryParams.getFirst("limit")));
+			return;
+		} catch (IllegalArgumentException e) {  // including UnknownFieldException
+			LOGGER.info("findEntries: " + e.getMessage());
+			response.resume(badRequest(e.getMessage()));
+			return;
 		}
+		Projection fields = projection;
 
-		// Acceptable query param search fields
-		String searchTerms[] = {
-				"client",
-				"lastName",
-				"firstName",
-				"department",
-				"project",
-				"projectCode",
-				"isBillable",
-				"isInvoiced",
-				"isEmployee",
-				"isApproved"};
+		// explain=true: how the search runs, instead of its results
+		if ( Boolean.parseBoolean(queryParams.getFirst("explain")) ) {
+			searches.submit(response, validated("findEntries", () -> explain(query, fields, format)));
+			return;
+		}
 
-		// Build a collection of records - based on search terms
+		// Same search, fields and format as a cached response, with no records changed since?
+		String cacheKey = query.normalized() + "|" + projection.getKey() + "|" + format;
+		long generation = recSvc.getGeneration();
+		ResponseCache.Cached cached = responseCache.get(cacheKey, generation);
+		if ( cached != null ) {
+			cacheHits.mark();
+			LOGGER.debug("findEntries: cached response for " + query);
+			response.resume(ok(cached.body, cached.nextCursor, format));
+			return;
+		}
+		cacheMisses.mark();
 
-		// TODO: allow searching numeric-valued fields with comparators
+		searches.submit(response, validated("findEntries", () -> {
+			Page page = recSvc.find(query);
+			return ok(responseCache.capture(cacheKey, generation, timed(fields.as(format, jsonFactory, page.getEntries())),
+					page.getNextCursor()), page.getNextCursor(), format);
+		}));
+	}
 
-		Set<TimesheetEntry> recSet = null;
+	/**
+	 * Runs a search, reporting its plan and stages (serialization in the
+	 * requested format included, though nothing is sent) rather than its
+	 * results. The report itself is JSON.
+	 */
+	private Response explain(Query query, Projection projection, ResponseFormat format) {
+		Explain explain = recSvc.explain(query);
+		Explain.Stopwatch watch = Explain.Stopwatch.start();
+		CountingOutputStream counter = new CountingOutputStream(ByteStreams.nullOutputStream());
 		try {
-			// Combine search terms by taking successive intersections of
-			// each search result set (if specified in query string).
-			for ( String param : searchTerms ) {
-				String value = queryParams.getFirst(param);
-				LOGGER.info("findEntries: request with field " + param + ": " + value);
-				// Was this search term specified?
-				if ( value != null ) {
-					// Find all records with this value for that param (optionally, between theses dates)
-					Set<TimesheetEntry> thisParamSet = recSvc.findFieldWithValue(param, value, getDate(startDateStr), getDate(endDateStr));
-					if ( thisParamSet != null ) {
-						if ( recSet == null ) {
-							recSet = thisParamSet;
-							LOGGER.info("findEntries: setting current set to those of "+ param 
-									+" with value " + value + " (" + thisParamSet.size() + " elements)");
-						} else {
-							LOGGER.info("findEntries: taking intersection of current set ("
-									+recSet.size()+" elements) and set of "+ param 
-									+" with value " + value + " (" + thisParamSet.size() + " elements)");
-
-							// take intersection, if needed
-							recSet.retainAll(thisParamSet);
-							LOGGER.info("findEntries: intersection is of size " + recSet.size());
-						}
-					}
-				}
-			}
-		} catch (IllegalAccessException | IllegalArgumentException
-				| InvocationTargetException | ClassNotFoundException
-				| NoSuchMethodException e) {
-			LOGGER.warn("findEntries: ERROR: " + e);
-			e.printStackTrace();
-			return Response.status(Response.Status.BAD_REQUEST).build();
+			projection.as(format, jsonFactory, explain.getPage().getEntries()).write(counter);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);  // writing nowhere, so it can't
 		}
+		explain.addStage(watch.stop("serialize"));
+		explain.setResponseBytes(counter.getCount());
+		return Response.status(Response.Status.OK).type(MediaType.APPLICATION_JSON).entity(explain).build();
+	}
 
-		if (recSet == null) {
-			return Response.status(Response.Status.NOT_FOUND).build();
-		} else {
+	private StreamingOutput timed(StreamingOutput body) {
+		return out -> {
+			Timer.Context serializing = serializeTimer.time();
 			try {
-				if ( inFields != null ) {
-					String jsonStr = filterIn(recSet, inFields);
-					return Response.status(Response.Status.OK).entity(jsonStr).build();
-				} else if ( outFields != null ) {
-					String jsonStr = filterOut(recSet, Arrays.asList(outFields));
-					return Response.status(Response.Status.OK).entity(jsonStr).build();
-				} else {
-					return Response.status(Response.Status.OK).entity(recSet).build();
-				}
-			} catch (JsonProcessingException e) {
-				e.printStackTrace();
-				LOGGER.info("findEntries: ERROR: " + e);
-				return Response.status(Response.Status.BAD_REQUEST).build();
+				body.write(out);
+			} finally {
+				serializing.stop();
+			}
+		};
+	}
+
+	// The request, answering 400 if the query turns out to be invalid, e.g.
+	// sorting on an unknown field or with a cursor for another order
+	private static Supplier<Response> validated(String caller, Supplier<Response> request) {
+		return () -> {
+			try {
+				return request.get();
+			} catch (IllegalArgumentException e) {  // including UnknownFieldException
+				LOGGER.info(caller + ": " + e.getMessage());
+				return badRequest(e.getMessage());
 			}
+		};
+	}
+
+	private static Response ok(Object body, String nextCursor, ResponseFormat format) {
+		// the encoding depends on Accept, so caches mustn't serve one client's to another
+		Response.ResponseBuilder response = Response.status(Response.Status.OK).type(format.getMediaType())
+				.header(HttpHeaders.VARY, HttpHeaders.ACCEPT).entity(body);
+		if ( nextCursor != null ) {
+			response.header(NEXT_CURSOR_HEADER, nextCursor);
+		}
+		return response.build();
+	}
+
+	/**
+	 * Totals of the matching records (all, if there are no search terms or
+	 * dates), grouped by groupBy: a comma-separated list of person, week,
+	 * month or entry fields, e.g. groupBy=client,month. Runs on the search
+	 * executor.
+	 */
+	@GET
+	@Timed
+	@Path("/aggregate")
+	@Produces(MediaType.APPLICATION_JSON)
+	public void aggregate(@Context UriInfo ui, @Suspended AsyncResponse response) {
+		MultivaluedMap<String, String> queryParams = ui.getQueryParameters();
+		String groupBy = queryParams.getFirst("groupBy");
+
+		Query query;
+		try {
+			query = searchQuery(queryParams,
+					getDate(queryParams.getFirst("start")), getDate(queryParams.getFirst("end")));
+		} catch (IllegalArgumentException e) {
+			LOGGER.info("aggregate: " + e.getMessage());
+			response.resume(badRequest(e.getMessage()));
+			return;
 		}
+		searches.submit(response, validated("aggregate", () -> {
+			List<AggregateRow> rows = recSvc.aggregate(query,
+					groupBy == null ? Collections.emptyList() : Arrays.asList(groupBy.split(",")));
+			return Response.status(Response.Status.OK).entity(rows).build();
+		}));
+	}
+
+	/**
+	 * Every add and delete numbered after since (default 0, so every current
+	 * record), in order: newline-delimited JSON, or CSV if the Accept header
+	 * prefers text/csv. Streamed from the export executor, as of when it
+	 * starts; the X-Feed-Id header changes when the numbering starts over.
+	 * 410 if since is so far behind that deletes after it have been
+	 * compacted away: the consumer has to start over from 0.
+	 */
+	@GET
+	@Timed
+	@Path("/changes")
+	@Produces({NDJSON, ChangeFeed.CSV})
+	public void changes(@Context UriInfo ui, @Context HttpHeaders headers, @Suspended AsyncResponse response) {
+		String sinceStr = ui.getQueryParameters().getFirst("since");
+		long since;
+		try {
+			since = sinceStr == null ? 0 : Long.parseLong(sinceStr);
+		} catch (NumberFormatException e) {
+			since = -1;  // rejected below
+		}
+		if ( since < 0 ) {
+			response.resume(badRequest("Invalid since: " + sinceStr));
+			return;
+		}
+		long after = since;
+		boolean csv = ChangeFeed.prefersCsv(headers.getAcceptableMediaTypes());
+		exports.submit(response, () -> {
+			if ( after > 0 && after < recSvc.getChangeFloor() ) {
+				return Response.status(Response.Status.GONE)
+						.type(MediaType.APPLICATION_JSON)
+						.header(ChangeFeed.FEED_ID_HEADER, recSvc.getFeedId())
+						.entity(new ErrorMessage(Response.Status.GONE.getStatusCode(), "Changes after " + after
+								+ " are no longer kept; start again from since=0"))
+						.build();
+			}
+			return Response.status(Response.Status.OK)
+					.type(csv ? ChangeFeed.CSV : NDJSON)
+					.header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+					.header(ChangeFeed.FEED_ID_HEADER, recSvc.getFeedId())
+					.entity(csv ? ChangeFeed.asCsv(recSvc, after) : ChangeFeed.asNdjson(jsonFactory, recSvc, after))
+					.build();
+		});
 	}
 
 	@POST
+	@Timed
 	@Consumes(MediaType.APPLICATION_JSON)
 	@Produces(MediaType.APPLICATION_JSON)
 	//TODO: authenticate
-	public Response createEntry(TimesheetEntry entry) {
+	public Response createEntry(TimesheetEntry entry, @Context UriInfo ui) {
 
 		//Date,Client,Project,Project Code,
 		//Task,Hours,Hours Rounded,
@@ -158,20 +335,44 @@ public class TimesheetEntryResource {
 		//Cost Amount,Currency,External Reference URL
 
 		if ( entry != null ) {
-			LOGGER.info("createEntry: POST entry for person: " + entry.getFirstName() + " " + entry.getLastName());
-
-			List<TimesheetEntry> recList = new ArrayList<TimesheetEntry>();
-			recList.add(entry);
+			if ( ENTRY_LOGGER.isInfoEnabled() ) {
+				ENTRY_LOGGER.info("createEntry: POST entry for person: " + entry.getFirstName() + " " + entry.getLastName());
+			}
 
-			recSvc.importRecords(recList);
-			return Response.status(Response.Status.CREATED).entity(entry).build();
+			int id;
+			try {
+				id = committer.createEntry(entry);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+			}
+			URI location = ui.getAbsolutePathBuilder().path(Integer.toString(id)).build();
+			return Response.created(location).entity(entry).build();
 		} else {
 			LOGGER.info("createEntry: invalid entity");
 			return Response.status(Response.Status.BAD_REQUEST).build();
 		}
 	}
 
+	/**
+	 * Creates many entries from a JSON array or newline-delimited JSON,
+	 * streamed straight from the request. Responds with the import report;
+	 * 400 if malformed JSON stopped the import part way.
+	 */
+	@POST
+	@Timed
+	@Path("/bulk")
+	@Consumes({NDJSON, MediaType.APPLICATION_JSON})
+	@Produces(MediaType.APPLICATION_JSON)
+	//TODO: authenticate
+	public Response createEntries(InputStream body) throws IOException {
+		JsonImportReport report = jsonImporter.importFrom(body);
+		Response.Status status = report.isComplete() ? Response.Status.OK : Response.Status.BAD_REQUEST;
+		return Response.status(status).entity(report).build();
+	}
+
 	@DELETE
+	@Timed
 	@Consumes(MediaType.APPLICATION_JSON)
 	//TODO: authenticate
 	public Response deleteEntry(TimesheetEntry entry) {
@@ -184,7 +385,9 @@ public class TimesheetEntryResource {
 		//Cost Amount,Currency,External Reference URL
 
 		if ( entry != null ) {
-			LOGGER.info("deleteEntry: DELETE entry for person: " + entry.getFirstName() + " " + entry.getLastName());
+			if ( ENTRY_LOGGER.isInfoEnabled() ) {
+				ENTRY_LOGGER.info("deleteEntry: DELETE entry for person: " + entry.getFirstName() + " " + entry.getLastName());
+			}
 
 			if ( recSvc.deleteEntry(entry) ) {
 				return Response.status(Response.Status.NO_CONTENT).build();
@@ -197,76 +400,81 @@ public class TimesheetEntryResource {
 		}
 	}
 
-	/**
-	 * Removes unwanted fields from a set of TimeData records.
-	 * 
-	 * @param recSet - set of records to be manipulated and JSONified.
-	 * @param fieldsToRemove - list of fields to be removed from each record.
-	 * @return a JSON string representing the manipulated set of TimeData records.
-	 * @throws JsonProcessingException if the set of TimeData records can't be JSONified.
-	 */
-	private String filterOut(Set<TimesheetEntry> recSet, List<String>fieldsToRemove) throws JsonProcessingException {
-		ObjectMapper objMapper = new ObjectMapper();
-		String json = objMapper.writeValueAsString(recSet);
+	@GET
+	@Timed
+	@Path("/{id}")
+	@Produces(MediaType.APPLICATION_JSON)
+	public Response getEntry(@PathParam("id") int id) {
+		TimesheetEntry entry = recSvc.getEntry(id);
+		if ( entry == null ) {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+		return Response.status(Response.Status.OK).entity(entry).build();
+	}
 
-		JSONArray jsonArray = new JSONArray(json);
-		JSONArray newArray = new JSONArray();
+	@DELETE
+	@Timed(name = "deleteEntryById")
+	@Path("/{id}")
+	//TODO: authenticate
+	public Response deleteEntry(@PathParam("id") int id) {
+		if ( ENTRY_LOGGER.isInfoEnabled() ) {
+			ENTRY_LOGGER.info("deleteEntry: DELETE entry " + id);
+		}
 
-		// walk through array of JSON structures
-		for (int val = 0; val < jsonArray.length(); val++) {
-            JSONObject jsonObj = jsonArray.getJSONObject(val);
-			LOGGER.info("filterOut: handling field " + val + ": " + jsonObj.toString());
+		if ( recSvc.deleteEntry(id) ) {
+			return Response.status(Response.Status.NO_CONTENT).build();
+		} else {
+			return Response.status(Response.Status.NOT_FOUND).build();
+		}
+	}
 
-			// remove undesirable fields
-			for (String field : fieldsToRemove) {
-				jsonObj.remove(field);
+	/**
+	 * Search terms, text patterns (e.g. lastName=prefix:Mc, task=fuzzy:migraton),
+	 * numeric ranges (e.g. hours=gt:8, costAmount=between:1000,5000) and date
+	 * bounds given as query parameters.
+	 *
+	 * @throws IllegalArgumentException if a range is invalid
+	 */
+	private static Query searchQuery(MultivaluedMap<String, String> queryParams, LocalDate startDate, LocalDate endDate) {
+		Query query = new Query().between(startDate, endDate);
+		for ( String param : RecordsService.SEARCH_TERMS ) {
+			String value = queryParams.getFirst(param);
+			// Was this search term specified?
+			if ( value != null && TextMatch.isPattern(value) ) {
+				query.where(param, TextMatch.parse(value));
+			} else if ( value != null ) {
+				query.where(param, TextMatch.literal(value));
 			}
-            newArray.put(jsonObj);
-        }
+		}
+		for ( String param : RecordsService.RANGE_TERMS ) {
+			String value = queryParams.getFirst(param);
+			if ( value != null ) {
+				query.where(param, NumericRange.parse(value));
+			}
+		}
+		return query;
+	}
 
-		return newArray.toString();
+	private static Response badRequest(String message) {
+		return Response.status(Response.Status.BAD_REQUEST)
+				.type(MediaType.APPLICATION_JSON)
+				.entity(new ErrorMessage(Response.Status.BAD_REQUEST.getStatusCode(), message))
+				.build();
 	}
 
 	/**
-	 * Generates a JSON representation of a set of TimeData records - using
-	 * only the fields that are explicitly specified.
-	 * 
-	 * @param recSet - set of records to be manipulated and JSONified.
-	 * @param fieldsToInclude - list of fields to be included from each record.
-	 * @return a JSON string representing the manipulated set of TimeData records
-	 * @throws JsonProcessingException if the set of TimeData records can't be JSONified
+	 * @return the date, or null if there's none
+	 * @throws IllegalArgumentException if it isn't yyyy-MM-dd
 	 */
-	private String filterIn(Set<TimesheetEntry> recSet, String fieldsToInclude[]) throws JsonProcessingException {
-		ObjectMapper objMapper = new ObjectMapper();
-		String json = objMapper.writeValueAsString(recSet);
-
-		JSONArray jsonArray = new JSONArray(json);
-		JSONArray newArray = new JSONArray();
-
-		// walk through array of JSON structures
-		for (int val = 0; val < jsonArray.length(); val++) {
-            JSONObject jsonObj = jsonArray.getJSONObject(val);
-            // construct new object based on subset of original
-            JSONObject newJsonObj = new JSONObject(jsonObj, fieldsToInclude);
-            newArray.put(newJsonObj);
-        }
-
-		return newArray.toString();
-	}
-
-	private Date getDate(String dateStr) {
-	    Date someDate = null;
+	private LocalDate getDate(String dateStr) {
+		LocalDate someDate = null;
 		if ( dateStr != null ) {
-			//TODO: look at joda-time
-			SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-	
-		    try {
-			    someDate = sdf.parse(dateStr);
-		    } catch (ParseException e) {
-		    	LOGGER.info("getDate: invalid date format: " + dateStr);
-		    	//TODO: throw. Use an exception mapper, return useful JSON error response.
-		    }
+			try {
+				someDate = LocalDate.parse(dateStr);  // yyyy-MM-dd
+			} catch (DateTimeParseException e) {
+				throw new IllegalArgumentException("Invalid date '" + dateStr + "'; expected yyyy-MM-dd");
+			}
 		}
-	    return someDate;
+		return someDate;
 	}
 }
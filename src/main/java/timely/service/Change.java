@@ -0,0 +1,44 @@
+package timely.service;
+
+import timely.core.TimesheetEntry;
+
+/**
+ * One add or delete, numbered by its place in the sequence of every change
+ * made to the records.
+ */
+public class Change {
+	private final long sequence;
+	private final int id;
+	private final TimesheetEntry entry;
+
+	Change(long sequence, int id, TimesheetEntry entry) {
+		this.sequence = sequence;
+		this.id = id;
+		this.entry = entry;
+	}
+
+	/**
+	 * @return the change's sequence number: 1 for the first, then rising by one per change
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return id of the record added or deleted
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public boolean isDelete() {
+		return entry == null;
+	}
+
+	/**
+	 * @return the record added; null for a delete
+	 */
+	public TimesheetEntry getEntry() {
+		return entry;
+	}
+}
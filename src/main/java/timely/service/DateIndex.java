@@ -0,0 +1,261 @@
+package timely.service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import timely.core.TimesheetEntry;
+
+/**
+ * Time-ordered index of records by TimesheetEntry date. Dates are parsed
+ * once, at ingest, into epoch days; records whose date can't be parsed are
+ * left out (so they never satisfy a date-bounded search).
+ *
+ * Ids are kept in primitive arrays, as in FieldIndex: each record's day by
+ * id, in chunks, and each day's postings as a sorted array plus a small
+ * unsorted buffer of ids added since, merged in once it grows past a
+ * fraction of the array. Removed ids are just marked (their day by id
+ * cleared) and dropped at the next merge. Days stay in the index once
+ * they've had a record.
+ */
+class DateIndex {
+	// Format of TimesheetEntry.date (as found in the CSV exports)
+	static final DateTimeFormatter RECORD_DATE_FORMAT = DateTimeFormatter.ofPattern("M/d/yyyy");
+	// Day of a record that has none; no parsed date is this far back
+	static final int NO_DAY = Integer.MIN_VALUE;
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	// Smallest number of changes worth a merge
+	private static final int MIN_MERGE = 64;
+
+	// epoch day -> ids of records on that day
+	private final ConcurrentNavigableMap<Integer, Postings> days = new ConcurrentSkipListMap<>();
+	// id -> epoch day of that record, in chunks; NO_DAY where there's no record
+	private volatile int[][] dayChunks = new int[0][];
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * The ids of the records on one day. Changed under its lock; read
+	 * without one.
+	 */
+	private final class Postings {
+		private final int day;
+		// ids sorted, as of the last merge
+		private volatile int[] sorted = new int[0];
+		// ids added since the last merge, unsorted; guarded by this
+		private int[] added = new int[4];
+		private int addedCount;
+		// ids removed since the last merge
+		private int removedCount;
+		private volatile int size;
+
+		private Postings(int day) {
+			this.day = day;
+		}
+
+		// Calls action with the id of each record on the day, in no particular order
+		void forEach(IntConsumer action) {
+			int[] s;
+			int[] buffered;
+			synchronized (this) {
+				// the buffer goes with the sorted array it hasn't been merged into
+				s = sorted;
+				buffered = Arrays.copyOf(added, addedCount);
+			}
+			for (int id : buffered) {
+				if ( day(id) == day ) {
+					action.accept(id);
+				}
+			}
+			for (int id : s) {
+				if ( day(id) == day ) {  // not removed since the merge
+					action.accept(id);
+				}
+			}
+		}
+
+		synchronized void add(int id) {
+			if ( addedCount == added.length ) {
+				added = Arrays.copyOf(added, addedCount * 2);
+			}
+			added[addedCount++] = id;
+			size++;
+			mergeIfDue();
+		}
+
+		synchronized void remove() {
+			size--;
+			removedCount++;
+			mergeIfDue();
+		}
+
+		private void mergeIfDue() {
+			int[] s = sorted;
+			if ( addedCount + removedCount < Math.max(MIN_MERGE, s.length / 16) ) {
+				return;
+			}
+			Arrays.sort(added, 0, addedCount);
+			int[] ids = new int[s.length + addedCount];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while ( i < s.length || j < addedCount ) {
+				int id = j == addedCount || (i < s.length && s[i] <= added[j]) ? s[i++] : added[j++];
+				if ( day(id) == day ) {  // drop removed records
+					ids[n++] = id;
+				}
+			}
+			sorted = Arrays.copyOf(ids, n);
+			added = new int[4];
+			addedCount = 0;
+			removedCount = 0;
+		}
+	}
+
+	/**
+	 * @param date a TimesheetEntry date string
+	 * @return the date as an epoch day, or null if it isn't a valid date
+	 */
+	static Integer parse(String date) {
+		if ( date == null ) {
+			return null;
+		}
+		try {
+			return (int) LocalDate.parse(date.trim(), RECORD_DATE_FORMAT).toEpochDay();
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the record's date could be indexed
+	 */
+	boolean add(int id, TimesheetEntry rec) {
+		Integer day = parse(rec.getDate());
+		if ( day == null ) {
+			return false;
+		}
+		setDay(id, day);
+		days.computeIfAbsent(day, Postings::new).add(id);
+		size.incrementAndGet();
+		return true;
+	}
+
+	void remove(int id) {
+		int day = day(id);
+		if ( day != NO_DAY ) {
+			setDay(id, NO_DAY);
+			days.get(day).remove();
+			size.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return epoch day of start, or the lowest possible day if there's no start
+	 */
+	static int lowerBound(LocalDate start) {
+		return start == null ? Integer.MIN_VALUE : (int) start.toEpochDay();
+	}
+
+	/**
+	 * @return epoch day of end, or the highest possible day if there's no end
+	 */
+	static int upperBound(LocalDate end) {
+		return end == null ? Integer.MAX_VALUE : (int) end.toEpochDay();
+	}
+
+	static String format(int day) {
+		if ( day == Integer.MIN_VALUE || day == Integer.MAX_VALUE ) {
+			return "*";
+		}
+		return LocalDate.ofEpochDay(day).toString();
+	}
+
+	/**
+	 * @return number of records dated within [lo, hi] (epoch days)
+	 */
+	long count(int lo, int hi) {
+		long total = 0;
+		if ( lo <= hi ) {
+			for (Postings ids : days.subMap(lo, true, hi, true).values()) {
+				total += ids.size;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Calls action with the id of each record dated within [lo, hi] (epoch
+	 * days), in date order.
+	 */
+	void forEachBetween(int lo, int hi, IntConsumer action) {
+		if ( lo > hi ) {
+			return;
+		}
+		for (Postings ids : days.subMap(lo, true, hi, true).values()) {
+			ids.forEach(action);
+		}
+	}
+
+	/**
+	 * @return the record's date as an epoch day, or null if it has no (valid) date
+	 */
+	Integer dayOf(int id) {
+		int day = day(id);
+		return day == NO_DAY ? null : day;
+	}
+
+	/**
+	 * @return the record's date as an epoch day, or NO_DAY if it has no (valid) date
+	 */
+	int day(int id) {
+		int[][] chunks = dayChunks;
+		int chunk = id >>> CHUNK_BITS;
+		return id < 0 || chunk >= chunks.length ? NO_DAY : chunks[chunk][id & CHUNK_MASK];
+	}
+
+	/**
+	 * @return number of records indexed (those with a valid date)
+	 */
+	int size() {
+		return size.get();
+	}
+
+	/**
+	 * @return true if the record is dated within [lo, hi] (epoch days)
+	 */
+	boolean isWithin(int id, int lo, int hi) {
+		int day = day(id);
+		return day != NO_DAY && day >= lo && day <= hi;
+	}
+
+	private void setDay(int id, int day) {
+		int chunk = id >>> CHUNK_BITS;
+		int[][] chunks = dayChunks;
+		if ( chunk >= chunks.length ) {
+			chunks = grow(chunk);
+		}
+		chunks[chunk][id & CHUNK_MASK] = day;
+	}
+
+	// Adds chunks up to the given one; records are added on several threads
+	private synchronized int[][] grow(int chunk) {
+		int[][] chunks = dayChunks;
+		if ( chunk >= chunks.length ) {
+			int allocated = chunks.length;
+			chunks = Arrays.copyOf(chunks, chunk + 1);
+			for (int i = allocated; i <= chunk; i++) {
+				chunks[i] = new int[CHUNK_SIZE];
+				Arrays.fill(chunks[i], NO_DAY);
+			}
+			dayChunks = chunks;
+		}
+		return chunks;
+	}
+}
@@ -0,0 +1,65 @@
+package timely.service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.IsoFields;
+import java.util.Locale;
+import java.util.function.BiFunction;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+import timely.core.UnknownFieldException;
+
+/**
+ * Something aggregations group records by: any TimesheetEntry field, the
+ * person (first and last name), or the ISO week ("2017-W09") or month
+ * ("2017-03") of the record's date. Undated records group under null.
+ */
+final class Dimension {
+	private final String name;
+	// (record, epoch day or null) -> group value
+	private final BiFunction<TimesheetEntry, Integer, String> value;
+
+	private Dimension(String name, BiFunction<TimesheetEntry, Integer, String> value) {
+		this.name = name;
+		this.value = value;
+	}
+
+	/**
+	 * @param name person, week, month, or a TimesheetEntry field (case-insensitive)
+	 * @throws UnknownFieldException if it's none of those
+	 */
+	static Dimension of(String name) {
+		switch (name.trim().toLowerCase(Locale.ROOT)) {
+		case "person":
+			return new Dimension("person", (rec, day) -> rec.getFirstName() + " " + rec.getLastName());
+		case "week":
+			return new Dimension("week", (rec, day) -> {
+				if ( day == null ) {
+					return null;
+				}
+				LocalDate date = LocalDate.ofEpochDay(day);
+				return String.format("%d-W%02d", date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+			});
+		case "month":
+			return new Dimension("month", (rec, day) -> day == null ? null : YearMonth.from(LocalDate.ofEpochDay(day)).toString());
+		default:
+			EntryField field = EntryField.forName(name.trim());
+			return new Dimension(field.getName(), (rec, day) -> {
+				Object fieldValue = field.get(rec);
+				return fieldValue == null ? null : fieldValue.toString();
+			});
+		}
+	}
+
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * @param day the record's date as an epoch day, or null if it has none
+	 */
+	String valueOf(TimesheetEntry rec, Integer day) {
+		return value.apply(rec, day);
+	}
+}
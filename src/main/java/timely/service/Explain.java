@@ -0,0 +1,228 @@
+package timely.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How a search was run: its plan steps, in execution order, with the
+ * access path and record counts of each, and the wall time and heap
+ * allocated by each stage of the search.
+ *
+ * The first step drives: it enumerates its candidates (in = out = their
+ * number). Each later step checks the records that got through the steps
+ * before it, so its "in" is the previous step's "out".
+ *
+ * A parallel scan has no driver: every record is checked by the first step,
+ * in the partitions counted, and the first step's time is the scan's.
+ */
+@JsonPropertyOrder({"query", "records", "undatedRecords", "partitions", "steps", "matched", "returned", "responseBytes", "stages"})
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Explain {
+	// Per-thread allocation counter, when the JVM has one
+	private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+	private final String query;
+	private final int records;
+	private final Integer undatedRecords;
+	private final Integer partitions;
+	private final List<Step> steps;
+	private final List<Stage> stages = new ArrayList<>();
+	private int matched;
+	private final Page page;
+	private Long responseBytes;
+
+	Explain(Query query, int records, Integer undatedRecords, Integer partitions, List<Step> steps, Page page) {
+		this.query = query.toString();
+		this.records = records;
+		this.undatedRecords = undatedRecords;
+		this.partitions = partitions;
+		this.steps = steps;
+		this.page = page;
+		for (Step step : steps) {
+			matched = (int) step.out;
+		}
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	/** @return records stored when the search ran */
+	public int getRecords() {
+		return records;
+	}
+
+	/** @return records without a valid date, which no date-bounded search matches; null if the search has no dates */
+	public Integer getUndatedRecords() {
+		return undatedRecords;
+	}
+
+	/** @return partitions of the store scanned in parallel; null if the search ran on one thread */
+	public Integer getPartitions() {
+		return partitions;
+	}
+
+	public List<Step> getSteps() {
+		return Collections.unmodifiableList(steps);
+	}
+
+	/** @return records satisfying every step */
+	public int getMatched() {
+		return matched;
+	}
+
+	/** @return records in the page returned (after sort, cursor and limit) */
+	public int getReturned() {
+		return page.getEntries().size();
+	}
+
+	/** @return size of the response that would have been written; null if it wasn't measured */
+	public Long getResponseBytes() {
+		return responseBytes;
+	}
+
+	public void setResponseBytes(long responseBytes) {
+		this.responseBytes = responseBytes;
+	}
+
+	public List<Stage> getStages() {
+		return Collections.unmodifiableList(stages);
+	}
+
+	public void addStage(Stage stage) {
+		stages.add(stage);
+	}
+
+	/** @return the results themselves */
+	@JsonIgnore
+	public Page getPage() {
+		return page;
+	}
+
+	/**
+	 * One predicate of the plan.
+	 */
+	@JsonPropertyOrder({"predicate", "access", "estimate", "in", "out", "nanos"})
+	public static final class Step {
+		private final String predicate;
+		private final String access;
+		private final long estimate;
+		private final long in;
+		private final long out;
+		private final long nanos;
+
+		Step(String predicate, String access, long estimate, long in, long out, long nanos) {
+			this.predicate = predicate;
+			this.access = access;
+			this.estimate = estimate;
+			this.in = in;
+			this.out = out;
+			this.nanos = nanos;
+		}
+
+		public String getPredicate() {
+			return predicate;
+		}
+
+		/** @return how records were found or checked: index, range index, date index or scan */
+		public String getAccess() {
+			return access;
+		}
+
+		/** @return records the planner expected to satisfy the predicate */
+		public long getEstimate() {
+			return estimate;
+		}
+
+		/** @return records this step enumerated (the first) or checked (the rest) */
+		public long getIn() {
+			return in;
+		}
+
+		/** @return records that got through this step */
+		public long getOut() {
+			return out;
+		}
+
+		/** @return wall time spent enumerating or checking, in nanoseconds */
+		public long getNanos() {
+			return nanos;
+		}
+	}
+
+	/**
+	 * Wall time and allocation of one stage of a search.
+	 */
+	@JsonPropertyOrder({"stage", "nanos", "allocatedBytes"})
+	public static final class Stage {
+		private final String stage;
+		private final long nanos;
+		private final long allocatedBytes;
+
+		Stage(String stage, long nanos, long allocatedBytes) {
+			this.stage = stage;
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+		}
+
+		public String getStage() {
+			return stage;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		/** @return heap allocated by the thread during the stage; -1 if the JVM can't tell */
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+	}
+
+	/**
+	 * Measures a stage run on the current thread.
+	 */
+	public static final class Stopwatch {
+		private final long startNanos;
+		private final long startBytes;
+
+		private Stopwatch() {
+			startBytes = allocatedBytes();
+			startNanos = System.nanoTime();
+		}
+
+		public static Stopwatch start() {
+			return new Stopwatch();
+		}
+
+		/**
+		 * @return the wall time and allocation since the stopwatch started
+		 */
+		public Stage stop(String stage) {
+			long nanos = System.nanoTime() - startNanos;
+			long bytes = startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+			return new Stage(stage, nanos, bytes);
+		}
+
+		private static long allocatedBytes() {
+			return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if ( threads instanceof com.sun.management.ThreadMXBean ) {
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+			if ( sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled() ) {
+				return sunThreads;
+			}
+		}
+		return null;
+	}
+}
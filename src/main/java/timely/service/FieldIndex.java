@@ -0,0 +1,246 @@
+package timely.service;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntConsumer;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+
+/**
+ * Case-insensitive inverted index over a single (String-valued) field of
+ * TimesheetEntry. Maps each field value to the ids of the records holding it,
+ * so equality searches become a single lookup rather than a scan.
+ *
+ * Ids are kept in primitive arrays, as in NumericIndex: each value gets a
+ * number, each record the number of its value (by id), and each value's
+ * postings are a sorted array plus a small unsorted buffer of ids added
+ * since, merged in once it grows past a fraction of the array. Removed ids
+ * are just marked (their number by id cleared) and dropped at the next
+ * merge. Checking a record is a lookup of its number.
+ */
+class FieldIndex {
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	// Smallest number of changes worth a merge
+	private static final int MIN_MERGE = 64;
+
+	private final EntryField field;
+
+	// lower-cased field value -> ids of records with that value
+	private final ConcurrentMap<String, Postings> postings = new ConcurrentHashMap<>();
+	// numbers given to values so far
+	private int valueNumbers;
+	// id -> (number of the record's value) + 1, in chunks; 0 where there's no record
+	private volatile int[][] numberChunks = new int[0][];
+
+	/**
+	 * The ids of the records holding one value. Changed under the postings
+	 * map's lock on the value; read without one.
+	 */
+	final class Postings {
+		private final int number;
+		// ids sorted, as of the last merge
+		private volatile int[] sorted = new int[0];
+		// ids added since the last merge, unsorted; guarded by this
+		private int[] added = new int[4];
+		private int addedCount;
+		// ids removed since the last merge
+		private int removedCount;
+		private volatile int size;
+
+		private Postings(int number) {
+			this.number = number;
+		}
+
+		/**
+		 * @return number of records with the value
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * @return true if the record with the given id holds the value
+		 */
+		boolean contains(int id) {
+			return number >= 0 && numberOf(id) == number;
+		}
+
+		/**
+		 * Calls action with the id of each record holding the value, in no
+		 * particular order.
+		 */
+		void forEach(IntConsumer action) {
+			int[] s;
+			int[] buffered;
+			synchronized (this) {
+				// the buffer goes with the sorted array it hasn't been merged into
+				s = sorted;
+				buffered = Arrays.copyOf(added, addedCount);
+			}
+			for (int id : buffered) {
+				if ( contains(id) ) {
+					action.accept(id);
+				}
+			}
+			for (int id : s) {
+				if ( contains(id) ) {  // not removed since the merge
+					action.accept(id);
+				}
+			}
+		}
+
+		private synchronized void add(int id) {
+			if ( addedCount == added.length ) {
+				added = Arrays.copyOf(added, addedCount * 2);
+			}
+			added[addedCount++] = id;
+			size++;
+			mergeIfDue();
+		}
+
+		private synchronized void remove() {
+			size--;
+			removedCount++;
+			mergeIfDue();
+		}
+
+		private void mergeIfDue() {
+			int[] s = sorted;
+			if ( addedCount + removedCount < Math.max(MIN_MERGE, s.length / 16) ) {
+				return;
+			}
+			Arrays.sort(added, 0, addedCount);
+			int[] ids = new int[s.length + addedCount];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while ( i < s.length || j < addedCount ) {
+				int id = j == addedCount || (i < s.length && s[i] <= added[j]) ? s[i++] : added[j++];
+				if ( contains(id) ) {  // drop removed records
+					ids[n++] = id;
+				}
+			}
+			sorted = Arrays.copyOf(ids, n);
+			added = new int[4];
+			addedCount = 0;
+			removedCount = 0;
+		}
+	}
+
+	// Postings of a value no record holds
+	private final Postings none = new Postings(-1);
+
+	FieldIndex(EntryField field) {
+		if ( !field.isString() ) {
+			throw new IllegalArgumentException("Can't index non-text field " + field);
+		}
+		this.field = field;
+	}
+
+	EntryField getField() {
+		return field;
+	}
+
+	void add(int id, TimesheetEntry rec) {
+		postings.compute(key(field.getString(rec)), (k, ids) -> {
+			if ( ids == null ) {
+				ids = new Postings(nextNumber());
+			}
+			setNumber(id, ids.number);
+			ids.add(id);
+			return ids;
+		});
+	}
+
+	/**
+	 * @return true if no record holds the removed record's value any more
+	 */
+	boolean remove(int id, TimesheetEntry rec) {
+		boolean[] emptied = new boolean[1];
+		// drop the postings altogether once their last record goes
+		postings.computeIfPresent(key(field.getString(rec)), (k, ids) -> {
+			if ( !ids.contains(id) ) {
+				return ids;
+			}
+			clearNumber(id);
+			ids.remove();
+			emptied[0] = ids.size() == 0;
+			return emptied[0] ? null : ids;
+		});
+		return emptied[0];
+	}
+
+	/**
+	 * @param value field value to look up (case-insensitive)
+	 * @return the ids of records with that value; empty if none
+	 */
+	Postings lookup(String value) {
+		Postings ids = postings.get(key(value));
+		return ids == null ? none : ids;
+	}
+
+	/**
+	 * @return number of distinct (case-insensitive) values of the field
+	 */
+	int distinctValues() {
+		return postings.size();
+	}
+
+	/**
+	 * @return number of records indexed
+	 */
+	long size() {
+		long size = 0;
+		for (Postings ids : postings.values()) {
+			size += ids.size();
+		}
+		return size;
+	}
+
+	private synchronized int nextNumber() {
+		return valueNumbers++;
+	}
+
+	// number of the record's value; -1 if it isn't indexed
+	private int numberOf(int id) {
+		int[][] chunks = numberChunks;
+		int chunk = id >>> CHUNK_BITS;
+		return id < 0 || chunk >= chunks.length ? -1 : chunks[chunk][id & CHUNK_MASK] - 1;
+	}
+
+	private void setNumber(int id, int number) {
+		int chunk = id >>> CHUNK_BITS;
+		int[][] chunks = numberChunks;
+		if ( chunk >= chunks.length ) {
+			chunks = grow(chunk);
+		}
+		chunks[chunk][id & CHUNK_MASK] = number + 1;
+	}
+
+	private void clearNumber(int id) {
+		numberChunks[id >>> CHUNK_BITS][id & CHUNK_MASK] = 0;
+	}
+
+	// Adds chunks up to the given one; values are added under different locks
+	private synchronized int[][] grow(int chunk) {
+		int[][] chunks = numberChunks;
+		if ( chunk >= chunks.length ) {
+			int allocated = chunks.length;
+			chunks = Arrays.copyOf(chunks, chunk + 1);
+			for (int i = allocated; i <= chunk; i++) {
+				chunks[i] = new int[CHUNK_SIZE];
+			}
+			numberChunks = chunks;
+		}
+		return chunks;
+	}
+
+	private static String key(String value) {
+		return value == null ? "" : value.toLowerCase(Locale.ROOT);
+	}
+}
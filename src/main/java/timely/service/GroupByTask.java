@@ -0,0 +1,69 @@
+package timely.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+import timely.core.Totals;
+import timely.core.TimesheetEntry;
+
+/**
+ * Ad-hoc aggregation: totals of the given records grouped by some
+ * dimensions, computed fork-join style. The ids are split in halves until
+ * a slice is small enough to total directly; the slices' groups are then
+ * merged back up.
+ */
+class GroupByTask extends RecursiveTask<Map<List<String>, Totals>> {
+	private static final long serialVersionUID = 1L;
+	// Records totalled by one task without splitting further
+	private static final int SLICE_SIZE = 8192;
+
+	private final Versions.View view;
+	private final DateIndex dateIndex;
+	private final List<Dimension> dimensions;
+	private final int[] ids;
+	private final int from;
+	private final int to;
+
+	GroupByTask(Versions.View view, DateIndex dateIndex, List<Dimension> dimensions, int[] ids, int from, int to) {
+		this.view = view;
+		this.dateIndex = dateIndex;
+		this.dimensions = dimensions;
+		this.ids = ids;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected Map<List<String>, Totals> compute() {
+		if ( to - from <= SLICE_SIZE ) {
+			return totals();
+		}
+		int mid = (from + to) >>> 1;
+		GroupByTask left = new GroupByTask(view, dateIndex, dimensions, ids, from, mid);
+		GroupByTask right = new GroupByTask(view, dateIndex, dimensions, ids, mid, to);
+		left.fork();
+		Map<List<String>, Totals> groups = right.compute();
+		for (Map.Entry<List<String>, Totals> group : left.join().entrySet()) {
+			groups.merge(group.getKey(), group.getValue(), (a, b) -> {
+				a.add(b);
+				return a;
+			});
+		}
+		return groups;
+	}
+
+	private Map<List<String>, Totals> totals() {
+		Map<List<String>, Totals> groups = new HashMap<>();
+		for (int i = from; i < to; i++) {
+			int id = ids[i];
+			TimesheetEntry rec = view.get(id);
+			if ( rec != null ) {
+				List<String> key = Rollup.key(dimensions, rec, dateIndex.dayOf(id));
+				groups.computeIfAbsent(key, k -> new Totals()).add(rec, 1);
+			}
+		}
+		return groups;
+	}
+}
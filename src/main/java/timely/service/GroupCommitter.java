@@ -0,0 +1,163 @@
+package timely.service;
+
+import io.dropwizard.lifecycle.Managed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import timely.core.TimesheetEntry;
+
+/**
+ * Group commit for single-entry creates. Request threads queue their entry
+ * and wait; one committer thread takes everything queued so far (up to a
+ * batch) and stores it with a single RecordsService call, then hands each
+ * caller its id. Under load, many concurrent POSTs become a few large
+ * batches; when idle, an entry is committed as soon as it arrives.
+ *
+ * The queue is bounded, so callers block (rather than pile up) when the
+ * committer falls behind. Once stopping, callers store their entries
+ * themselves; everything queued before then is committed first.
+ */
+public class GroupCommitter implements Managed {
+	private static final Logger LOGGER = LoggerFactory.getLogger(GroupCommitter.class);
+
+	private final RecordsService recSvc;
+	private final int maxBatchSize;
+	private final BlockingQueue<Pending> queue;
+	// queued last, after which nothing else is: tells the committer to stop
+	private final Pending stopped = new Pending(null);
+
+	// callers check running and queue under the read lock; stop() clears it under the write lock
+	private final ReadWriteLock enqueueing = new ReentrantReadWriteLock();
+	private volatile boolean running;
+	private Thread committer;
+
+	/**
+	 * An entry waiting to be committed, and the caller waiting for its id.
+	 */
+	private static final class Pending {
+		final TimesheetEntry entry;
+		final CompletableFuture<Integer> id = new CompletableFuture<>();
+
+		Pending(TimesheetEntry entry) {
+			this.entry = entry;
+		}
+	}
+
+	/**
+	 * @param maxBatchSize most entries committed at once
+	 * @param queueSize most entries waiting to be committed
+	 */
+	public GroupCommitter(RecordsService recSvc, int maxBatchSize, int queueSize) {
+		this.recSvc = recSvc;
+		this.maxBatchSize = maxBatchSize;
+		this.queue = new ArrayBlockingQueue<>(queueSize);
+	}
+
+	/**
+	 * Stores an entry (unless an equal one is already stored) in the next
+	 * group commit, waiting for it to happen.
+	 *
+	 * @return id of the entry (the existing one's, if it was a duplicate)
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public int createEntry(TimesheetEntry entry) throws InterruptedException {
+		Pending pending = new Pending(entry);
+		boolean queued;
+		enqueueing.readLock().lockInterruptibly();
+		try {
+			queued = running;
+			if ( queued ) {
+				queue.put(pending);
+			}
+		} finally {
+			enqueueing.readLock().unlock();
+		}
+		if ( !queued ) {
+			return recSvc.createEntry(entry);
+		}
+		try {
+			return pending.id.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException ) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		committer = new Thread(this::commitLoop, "group-commit");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	@Override
+	public void stop() throws InterruptedException {
+		enqueueing.writeLock().lock();
+		try {
+			running = false;
+		} finally {
+			enqueueing.writeLock().unlock();
+		}
+		// nothing is queued from here on: the committer commits what was, then stops
+		queue.put(stopped);
+		committer.join();
+	}
+
+	private void commitLoop() {
+		List<Pending> batch = new ArrayList<>(maxBatchSize);
+		boolean stopping = false;
+		while ( !stopping ) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				// don't leave callers waiting on entries nothing will commit
+				queue.drainTo(batch);
+				batch.remove(stopped);
+				LOGGER.warn("commitLoop: interrupted; failing " + batch.size() + " queued entries");
+				for (Pending pending : batch) {
+					pending.id.completeExceptionally(e);
+				}
+				return;
+			}
+			queue.drainTo(batch, maxBatchSize - 1);
+			stopping = batch.remove(stopped);
+			if ( !batch.isEmpty() ) {
+				commit(batch);
+			}
+			batch.clear();
+		}
+	}
+
+	private void commit(List<Pending> batch) {
+		List<TimesheetEntry> entries = new ArrayList<>(batch.size());
+		for (Pending pending : batch) {
+			entries.add(pending.entry);
+		}
+		try {
+			int[] ids = recSvc.createEntries(entries);
+			for (int i = 0; i < ids.length; i++) {
+				batch.get(i).id.complete(ids[i]);
+			}
+		} catch (RuntimeException e) {
+			LOGGER.error("commit: batch of " + batch.size() + " failed", e);
+			for (Pending pending : batch) {
+				pending.id.completeExceptionally(e);
+			}
+		}
+		LOGGER.debug("commit: " + batch.size() + " entries");
+	}
+}
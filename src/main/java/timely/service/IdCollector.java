@@ -0,0 +1,32 @@
+package timely.service;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Gathers ids into a growable int array.
+ */
+final class IdCollector implements IntConsumer {
+	private int[] ids;
+	private int size;
+
+	IdCollector(int expected) {
+		ids = new int[Math.max(16, expected)];
+	}
+
+	@Override
+	public void accept(int id) {
+		if ( size == ids.length ) {
+			ids = Arrays.copyOf(ids, size * 2);
+		}
+		ids[size++] = id;
+	}
+
+	int size() {
+		return size;
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(ids, size);
+	}
+}
@@ -0,0 +1,47 @@
+package timely.service;
+
+import java.util.List;
+
+import timely.core.TimesheetEntry;
+
+/**
+ * Receives every change RecordsService makes to its records, in the order
+ * they're made, e.g. to persist them. Calls are made under the lock that
+ * publishes the change (see Versions), so they're never reordered, and hold
+ * up other writers while they run.
+ */
+public interface Journal {
+	// Journal that keeps nothing
+	Journal NONE = new Journal() {
+		@Override
+		public void recordAdded(long sequence, int id, TimesheetEntry rec) {
+		}
+
+		@Override
+		public void recordDeleted(long sequence, int id) {
+		}
+	};
+
+	/**
+	 * Called once a record has been stored (and indexed) under id, as the
+	 * change numbered sequence.
+	 */
+	void recordAdded(long sequence, int id, TimesheetEntry rec);
+
+	/**
+	 * Called once a batch of records has been stored; ids[i] is the id of
+	 * recs.get(i), numbered firstSequence + i. Journals may override this to
+	 * handle the batch in one go.
+	 */
+	default void recordsAdded(long firstSequence, int[] ids, List<TimesheetEntry> recs) {
+		for (int i = 0; i < ids.length; i++) {
+			recordAdded(firstSequence + i, ids[i], recs.get(i));
+		}
+	}
+
+	/**
+	 * Called once the record with the given id has been deleted, as the
+	 * change numbered sequence.
+	 */
+	void recordDeleted(long sequence, int id);
+}
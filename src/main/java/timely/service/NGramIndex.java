@@ -0,0 +1,262 @@
+package timely.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+
+/**
+ * Trigram index over the distinct values of a text field of TimesheetEntry,
+ * for prefix, substring and fuzzy searches (see TextMatch). The records
+ * holding each value come from the field's inverted index, so the work of a
+ * search grows with the number of distinct values it has to check, not the
+ * number of records.
+ *
+ * Each value, lower-cased and preceded by a start marker, is cut into its
+ * three-character substrings; each trigram lists the values containing it.
+ * A pattern's values are found by reading the lists of its trigrams (the
+ * shortest, for prefix and contains; all of them, counting, for fuzzy) and
+ * checking just those values. Patterns too short to have trigrams check
+ * every value.
+ *
+ * Values are added the first time a record holds them, and removed (with
+ * their trigrams) once no record does. Numbers aren't reused: a removed
+ * value's number just holds null.
+ */
+class NGramIndex {
+	// Precedes every value, so prefixes have trigrams of their own
+	private static final char START = '\u0002';
+
+	private final FieldIndex records;
+
+	// value -> its number; values are numbered in the order first seen
+	private final ConcurrentMap<String, Integer> numbers = new ConcurrentHashMap<>();
+	// trigram -> numbers of the values containing it
+	private final ConcurrentMap<String, Posting> postings = new ConcurrentHashMap<>();
+	// number -> value, null once removed; written under this
+	private volatile String[] values = new String[16];
+	private volatile int valueCount;
+	// values not removed; written under this
+	private volatile int liveCount;
+
+	/**
+	 * Numbers of values, appended under the index's lock and read without
+	 * one: a reader takes the size, then the array, which holds at least
+	 * that many. Removing a number replaces the whole posting.
+	 */
+	private static final class Posting {
+		private volatile int[] numbers;
+		private volatile int size;
+
+		Posting() {
+			this(new int[4], 0);
+		}
+
+		private Posting(int[] numbers, int size) {
+			this.numbers = numbers;
+			this.size = size;
+		}
+
+		void add(int number) {
+			int[] grown = numbers;
+			if ( size == grown.length ) {
+				grown = Arrays.copyOf(grown, size * 2);
+			}
+			grown[size] = number;
+			numbers = grown;
+			size = size + 1;
+		}
+
+		// a copy without the number; null if that leaves it empty
+		Posting without(int number) {
+			int[] kept = new int[Math.max(4, size)];
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				if ( numbers[i] != number ) {
+					kept[n++] = numbers[i];
+				}
+			}
+			return n == 0 ? null : new Posting(kept, n);
+		}
+	}
+
+	/**
+	 * @param records the field's inverted index, mapping each value to its records
+	 */
+	NGramIndex(FieldIndex records) {
+		this.records = records;
+	}
+
+	EntryField getField() {
+		return records.getField();
+	}
+
+	void add(TimesheetEntry rec) {
+		String value = key(records.getField().getString(rec));
+		if ( !numbers.containsKey(value) ) {
+			addValue(value);
+		}
+	}
+
+	private synchronized void addValue(String value) {
+		if ( numbers.containsKey(value) ) {
+			return;
+		}
+		int number = valueCount;
+		String[] grown = values;
+		if ( number == grown.length ) {
+			grown = Arrays.copyOf(grown, number * 2);
+		}
+		grown[number] = value;
+		values = grown;
+		valueCount = number + 1;
+		liveCount++;
+		for (String trigram : trigrams(START + value)) {
+			postings.computeIfAbsent(trigram, t -> new Posting()).add(number);
+		}
+		numbers.put(value, number);
+	}
+
+	/**
+	 * Drops the record's value, with its trigrams, if no record holds it any
+	 * more (as the field's inverted index tells).
+	 */
+	void remove(TimesheetEntry rec) {
+		String value = key(records.getField().getString(rec));
+		if ( numbers.containsKey(value) && records.lookup(value).size() == 0 ) {
+			removeValue(value);
+		}
+	}
+
+	private synchronized void removeValue(String value) {
+		Integer number = numbers.get(value);
+		if ( number == null || records.lookup(value).size() > 0 ) {
+			return;
+		}
+		numbers.remove(value);
+		values[number] = null;
+		liveCount--;
+		for (String trigram : trigrams(START + value)) {
+			// searches already reading the old posting skip the value, now null
+			postings.computeIfPresent(trigram, (t, posting) -> posting.without(number));
+		}
+		// a record added meanwhile may have found the value still here, and not added it
+		if ( records.lookup(value).size() > 0 ) {
+			addValue(value);
+		}
+	}
+
+	/**
+	 * @return number of distinct values indexed
+	 */
+	int distinctValues() {
+		return liveCount;
+	}
+
+	/**
+	 * @return the values matching the pattern, lower-cased
+	 */
+	List<String> lookup(TextMatch match) {
+		String text = match.getText();
+		Set<String> trigrams = trigrams(match.getKind() == TextMatch.Kind.PREFIX ? START + text : text);
+		// an edit touches at most 4 trigrams (a swap; others 3), so a value
+		// within k edits holds all but 4k of the pattern's
+		int required = trigrams.size() - 4 * match.getMaxEdits();
+		List<String> matched = new ArrayList<>();
+		if ( required <= 0 ) {
+			forEachValue(value -> {
+				if ( match.matches(value) ) {
+					matched.add(value);
+				}
+			});
+		} else if ( match.getMaxEdits() == 0 ) {
+			// every trigram is needed: check the values of the rarest
+			Posting rarest = null;
+			for (String trigram : trigrams) {
+				Posting posting = postings.get(trigram);
+				if ( posting == null ) {
+					return matched;
+				}
+				if ( rarest == null || posting.size < rarest.size ) {
+					rarest = posting;
+				}
+			}
+			forEachValue(rarest, value -> {
+				if ( match.matches(value) ) {
+					matched.add(value);
+				}
+			});
+		} else {
+			// count the pattern's trigrams in each value; check those with enough
+			int[] shared = new int[valueCount];
+			for (String trigram : trigrams) {
+				Posting posting = postings.get(trigram);
+				if ( posting != null ) {
+					int size = posting.size;
+					int[] numbers = posting.numbers;
+					for (int i = 0; i < size; i++) {
+						if ( numbers[i] < shared.length ) {
+							shared[numbers[i]]++;
+						}
+					}
+				}
+			}
+			String[] all = values;
+			for (int number = 0; number < shared.length; number++) {
+				if ( shared[number] >= required && all[number] != null && match.matches(all[number]) ) {
+					matched.add(all[number]);
+				}
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * @return the records holding a value (lower-cased), from the field's inverted index
+	 */
+	FieldIndex.Postings records(String value) {
+		return records.lookup(value);
+	}
+
+	private void forEachValue(Consumer<String> action) {
+		int count = valueCount;
+		String[] all = values;
+		for (int number = 0; number < count; number++) {
+			if ( all[number] != null ) {
+				action.accept(all[number]);
+			}
+		}
+	}
+
+	private void forEachValue(Posting posting, Consumer<String> action) {
+		int size = posting.size;
+		int[] numbers = posting.numbers;
+		String[] all = values;
+		for (int i = 0; i < size; i++) {
+			if ( all[numbers[i]] != null ) {
+				action.accept(all[numbers[i]]);
+			}
+		}
+	}
+
+	// The distinct three-character substrings of s
+	private static Set<String> trigrams(String s) {
+		Set<String> trigrams = new LinkedHashSet<>();
+		for (int i = 0; i + 3 <= s.length(); i++) {
+			trigrams.add(s.substring(i, i + 3));
+		}
+		return trigrams;
+	}
+
+	private static String key(String value) {
+		return value == null ? "" : value.toLowerCase(Locale.ROOT);
+	}
+}
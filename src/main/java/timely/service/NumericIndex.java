@@ -0,0 +1,283 @@
+package timely.service;
+
+import java.util.Arrays;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+
+/**
+ * Range index over a numeric field of TimesheetEntry, in primitive arrays
+ * (no boxing): the field's values sorted, each with its record's id, and
+ * each record's value by id.
+ *
+ * The sorted arrays are immutable once built. Records added since are kept
+ * in a small unsorted buffer, merged into a new sorted copy once it grows
+ * past a fraction of the index; removed records are just marked (their
+ * value by id cleared) and dropped at the next merge. A range lookup is two
+ * binary searches over the sorted arrays plus a pass over the buffer.
+ */
+class NumericIndex {
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	// Smallest number of changes worth a merge
+	private static final int MIN_MERGE = 1024;
+
+	private final EntryField field;
+
+	// id -> field value, in chunks; NaN where there's no record
+	private volatile double[][] valueChunks = new double[0][];
+
+	// (value, id) pairs sorted by value, as of the last merge
+	private volatile Sorted sorted = new Sorted(new double[0], new int[0]);
+
+	// pairs added since the last merge, unsorted; guarded by this
+	private double[] addedValues = new double[64];
+	private int[] addedIds = new int[64];
+	private int addedCount;
+	// records removed since the last merge; guarded by this
+	private int removedCount;
+	// records with a value; written under this
+	private volatile int size;
+
+	NumericIndex(EntryField field) {
+		if ( !field.isNumeric() ) {
+			throw new IllegalArgumentException("Can't range-index non-numeric field " + field);
+		}
+		this.field = field;
+	}
+
+	EntryField getField() {
+		return field;
+	}
+
+	synchronized void add(int id, TimesheetEntry rec) {
+		double value = field.getDouble(rec);
+		if ( Double.isNaN(value) ) {
+			return;  // matches no range
+		}
+		setValue(id, value);
+		size++;
+		if ( addedCount == addedIds.length ) {
+			addedValues = Arrays.copyOf(addedValues, addedCount * 2);
+			addedIds = Arrays.copyOf(addedIds, addedCount * 2);
+		}
+		addedValues[addedCount] = value;
+		addedIds[addedCount] = id;
+		addedCount++;
+		mergeIfDue();
+	}
+
+	synchronized void remove(int id) {
+		if ( Double.isNaN(valueOf(id)) ) {
+			return;
+		}
+		setValue(id, Double.NaN);
+		size--;
+		removedCount++;
+		mergeIfDue();
+	}
+
+	/**
+	 * @return number of records indexed (those whose value isn't NaN)
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the record with the given id has a value in range
+	 */
+	boolean test(int id, NumericRange range) {
+		double value = valueOf(id);
+		return !Double.isNaN(value) && range.contains(value);
+	}
+
+	/**
+	 * @return (an upper bound on) the number of records with values in range
+	 */
+	long count(NumericRange range) {
+		Sorted s;
+		long count = 0;
+		synchronized (this) {
+			s = sorted;
+			for (int i = 0; i < addedCount; i++) {
+				if ( range.contains(addedValues[i]) ) {
+					count++;
+				}
+			}
+		}
+		return count + s.to(range) - s.from(range);
+	}
+
+	/**
+	 * @return ids of the records with values in range, in no particular order
+	 */
+	int[] lookup(NumericRange range) {
+		Sorted s;
+		int[] ids;
+		int n = 0;
+		synchronized (this) {
+			// the buffer goes with the sorted arrays it hasn't been merged into
+			s = sorted;
+			ids = new int[Math.max(16, Math.min(s.size() + addedCount, 1024))];
+			for (int i = 0; i < addedCount; i++) {
+				if ( range.contains(addedValues[i]) && !Double.isNaN(valueOf(addedIds[i])) ) {
+					if ( n == ids.length ) {
+						ids = Arrays.copyOf(ids, n * 2);
+					}
+					ids[n++] = addedIds[i];
+				}
+			}
+		}
+		int from = s.from(range);
+		int to = s.to(range);
+		if ( ids.length < n + to - from ) {
+			ids = Arrays.copyOf(ids, n + to - from);
+		}
+		for (int i = from; i < to; i++) {
+			int id = s.ids[i];
+			if ( !Double.isNaN(valueOf(id)) ) {  // not removed since the merge
+				ids[n++] = id;
+			}
+		}
+		return Arrays.copyOf(ids, n);
+	}
+
+	private double valueOf(int id) {
+		double[][] chunks = valueChunks;
+		int chunk = id >>> CHUNK_BITS;
+		return id < 0 || chunk >= chunks.length ? Double.NaN : chunks[chunk][id & CHUNK_MASK];
+	}
+
+	// Callers hold the lock
+	private void setValue(int id, double value) {
+		int chunk = id >>> CHUNK_BITS;
+		double[][] chunks = valueChunks;
+		if ( chunk >= chunks.length ) {
+			int allocated = chunks.length;
+			chunks = Arrays.copyOf(chunks, chunk + 1);
+			for (int i = allocated; i <= chunk; i++) {
+				chunks[i] = new double[CHUNK_SIZE];
+				Arrays.fill(chunks[i], Double.NaN);
+			}
+			valueChunks = chunks;
+		}
+		chunks[chunk][id & CHUNK_MASK] = value;
+	}
+
+	// Callers hold the lock
+	private void mergeIfDue() {
+		Sorted s = sorted;
+		if ( addedCount + removedCount < Math.max(MIN_MERGE, s.size() / 16) ) {
+			return;
+		}
+		sort(addedValues, addedIds, 0, addedCount - 1);
+
+		int size = s.size() + addedCount;
+		double[] values = new double[size];
+		int[] ids = new int[size];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+		while ( i < s.size() || j < addedCount ) {
+			boolean fromSorted = j == addedCount || (i < s.size() && s.values[i] <= addedValues[j]);
+			int id = fromSorted ? s.ids[i] : addedIds[j];
+			double value = fromSorted ? s.values[i++] : addedValues[j++];
+			if ( !Double.isNaN(valueOf(id)) ) {  // drop removed records
+				values[n] = value;
+				ids[n] = id;
+				n++;
+			}
+		}
+		sorted = new Sorted(Arrays.copyOf(values, n), Arrays.copyOf(ids, n));
+		addedValues = new double[64];
+		addedIds = new int[64];
+		addedCount = 0;
+		removedCount = 0;
+	}
+
+	// Quicksort of (value, id) pairs by value, on the parallel arrays
+	private static void sort(double[] values, int[] ids, int lo, int hi) {
+		while ( hi - lo > 16 ) {
+			double pivot = values[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while ( i <= j ) {
+				while ( values[i] < pivot ) {
+					i++;
+				}
+				while ( values[j] > pivot ) {
+					j--;
+				}
+				if ( i <= j ) {
+					swap(values, ids, i++, j--);
+				}
+			}
+			// recurse into the smaller half, loop on the larger
+			if ( j - lo < hi - i ) {
+				sort(values, ids, lo, j);
+				lo = i;
+			} else {
+				sort(values, ids, i, hi);
+				hi = j;
+			}
+		}
+		for (int i = lo + 1; i <= hi; i++) {
+			for (int k = i; k > lo && values[k - 1] > values[k]; k--) {
+				swap(values, ids, k - 1, k);
+			}
+		}
+	}
+
+	private static void swap(double[] values, int[] ids, int a, int b) {
+		double v = values[a];
+		values[a] = values[b];
+		values[b] = v;
+		int id = ids[a];
+		ids[a] = ids[b];
+		ids[b] = id;
+	}
+
+	/**
+	 * Immutable (value, id) pairs in value order.
+	 */
+	private static final class Sorted {
+		final double[] values;
+		final int[] ids;
+
+		Sorted(double[] values, int[] ids) {
+			this.values = values;
+			this.ids = ids;
+		}
+
+		int size() {
+			return values.length;
+		}
+
+		// index of the first value in range (or past the low end)
+		int from(NumericRange range) {
+			return firstAbove(range.getLo(), !range.isLoInclusive());
+		}
+
+		// index after the last value in range
+		int to(NumericRange range) {
+			return Math.max(from(range), firstAbove(range.getHi(), range.isHiInclusive()));
+		}
+
+		// index of the first value > bound (strict) or >= bound
+		private int firstAbove(double bound, boolean strict) {
+			int lo = 0;
+			int hi = values.length;
+			while ( lo < hi ) {
+				int mid = (lo + hi) >>> 1;
+				if ( strict ? values[mid] <= bound : values[mid] < bound ) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+	}
+}
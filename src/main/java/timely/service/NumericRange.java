@@ -0,0 +1,100 @@
+package timely.service;
+
+import java.util.Locale;
+
+/**
+ * A range of numbers, for searching numeric fields. Written in queries as
+ * an operator and operand(s):
+ *   gt:8, ge:8, lt:8, le:8, eq:8 (or just 8), between:1000,5000 (inclusive)
+ */
+public final class NumericRange {
+	private final double lo;
+	private final boolean loInclusive;
+	private final double hi;
+	private final boolean hiInclusive;
+
+	private NumericRange(double lo, boolean loInclusive, double hi, boolean hiInclusive) {
+		this.lo = lo;
+		this.loInclusive = loInclusive;
+		this.hi = hi;
+		this.hiInclusive = hiInclusive;
+	}
+
+	/**
+	 * @return the range {@code lo <= x <= hi}
+	 */
+	public static NumericRange between(double lo, double hi) {
+		return new NumericRange(lo, true, hi, true);
+	}
+
+	/**
+	 * @param spec e.g. gt:8 or between:1000,5000; see class comment
+	 * @throws IllegalArgumentException if spec isn't a range
+	 */
+	public static NumericRange parse(String spec) {
+		int colon = spec.indexOf(':');
+		String op = colon < 0 ? "eq" : spec.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+		String operand = spec.substring(colon + 1).trim();
+		try {
+			switch (op) {
+			case "gt":
+				return new NumericRange(Double.parseDouble(operand), false, Double.POSITIVE_INFINITY, true);
+			case "ge":
+				return new NumericRange(Double.parseDouble(operand), true, Double.POSITIVE_INFINITY, true);
+			case "lt":
+				return new NumericRange(Double.NEGATIVE_INFINITY, true, Double.parseDouble(operand), false);
+			case "le":
+				return new NumericRange(Double.NEGATIVE_INFINITY, true, Double.parseDouble(operand), true);
+			case "eq":
+				double value = Double.parseDouble(operand);
+				return new NumericRange(value, true, value, true);
+			case "between":
+				String[] bounds = operand.split(",");
+				if ( bounds.length == 2 ) {
+					return between(Double.parseDouble(bounds[0].trim()), Double.parseDouble(bounds[1].trim()));
+				}
+				break;
+			default:
+				break;
+			}
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		throw new IllegalArgumentException("Invalid range '" + spec
+				+ "'; expected gt:, ge:, lt:, le: or eq: and a number, or between:low,high");
+	}
+
+	boolean contains(double x) {
+		return (loInclusive ? x >= lo : x > lo) && (hiInclusive ? x <= hi : x < hi);
+	}
+
+	double getLo() {
+		return lo;
+	}
+
+	boolean isLoInclusive() {
+		return loInclusive;
+	}
+
+	double getHi() {
+		return hi;
+	}
+
+	boolean isHiInclusive() {
+		return hiInclusive;
+	}
+
+	@Override
+	public String toString() {
+		if ( lo == hi ) {
+			return "= " + lo;
+		}
+		if ( hi == Double.POSITIVE_INFINITY ) {
+			return (loInclusive ? ">= " : "> ") + lo;
+		}
+		if ( lo == Double.NEGATIVE_INFINITY ) {
+			return (hiInclusive ? "<= " : "< ") + hi;
+		}
+		return "in " + (loInclusive ? "[" : "(") + lo + ", " + hi + (hiInclusive ? "]" : ")");
+	}
+}
@@ -0,0 +1,29 @@
+package timely.service;
+
+import java.util.List;
+
+import timely.core.TimesheetEntry;
+
+/**
+ * One page of search results.
+ */
+public class Page {
+	private final List<TimesheetEntry> entries;
+	private final String nextCursor;
+
+	Page(List<TimesheetEntry> entries, String nextCursor) {
+		this.entries = entries;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<TimesheetEntry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return cursor for fetching the following page, or null if this is the last
+	 */
+	public String getNextCursor() {
+		return nextCursor;
+	}
+}
@@ -0,0 +1,168 @@
+package timely.service;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A search over the stored records: field = value terms (case-insensitive),
+ * text patterns and numeric field ranges, all of which must hold, optionally
+ * bounded by record date. Results may be
+ * sorted and fetched a page at a time.
+ */
+public class Query {
+	private final Map<String, String> terms = new LinkedHashMap<>();
+	private final Map<String, NumericRange> ranges = new LinkedHashMap<>();
+	private final Map<String, TextMatch> matches = new LinkedHashMap<>();
+	private LocalDate start;
+	private LocalDate end;
+
+	// Paging: sort field (null for store order), page size (0 for no limit),
+	// and the cursor returned with the previous page (null for the first)
+	private String sortField;
+	private boolean descending;
+	private int limit;
+	private String cursor;
+
+	/**
+	 * Adds a term. A later term on the same field replaces an earlier one.
+	 */
+	public Query where(String field, String value) {
+		terms.put(field, value);
+		return this;
+	}
+
+	/**
+	 * Adds a range on a numeric field. A later range on the same field
+	 * replaces an earlier one.
+	 */
+	public Query where(String field, NumericRange range) {
+		ranges.put(field, range);
+		return this;
+	}
+
+	/**
+	 * Adds a pattern on a text field. A later pattern on the same field
+	 * replaces an earlier one.
+	 */
+	public Query where(String field, TextMatch match) {
+		matches.put(field, match);
+		return this;
+	}
+
+	/**
+	 * @param start first day to include; null for no lower bound
+	 * @param end last day to include; null for no upper bound
+	 */
+	public Query between(LocalDate start, LocalDate end) {
+		this.start = start;
+		this.end = end;
+		return this;
+	}
+
+	/**
+	 * Orders results by the given field (dates chronologically); ties, and
+	 * queries without a sort field, are in record id order.
+	 */
+	public Query orderBy(String field, boolean descending) {
+		this.sortField = field;
+		this.descending = descending;
+		return this;
+	}
+
+	/**
+	 * @param limit maximum number of records to return; 0 for all
+	 */
+	public Query limit(int limit) {
+		if ( limit < 0 ) {
+			throw new IllegalArgumentException("limit must not be negative: " + limit);
+		}
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * @param cursor continuation cursor from the previous page (Page.getNextCursor)
+	 */
+	public Query after(String cursor) {
+		this.cursor = cursor;
+		return this;
+	}
+
+	public Map<String, String> getTerms() {
+		return Collections.unmodifiableMap(terms);
+	}
+
+	public Map<String, NumericRange> getRanges() {
+		return Collections.unmodifiableMap(ranges);
+	}
+
+	public Map<String, TextMatch> getMatches() {
+		return Collections.unmodifiableMap(matches);
+	}
+
+	public LocalDate getStart() {
+		return start;
+	}
+
+	public LocalDate getEnd() {
+		return end;
+	}
+
+	public String getSortField() {
+		return sortField;
+	}
+
+	public boolean isDescending() {
+		return descending;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public boolean hasDateBounds() {
+		return start != null || end != null;
+	}
+
+	/**
+	 * @return true if the query doesn't restrict the records at all
+	 */
+	public boolean isEmpty() {
+		return terms.isEmpty() && ranges.isEmpty() && matches.isEmpty() && !hasDateBounds();
+	}
+
+	/**
+	 * @return the same string for any two queries that find the same
+	 *         records in the same order, however their terms were given
+	 */
+	public String normalized() {
+		StringBuilder key = new StringBuilder();
+		for (Map.Entry<String, String> term : new TreeMap<>(terms).entrySet()) {
+			key.append(term.getKey()).append('=').append(term.getValue().toLowerCase(Locale.ROOT)).append('&');
+		}
+		for (Map.Entry<String, NumericRange> range : new TreeMap<>(ranges).entrySet()) {
+			key.append(range.getKey()).append(' ').append(range.getValue()).append('&');
+		}
+		for (Map.Entry<String, TextMatch> match : new TreeMap<>(matches).entrySet()) {
+			key.append(match.getKey()).append('~').append(match.getValue()).append('&');
+		}
+		key.append(start).append("..").append(end)
+				.append("&sort=").append(sortField == null ? "" : (descending ? "-" : "") + sortField.trim().toLowerCase(Locale.ROOT))
+				.append("&limit=").append(limit)
+				.append("&cursor=").append(cursor == null ? "" : cursor);
+		return key.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "Query" + terms + (ranges.isEmpty() ? "" : ranges.toString()) + (matches.isEmpty() ? "" : matches.toString()) + (hasDateBounds() ? " between " + start + " and " + end : "");
+	}
+}
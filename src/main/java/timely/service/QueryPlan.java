@@ -0,0 +1,203 @@
+package timely.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+/**
+ * Execution order for a query's predicates, cheapest first.
+ *
+ * The most selective predicate (fewest matching records, per the index
+ * statistics) drives: only its candidates are enumerated. Every other
+ * predicate just checks those candidates, most selective first, so a
+ * record is dropped as soon as one check fails. If any predicate matches
+ * nothing, the plan is empty without touching a record.
+ *
+ * A plan reads one view of the records: index entries of records the view
+ * doesn't hold (not yet published, or deleted before it) are skipped.
+ *
+ * When even the most selective predicate matches a large share of a large
+ * store, enumerating its candidates on one thread costs more than checking
+ * every record in parallel. The view is then scanned in id-range
+ * partitions on the scan pool (see ScanTask), each partition checking all
+ * the predicates, and the action is applied to the merged matches.
+ */
+class QueryPlan {
+	private final List<QueryPredicate> steps;
+	private final Versions.View view;
+	private final ForkJoinPool pool;
+
+	// When traced: records each step took in and let through, and its time
+	private long[] in;
+	private long[] out;
+	private long[] nanos;
+	// When traced: partitions of the last parallel scan; 0 if it ran on one thread
+	private int partitions;
+
+	private QueryPlan(List<QueryPredicate> steps, Versions.View view, ForkJoinPool pool) {
+		this.steps = steps;
+		this.view = view;
+		this.pool = pool;
+	}
+
+	/**
+	 * @param view records to match
+	 * @param pool pool to scan the view on, when a parallel scan is cheaper
+	 */
+	static QueryPlan of(List<QueryPredicate> predicates, Versions.View view, ForkJoinPool pool) {
+		List<QueryPredicate> steps = new ArrayList<>(predicates);
+		Collections.sort(steps, Comparator.comparingLong(QueryPredicate::estimate));
+		return new QueryPlan(steps, view, pool);
+	}
+
+	List<QueryPredicate> getSteps() {
+		return Collections.unmodifiableList(steps);
+	}
+
+	/**
+	 * Makes forEachMatch count and time what each step does, for explain().
+	 * The timing adds a little to every check.
+	 */
+	QueryPlan traced() {
+		in = new long[steps.size()];
+		out = new long[steps.size()];
+		nanos = new long[steps.size()];
+		return this;
+	}
+
+	/**
+	 * @return the steps with what they did in the last forEachMatch; for a traced plan
+	 */
+	List<Explain.Step> explainSteps() {
+		List<Explain.Step> explained = new ArrayList<>(steps.size());
+		for (int i = 0; i < steps.size(); i++) {
+			QueryPredicate step = steps.get(i);
+			explained.add(new Explain.Step(step.toString(), step.access(), step.estimate(), in[i], out[i], nanos[i]));
+		}
+		return explained;
+	}
+
+	/**
+	 * @return partitions scanned in parallel by the last forEachMatch, 0 if
+	 *         it ran on one thread; for a traced plan
+	 */
+	int getPartitions() {
+		return partitions;
+	}
+
+	/**
+	 * @return true if the view would be scanned in parallel rather than
+	 *         the driver's candidates enumerated
+	 */
+	boolean isParallel() {
+		int size = view.size();
+		int threads = pool.getParallelism();
+		// each thread checks size / threads records: worth it if that's fewer
+		// than the driver would enumerate alone
+		return threads > 1 && size >= 2 * ScanTask.PARTITION_SIZE
+				&& steps.get(0).estimate() * threads >= size;
+	}
+
+	/**
+	 * Calls action with the id of each record satisfying every predicate.
+	 */
+	void forEachMatch(IntConsumer action) {
+		if ( steps.isEmpty() || steps.get(0).estimate() == 0 ) {
+			return;
+		}
+
+		if ( isParallel() ) {
+			forEachMatchParallel(action);
+			return;
+		}
+		if ( in != null ) {
+			forEachMatchTraced(action);
+			return;
+		}
+
+		QueryPredicate driver = steps.get(0);
+		int checks = steps.size();
+		driver.forEachCandidate(id -> {
+			if ( !view.contains(id) ) {
+				return;
+			}
+			boolean matches = true;
+			for (int i = 1; i < checks && matches; i++) {
+				matches = steps.get(i).test(id);
+			}
+			if ( matches ) {
+				action.accept(id);
+			}
+		});
+	}
+
+	private void forEachMatchTraced(IntConsumer action) {
+		QueryPredicate driver = steps.get(0);
+		int checks = steps.size();
+		// time outside the driver: checks, and whatever action does
+		long[] elsewhere = new long[1];
+		long start = System.nanoTime();
+		driver.forEachCandidate(id -> {
+			if ( !view.contains(id) ) {
+				return;
+			}
+			in[0]++;
+			out[0]++;
+			boolean matches = true;
+			for (int i = 1; i < checks && matches; i++) {
+				in[i]++;
+				long checkStart = System.nanoTime();
+				matches = steps.get(i).test(id);
+				long checked = System.nanoTime() - checkStart;
+				nanos[i] += checked;
+				elsewhere[0] += checked;
+				if ( matches ) {
+					out[i]++;
+				}
+			}
+			if ( matches ) {
+				long actionStart = System.nanoTime();
+				action.accept(id);
+				elsewhere[0] += System.nanoTime() - actionStart;
+			}
+		});
+		nanos[0] += System.nanoTime() - start - elsewhere[0];
+	}
+
+	// Checks every record in parallel partitions, then hands the matches to
+	// action on this thread, in id order
+	private void forEachMatchParallel(IntConsumer action) {
+		ScanTask.Counts counts = in == null ? null : new ScanTask.Counts(steps.size());
+		long start = System.nanoTime();
+		int[] ids = pool.invoke(new ScanTask(view, steps, counts, 0, view.idLimit()));
+		long scanned = System.nanoTime() - start;
+		for (int id : ids) {
+			action.accept(id);
+		}
+		if ( counts != null ) {
+			for (int i = 0; i < steps.size(); i++) {
+				in[i] += counts.in[i];
+				out[i] += counts.out[i];
+			}
+			// the checks ran interleaved across threads: report the scan's wall time against the first step
+			nanos[0] += scanned;
+			partitions = counts.partitions;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < steps.size(); i++) {
+			QueryPredicate step = steps.get(i);
+			sb.append(i == 0 ? "drive " : ", check ").append(step).append(" ~").append(step.estimate());
+		}
+		if ( !steps.isEmpty() && isParallel() ) {
+			sb.append(", parallel scan");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,266 @@
+package timely.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+import timely.core.EntryField;
+
+/**
+ * One condition of a query plan. A predicate can estimate how many records
+ * satisfy it, enumerate them (when it drives the plan), or check a single
+ * record (when another, more selective predicate drives).
+ */
+abstract class QueryPredicate {
+
+	/**
+	 * @return (an upper bound on) the number of records satisfying this predicate
+	 */
+	abstract long estimate();
+
+	/**
+	 * @return true if the record satisfies this predicate
+	 */
+	abstract boolean test(int id);
+
+	/**
+	 * @return how the predicate finds and checks records, e.g. "index" or "scan"
+	 */
+	abstract String access();
+
+	/**
+	 * Calls action with the id of each record satisfying this predicate.
+	 */
+	abstract void forEachCandidate(IntConsumer action);
+
+	/**
+	 * field = value, answered by the field's inverted index.
+	 */
+	static final class Term extends QueryPredicate {
+		private final FieldIndex index;
+		private final String value;
+		private final FieldIndex.Postings postings;
+
+		Term(FieldIndex index, String value) {
+			this.index = index;
+			this.value = value;
+			this.postings = index.lookup(value);
+		}
+
+		@Override
+		long estimate() {
+			return postings.size();
+		}
+
+		@Override
+		void forEachCandidate(IntConsumer action) {
+			postings.forEach(action);
+		}
+
+		@Override
+		boolean test(int id) {
+			return postings.contains(id);
+		}
+
+		@Override
+		String access() {
+			return "index";
+		}
+
+		@Override
+		public String toString() {
+			return index.getField() + " = " + value + " (index of " + index.distinctValues() + " values)";
+		}
+	}
+
+	/**
+	 * field = value on an unindexed field: checks every record.
+	 */
+	static final class Scan extends QueryPredicate {
+		private final Versions.View view;
+		private final EntryField field;
+		private final String value;
+
+		Scan(Versions.View view, EntryField field, String value) {
+			this.view = view;
+			this.field = field;
+			this.value = value;
+		}
+
+		@Override
+		long estimate() {
+			return view.size();
+		}
+
+		@Override
+		void forEachCandidate(IntConsumer action) {
+			view.forEachId(id -> {
+				if ( test(id) ) {
+					action.accept(id);
+				}
+			});
+		}
+
+		@Override
+		boolean test(int id) {
+			Object recValue = view.getValue(id, field);
+			return recValue != null && String.valueOf(recValue).equalsIgnoreCase(value);
+		}
+
+		@Override
+		String access() {
+			return "scan";
+		}
+
+		@Override
+		public String toString() {
+			return field + " = " + value + " (scan)";
+		}
+	}
+
+	/**
+	 * Text field matching a pattern (prefix, contains or fuzzy): the field's
+	 * n-gram index finds the matching values, its inverted index their records.
+	 */
+	static final class Text extends QueryPredicate {
+		private final NGramIndex index;
+		private final TextMatch match;
+		private final Versions.View view;
+		// records of each matching value
+		private final List<FieldIndex.Postings> postings = new ArrayList<>();
+		private final int values;
+		private long estimate;
+
+		Text(NGramIndex index, TextMatch match, Versions.View view) {
+			this.index = index;
+			this.match = match;
+			this.view = view;
+			List<String> matched = index.lookup(match);
+			for (String value : matched) {
+				FieldIndex.Postings ids = index.records(value);
+				if ( ids.size() > 0 ) {
+					postings.add(ids);
+					estimate += ids.size();
+				}
+			}
+			this.values = matched.size();
+		}
+
+		@Override
+		long estimate() {
+			return estimate;
+		}
+
+		@Override
+		void forEachCandidate(IntConsumer action) {
+			for (FieldIndex.Postings ids : postings) {
+				ids.forEach(action);
+			}
+		}
+
+		@Override
+		boolean test(int id) {
+			Object value = view.getValue(id, index.getField());
+			return value != null && match.matches(String.valueOf(value).toLowerCase(Locale.ROOT));
+		}
+
+		@Override
+		String access() {
+			return "n-gram index";
+		}
+
+		@Override
+		public String toString() {
+			return index.getField() + " " + match + " (n-gram index: " + values + " of " + index.distinctValues() + " values)";
+		}
+	}
+
+	/**
+	 * Numeric field within a range, answered by the field's range index.
+	 */
+	static final class Range extends QueryPredicate {
+		private final NumericIndex index;
+		private final NumericRange range;
+		private long estimate = -1;
+
+		Range(NumericIndex index, NumericRange range) {
+			this.index = index;
+			this.range = range;
+		}
+
+		@Override
+		long estimate() {
+			if ( estimate < 0 ) {
+				estimate = index.count(range);
+			}
+			return estimate;
+		}
+
+		@Override
+		void forEachCandidate(IntConsumer action) {
+			for (int id : index.lookup(range)) {
+				action.accept(id);
+			}
+		}
+
+		@Override
+		boolean test(int id) {
+			return index.test(id, range);
+		}
+
+		@Override
+		String access() {
+			return "range index";
+		}
+
+		@Override
+		public String toString() {
+			return index.getField() + " " + range + " (range index)";
+		}
+	}
+
+	/**
+	 * start <= date <= end, answered by the date index.
+	 */
+	static final class DateRange extends QueryPredicate {
+		private final DateIndex dateIndex;
+		private final int lo;
+		private final int hi;
+		private long estimate = -1;
+
+		DateRange(DateIndex dateIndex, int lo, int hi) {
+			this.dateIndex = dateIndex;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		long estimate() {
+			if ( estimate < 0 ) {
+				estimate = dateIndex.count(lo, hi);
+			}
+			return estimate;
+		}
+
+		@Override
+		void forEachCandidate(IntConsumer action) {
+			dateIndex.forEachBetween(lo, hi, action);
+		}
+
+		@Override
+		boolean test(int id) {
+			return dateIndex.isWithin(id, lo, hi);
+		}
+
+		@Override
+		String access() {
+			return "date index";
+		}
+
+		@Override
+		public String toString() {
+			return "date between " + DateIndex.format(lo) + " and " + DateIndex.format(hi) + " (date index)";
+		}
+	}
+}
@@ -1,90 +1,815 @@
 package timely.service;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import timely.core.AggregateRow;
+import timely.core.ContentHash;
+import timely.core.EntryField;
 import timely.core.TimesheetEntry;
+import timely.core.Totals;
+import timely.core.UnknownFieldException;
+import timely.store.HashRecordStore;
+import timely.store.RecordStore;
 
+/**
+ * The records and their indexes.
+ *
+ * Writers store and index records, then publish them (see Versions): a batch
+ * becomes visible to searches all at once. Each search, aggregation or
+ * export reads one view of the records, unaffected by writes made while it
+ * runs.
+ */
 //TODO: split into interface/implementation
 public class RecordsService {
 	private static final Logger LOGGER = LoggerFactory.getLogger(RecordsService.class);
+	// Per-request and per-entry messages; set its level to OFF to silence them under load
+	private static final Logger ENTRY_LOGGER = LoggerFactory.getLogger("timely.entries");
+
+	// Fields that may be used as search terms (each gets an inverted index)
+	public static final String[] SEARCH_TERMS = {
+			"client",
+			"lastName",
+			"firstName",
+			"department",
+			"project",
+			"projectCode",
+			"isBillable",
+			"isInvoiced",
+			"isEmployee",
+			"isApproved",
+			"task"};
+
+	// Text fields that may be searched by prefix, substring or fuzzy pattern (each gets an n-gram index)
+	public static final String[] TEXT_TERMS = {
+			"task",
+			"lastName",
+			"firstName",
+			"client",
+			"project"};
+
+	// Numeric fields that may be searched by range (each gets a range index)
+	public static final String[] RANGE_TERMS = {
+			"hours",
+			"hoursRounded",
+			"billableRate",
+			"costRate",
+			"costAmount"};
+
+	private final RecordStore store;
+	// runs parallel scans and ad-hoc aggregations
+	private final ForkJoinPool scanPool;
+
+	// search term -> inverted index of that field
+	private final Map<String, FieldIndex> indexes = new HashMap<>();
+	// range term -> range index of that field
+	private final Map<String, NumericIndex> numericIndexes = new HashMap<>();
+	// text term -> n-gram index of that field's values
+	private final Map<String, NGramIndex> ngramIndexes = new HashMap<>();
+	private final DateIndex dateIndex = new DateIndex();
+	// groupings whose totals are kept up to date on every add/delete
+	private final List<Rollup> rollups = new ArrayList<>();
+	private volatile Journal journal = Journal.NONE;
+	// which records each reader sees
+	private final Versions versions;
+	// names the numbering of changes, which starts over if it can't be carried on
+	private volatile String feedId = UUID.randomUUID().toString();
+
+	// find() stages: index lookups and planning, matching and ordering, fetching records
+	private final Timer planTimer;
+	private final Timer matchTimer;
+	private final Timer fetchTimer;
+	private final Histogram candidates;
+	private final Histogram results;
+	private final Meter imported;
+	private final Meter duplicates;
+
+	public RecordsService() {
+		this(new HashRecordStore());
+	}
+
+	public RecordsService(RecordStore store) {
+		this(store, Collections.emptyList());
+	}
+
+	/**
+	 * @param rollups groupings to maintain totals for, each a comma-separated
+	 *        list of dimensions (e.g. "client,month"); see {@link #aggregate}
+	 * @throws UnknownFieldException if a rollup names an unknown dimension
+	 */
+	public RecordsService(RecordStore store, List<String> rollups) {
+		this(store, rollups, new MetricRegistry());
+	}
+
+	/**
+	 * @param metrics registry for search and import timings, and store and index sizes
+	 * @throws UnknownFieldException if a rollup names an unknown dimension
+	 */
+	public RecordsService(RecordStore store, List<String> rollups, MetricRegistry metrics) {
+		this(store, rollups, metrics, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param scanPool pool for searches that scan the store in parallel, and
+	 *        for aggregations; its parallelism bounds the threads a search takes
+	 * @throws UnknownFieldException if a rollup names an unknown dimension
+	 */
+	public RecordsService(RecordStore store, List<String> rollups, MetricRegistry metrics, ForkJoinPool scanPool) {
+		this.store = store;
+		this.scanPool = scanPool;
+		this.versions = new Versions(store, (rec, id) -> unindex(id, rec));
+		for ( String term : SEARCH_TERMS ) {
+			indexes.put(term, new FieldIndex(EntryField.forName(term)));
+		}
+		for ( String term : RANGE_TERMS ) {
+			numericIndexes.put(term, new NumericIndex(EntryField.forName(term)));
+		}
+		for ( String term : TEXT_TERMS ) {
+			ngramIndexes.put(term, new NGramIndex(indexes.get(term)));
+		}
+		for ( String rollup : rollups ) {
+			this.rollups.add(new Rollup(dimensions(Arrays.asList(rollup.split(",")))));
+		}
+
+		planTimer = metrics.timer(MetricRegistry.name(RecordsService.class, "find", "plan"));
+		matchTimer = metrics.timer(MetricRegistry.name(RecordsService.class, "find", "match"));
+		fetchTimer = metrics.timer(MetricRegistry.name(RecordsService.class, "find", "fetch"));
+		candidates = metrics.histogram(MetricRegistry.name(RecordsService.class, "find", "candidates"));
+		results = metrics.histogram(MetricRegistry.name(RecordsService.class, "find", "results"));
+		imported = metrics.meter(MetricRegistry.name(RecordsService.class, "imported"));
+		duplicates = metrics.meter(MetricRegistry.name(RecordsService.class, "duplicates"));
 
-	private final Set<TimesheetEntry> completeSet = new ConcurrentHashMap<TimesheetEntry, Boolean>().newKeySet();
+		metrics.register(MetricRegistry.name(RecordsService.class, "records"), (Gauge<Integer>) store::size);
+		// whole heap in use over the records: an upper bound on what each costs
+		metrics.register(MetricRegistry.name(RecordsService.class, "heapPerRecord"), (Gauge<Long>) () -> {
+			Runtime runtime = Runtime.getRuntime();
+			int size = store.size();
+			return size == 0 ? 0 : (runtime.totalMemory() - runtime.freeMemory()) / size;
+		});
+		for ( FieldIndex index : indexes.values() ) {
+			metrics.register(MetricRegistry.name(RecordsService.class, "index", index.getField().getName(), "distinctValues"),
+					(Gauge<Integer>) index::distinctValues);
+		}
+		for ( NumericIndex index : numericIndexes.values() ) {
+			metrics.register(MetricRegistry.name(RecordsService.class, "index", index.getField().getName(), "records"),
+					(Gauge<Integer>) index::size);
+		}
+		for ( NGramIndex index : ngramIndexes.values() ) {
+			metrics.register(MetricRegistry.name(RecordsService.class, "index", index.getField().getName(), "ngramValues"),
+					(Gauge<Integer>) index::distinctValues);
+		}
+		metrics.register(MetricRegistry.name(RecordsService.class, "index", "date", "records"),
+				(Gauge<Integer>) dateIndex::size);
+		// deleted records kept indexed for searches that started before they went
+		metrics.register(MetricRegistry.name(RecordsService.class, "versions", "unreclaimed"),
+				(Gauge<Integer>) versions::getUnreclaimed);
+		metrics.register(MetricRegistry.name(RecordsService.class, "versions", "readers"),
+				(Gauge<Integer>) versions::getReaders);
+		metrics.register(MetricRegistry.name(RecordsService.class, "versions", "changeLog"),
+				(Gauge<Integer>) versions::getLogSize);
+	}
+
+	/**
+	 * @param journal receives every later add and delete (but not restores)
+	 */
+	public void setJournal(Journal journal) {
+		this.journal = journal;
+	}
 
 	public int importRecords(List<TimesheetEntry> newRecords) {
-		// Remove duplicates
-		List<TimesheetEntry> newRecordsCopy = new ArrayList<>(newRecords);
-		newRecordsCopy.removeAll(completeSet);
+		int[] ids = new int[newRecords.size()];
+		List<TimesheetEntry> added = new ArrayList<>(newRecords.size());
+		for (TimesheetEntry rec : newRecords) {
+			int id = add(rec, ContentHash.of(rec));
+			// Skip duplicates
+			if ( id != RecordStore.NO_ID ) {
+				ids[added.size()] = id;
+				added.add(rec);
+			}
+		}
+		// journaled as published, so the journal holds changes in the order they're seen
+		versions.publish(ids, 0, added.size(), () -> {
+			rollUp(ids, added, 1);
+			journal.recordsAdded(versions.getSequence() - added.size() + 1, Arrays.copyOf(ids, added.size()), added);
+		});
+		imported.mark(added.size());
+		duplicates.mark(newRecords.size() - added.size());
 
-		completeSet.addAll(newRecordsCopy);
+		LOGGER.info("importRecords: ADDED " + added.size() + " of "
+				+ newRecords.size() + " to collection (any duplicates removed). There are now " + store.size() + " records in total.");
+		return added.size();
+	}
 
-		LOGGER.info("importRecords: ADDED " + (newRecordsCopy.size()) + " of "
-				+ newRecords.size() + " to collection (any duplicates removed). There are now " + completeSet.size() + " records in total.");
-		return newRecordsCopy.size();
+	/**
+	 * Stores a single entry, unless an equal one is already stored.
+	 *
+	 * @return id of the entry (the existing one's, if it was a duplicate)
+	 */
+	public int createEntry(TimesheetEntry entry) {
+		long hash = ContentHash.of(entry);
+		int id = add(entry, hash);
+		if ( id != RecordStore.NO_ID ) {
+			versions.publish(new int[] { id }, 0, 1, () -> {
+				rollUp(id, entry, 1);
+				journal.recordAdded(versions.getSequence(), id, entry);
+			});
+			imported.mark();
+			return id;
+		}
+		duplicates.mark();
+		return store.find(entry, hash);
+	}
+
+	/**
+	 * Stores several entries, skipping those equal to one already stored.
+	 * Added entries are journaled as one batch.
+	 *
+	 * @return id of each entry, in order (the existing one's, for duplicates)
+	 */
+	public int[] createEntries(List<TimesheetEntry> entries) {
+		int[] ids = new int[entries.size()];
+		int[] addedIds = new int[entries.size()];
+		List<TimesheetEntry> added = new ArrayList<>(entries.size());
+		for (int i = 0; i < ids.length; i++) {
+			TimesheetEntry entry = entries.get(i);
+			long hash = ContentHash.of(entry);
+			ids[i] = add(entry, hash);
+			if ( ids[i] != RecordStore.NO_ID ) {
+				addedIds[added.size()] = ids[i];
+				added.add(entry);
+			} else {
+				ids[i] = store.find(entry, hash);
+			}
+		}
+		versions.publish(addedIds, 0, added.size(), () -> {
+			rollUp(addedIds, added, 1);
+			journal.recordsAdded(versions.getSequence() - added.size() + 1, Arrays.copyOf(addedIds, added.size()), added);
+		});
+		imported.mark(added.size());
+		duplicates.mark(entries.size() - added.size());
+		return ids;
+	}
+
+	/**
+	 * @return the entry with the given id, or null if there is none
+	 */
+	public TimesheetEntry getEntry(int id) {
+		TimesheetEntry rec = store.get(id);
+		return rec != null && versions.isVisible(id) ? rec : null;
 	}
 
 	public boolean deleteEntry(TimesheetEntry entryToDelete) {
-		LOGGER.info("deleteEntry");
-
-		boolean removed = false;
-		for (TimesheetEntry rec : completeSet) {
-			if (rec.equals(entryToDelete)) {
-				LOGGER.info("deleteEntry: FOUND entry to delete: " + rec.toString() + "\n");
-				completeSet.remove(rec); //FIXME: concurrrent?
-				removed = true;
-			}
-		}
-		return removed;
-	}
-
-	public Set<TimesheetEntry> findFieldWithValue(String field, String valueToFind, Date start, Date end) throws IllegalAccessException,
-			IllegalArgumentException, InvocationTargetException, ClassNotFoundException, NoSuchMethodException {
-		LOGGER.info("findFieldWithValue: " + valueToFind);
-
-		// Use reflection to get arbitrary TimesheeEntry fields
-		// to be used for search terms.
-		Method fieldGetter = TimesheetEntry.getGetter(field);
-
-		Set<TimesheetEntry> recList = new HashSet<TimesheetEntry>();
-		for (TimesheetEntry rec : completeSet) {
-			String recFieldValue = (String) fieldGetter.invoke(rec);
-			//TODO: use a configured debug flag
-			//LOGGER.info("findFieldWithValue: trying record with " + field + " of " + recFieldValue);
-			if (recFieldValue.equalsIgnoreCase(valueToFind)) {
-				//LOGGER.info("findFieldWithValue: FOUND record: " + rec.toString() + "\n");
-				Date recDate = null;
-				if ( start != null || end != null ) {
-					SimpleDateFormat sdf = new SimpleDateFormat("M/d/yyyy");
-					try {
-						recDate = sdf.parse(rec.getDate());
-					} catch (ParseException e) {
-						LOGGER.info("Bad record date format: " + rec.getDate() + ". Skipping this record.");
-						continue;
-					}
+		int id = store.find(entryToDelete, ContentHash.of(entryToDelete));
+		return id != RecordStore.NO_ID && deleteEntry(id);
+	}
+
+	public boolean deleteEntry(int id) {
+		TimesheetEntry rec = delete(id);
+		if ( rec == null ) {
+			return false;
+		}
+		if ( ENTRY_LOGGER.isInfoEnabled() ) {
+			ENTRY_LOGGER.info("deleteEntry: FOUND entry to delete: " + rec.toString() + "\n");
+		}
+		return true;
+	}
+
+	/**
+	 * Re-adds a previously stored record under its old id, e.g. when
+	 * reloading persisted records. Not journaled.
+	 *
+	 * @param sequence the add's old sequence number; 0 (or one already
+	 *        passed) numbers it next
+	 * @return false if a record with that id is already stored
+	 */
+	public boolean restoreEntry(long sequence, int id, TimesheetEntry rec) {
+		if ( !store.restore(id, rec, ContentHash.of(rec)) ) {
+			return false;
+		}
+		index(id, rec);
+		versions.publish(new int[] { id }, 0, 1, sequence, () -> rollUp(id, rec, 1));
+		return true;
+	}
+
+	/**
+	 * Deletes a record without journaling it, e.g. when replaying a
+	 * persisted delete. A numbered delete of a record that isn't here (one
+	 * deleted before the snapshot it's restored from) is still logged, so
+	 * feeds list it.
+	 *
+	 * @param sequence the delete's old sequence number; 0 (or one already
+	 *        passed) numbers it next
+	 * @return false if there is no record with that id
+	 */
+	public boolean restoreDelete(long sequence, int id) {
+		// the id was given out, whether or not its record is still here
+		store.restoreIdLimit(id + 1);
+		if ( versions.delete(id, sequence, rec -> rollUp(id, rec, -1)) != null ) {
+			return true;
+		}
+		if ( sequence != 0 ) {
+			versions.logDelete(id, sequence);
+		}
+		return false;
+	}
+
+	/**
+	 * Carries on the numbering of changes from before a restart.
+	 *
+	 * @param sequence the latest sequence number given out
+	 * @param floor change floor as of then (see getChangeFloor)
+	 */
+	public void restoreSequence(long sequence, long floor) {
+		versions.restoreSequence(sequence, floor);
+	}
+
+	/**
+	 * Carries on the giving out of ids from before a restart, so the ids of
+	 * records deleted then aren't given to new ones.
+	 *
+	 * @param idLimit getIdLimit() as of then
+	 */
+	public void restoreIdLimit(int idLimit) {
+		store.restoreIdLimit(idLimit);
+	}
+
+	/**
+	 * Calls action with every record and its id, as they were when it was
+	 * called: records added or deleted meanwhile aren't (or are still) passed.
+	 */
+	public void forEachEntry(ObjIntConsumer<TimesheetEntry> action) {
+		try (Versions.View view = versions.open()) {
+			view.forEachId(id -> action.accept(view.get(id), id));
+		}
+	}
+
+	/**
+	 * Calls action with every add and delete numbered after since, in order,
+	 * as they were when it was called. Adds of records deleted since are left
+	 * out (their deletes aren't), so applying the changes in order yields the
+	 * current records; since 0, they're every current record.
+	 *
+	 * @return sequence number of the latest change covered: since for the next call
+	 * @throws IllegalStateException if since is below the change floor, and not 0
+	 */
+	public long forEachChange(long since, Consumer<Change> action) {
+		try (Versions.View view = versions.open()) {
+			view.forEachChange(since, action);
+			return view.getSequence();
+		}
+	}
+
+	/**
+	 * @return sequence number up to which deletes may have been compacted
+	 *         out of the change log; forEachChange can't serve any since
+	 *         below it but 0
+	 */
+	public long getChangeFloor() {
+		return versions.getFloor();
+	}
+
+	/**
+	 * @return a bound on the ids given out so far, deleted records' included:
+	 *         every id is below it
+	 */
+	public int getIdLimit() {
+		return store.idLimit();
+	}
+
+	/**
+	 * @param changeRetention how many of the latest changes to keep deletes
+	 *        for in the change log (adds of current records are always kept)
+	 */
+	public void setChangeRetention(long changeRetention) {
+		versions.setChangeRetention(changeRetention);
+	}
+
+	/**
+	 * @return sequence number of the latest add or delete; 0 if there's been none
+	 */
+	public long getSequence() {
+		return versions.getSequence();
+	}
+
+	/**
+	 * @return identifies the numbering of changes; it's carried on across
+	 *         restarts where the records are persisted with their sequence
+	 *         numbers, and starts over under a new id otherwise
+	 */
+	public String getFeedId() {
+		return feedId;
+	}
+
+	/**
+	 * @param feedId id of the numbering carried on (see restoreSequence)
+	 */
+	public void setFeedId(String feedId) {
+		this.feedId = feedId;
+	}
+
+	public int size() {
+		return store.size();
+	}
+
+	/**
+	 * @return a number that changes whenever records are added or deleted;
+	 *         results computed under one generation hold until it changes
+	 */
+	public long getGeneration() {
+		return versions.getEpoch();
+	}
+
+	// Stores and indexes a record; returns its id, or NO_ID if it's a duplicate.
+	// Callers publish and journal the records added.
+	private int add(TimesheetEntry rec, long hash) {
+		int id = store.add(rec, hash);
+		if ( id != RecordStore.NO_ID ) {
+			index(id, rec);
+		}
+		return id;
+	}
+
+	private void index(int id, TimesheetEntry rec) {
+		for (FieldIndex index : indexes.values()) {
+			index.add(id, rec);
+		}
+		for (NumericIndex index : numericIndexes.values()) {
+			index.add(id, rec);
+		}
+		for (NGramIndex index : ngramIndexes.values()) {
+			index.add(rec);
+		}
+		if ( !dateIndex.add(id, rec) ) {
+			LOGGER.debug("add: unparseable date " + rec.getDate() + "; record won't match date-bounded searches");
+		}
+	}
+
+	// Counts records in (sign 1) or out of (sign -1) the rollups; called
+	// under the Versions lock, as they're published or deleted
+	private void rollUp(int[] ids, List<TimesheetEntry> recs, int sign) {
+		int epoch = versions.getEpoch();
+		for (int i = 0; i < recs.size(); i++) {
+			rollUp(ids[i], recs.get(i), sign, epoch);
+		}
+		for (Rollup rollup : rollups) {
+			rollup.counted(epoch);
+		}
+	}
+
+	private void rollUp(int id, TimesheetEntry rec, int sign) {
+		int epoch = versions.getEpoch();
+		rollUp(id, rec, sign, epoch);
+		for (Rollup rollup : rollups) {
+			rollup.counted(epoch);
+		}
+	}
+
+	private void rollUp(int id, TimesheetEntry rec, int sign, int epoch) {
+		Integer day = dateIndex.dayOf(id);
+		for (Rollup rollup : rollups) {
+			rollup.add(rec, day, sign, epoch);
+		}
+	}
+
+	// Removes a record from the store and the rollups, journaling it (as
+	// it's deleted, like adds). Its index entries go once no search can see
+	// it any more (see unindex).
+	private TimesheetEntry delete(int id) {
+		return versions.delete(id, rec -> {
+			rollUp(id, rec, -1);
+			journal.recordDeleted(versions.getSequence(), id);
+		});
+	}
+
+	private void unindex(int id, TimesheetEntry rec) {
+		for (Map.Entry<String, FieldIndex> index : indexes.entrySet()) {
+			NGramIndex ngrams = ngramIndexes.get(index.getKey());
+			// the record was the last with its value: its trigrams can go too
+			if ( index.getValue().remove(id, rec) && ngrams != null ) {
+				ngrams.remove(rec);
+			}
+		}
+		for (NumericIndex index : numericIndexes.values()) {
+			index.remove(id);
+		}
+		dateIndex.remove(id);
+	}
+
+	/**
+	 * Finds the records matching every term and range of a query (and its
+	 * date bounds), one page at a time if the query has a limit.
+	 *
+	 * @throws UnknownFieldException if a term or the sort names a field TimesheetEntry doesn't have
+	 * @throws IllegalArgumentException if the query's cursor is invalid, or it has a range on a non-numeric field
+	 */
+	public Page find(Query query) {
+		try (Versions.View view = versions.open()) {
+			Timer.Context planning = planTimer.time();
+			QueryPlan plan = plan(query, view);
+			planning.stop();
+			return run(query, view, plan, null);
+		}
+	}
+
+	/**
+	 * Runs a search as find() does, tracing how: the plan's steps with
+	 * their access paths, how many records each took in and let through,
+	 * and the time and allocation of planning, matching and fetching.
+	 *
+	 * @return the trace, holding the page found
+	 * @throws UnknownFieldException if a term or the sort names a field TimesheetEntry doesn't have
+	 * @throws IllegalArgumentException if the query's cursor is invalid, or it has a range on a non-numeric field
+	 */
+	public Explain explain(Query query) {
+		try (Versions.View view = versions.open()) {
+			List<Explain.Stage> stages = new ArrayList<>();
+			Explain.Stopwatch watch = Explain.Stopwatch.start();
+			QueryPlan plan = plan(query, view).traced();
+			stages.add(watch.stop("plan"));
+
+			Page page = run(query, view, plan, stages);
+			// the date index also holds deleted records some search may still see
+			Integer undated = query.hasDateBounds()
+					? Math.max(0, store.size() + versions.getUnreclaimed() - dateIndex.size()) : null;
+			Integer partitions = plan.getPartitions() > 0 ? plan.getPartitions() : null;
+			Explain explain = new Explain(query, view.size(), undated, partitions, plan.explainSteps(), page);
+			for (Explain.Stage stage : stages) {
+				explain.addStage(stage);
+			}
+			return explain;
+		}
+	}
+
+	// Matches, orders and fetches the records of a planned search. Adds the
+	// time and allocation of each stage to stages, unless that's null.
+	private Page run(Query query, Versions.View view, QueryPlan plan, List<Explain.Stage> stages) {
+		if ( LOGGER.isDebugEnabled() ) {
+			LOGGER.debug("find: " + query + ": " + plan);
+		}
+		if ( !plan.getSteps().isEmpty() ) {
+			candidates.update(plan.getSteps().get(0).estimate());
+		}
+
+		Explain.Stopwatch watch = stages == null ? null : Explain.Stopwatch.start();
+		Timer.Context matching = matchTimer.time();
+		ResultOrder order = new ResultOrder(query, view, dateIndex);
+		List<ResultOrder.Hit> hits = order.select(plan, query.getLimit(), query.getCursor());
+		matching.stop();
+		String nextCursor = null;
+		if ( query.getLimit() > 0 && hits.size() > query.getLimit() ) {
+			hits = hits.subList(0, query.getLimit());
+			nextCursor = order.cursor(hits.get(hits.size() - 1));
+		}
+		if ( stages != null ) {
+			stages.add(watch.stop("match"));
+			watch = Explain.Stopwatch.start();
+		}
+
+		Timer.Context fetching = fetchTimer.time();
+		List<TimesheetEntry> recList = new ArrayList<>(hits.size());
+		for (ResultOrder.Hit hit : hits) {
+			recList.add(view.get(hit.id));
+		}
+		fetching.stop();
+		if ( stages != null ) {
+			stages.add(watch.stop("fetch"));
+		}
+		results.update(recList.size());
+		if ( ENTRY_LOGGER.isInfoEnabled() ) {
+			ENTRY_LOGGER.info("find: " + query + ": FOUND " + recList.size() + " records.");
+		}
+		return new Page(recList, nextCursor);
+	}
+
+	/**
+	 * Finds records whose field has the given value (case-insensitive),
+	 * optionally dated between start and end (inclusive).
+	 *
+	 * @throws UnknownFieldException if TimesheetEntry has no such field
+	 */
+	public Set<TimesheetEntry> findFieldWithValue(String field, String valueToFind, LocalDate start, LocalDate end) {
+		return new HashSet<>(find(new Query().where(field, valueToFind).between(start, end)).getEntries());
+	}
+
+	/**
+	 * Totals (count, and sum/average of hours, rounded hours, cost and
+	 * billable value) of the records matching a query, grouped by the given
+	 * dimensions: person, week, month or any TimesheetEntry field.
+	 *
+	 * Unfiltered groupings that are maintained as rollups are answered from
+	 * their running totals; anything else totals the matching records in a
+	 * parallel pass.
+	 *
+	 * @param query search terms and date bounds (sort and limit are ignored); empty for all records
+	 * @param groupBy dimensions to group by, in output order; empty for one grand total
+	 * @return one row per group, ordered by group values
+	 * @throws UnknownFieldException if a term or dimension is unknown
+	 */
+	public List<AggregateRow> aggregate(Query query, List<String> groupBy) {
+		List<Dimension> dimensions = dimensions(groupBy);
+		List<Dimension> keyOrder = dimensions;
+		Map<List<String>, Totals> groups = null;
+		if ( query.isEmpty() ) {
+			for (Rollup rollup : rollups) {
+				if ( rollup.groups(dimensions) ) {
+					groups = rollup.snapshot();
+					keyOrder = rollup.getDimensions();
+					LOGGER.debug("aggregate: " + groupBy + " from rollup");
+					break;
 				}
-				if ( start != null && recDate.before(start) ) {
-					LOGGER.info("Record date " + rec.getDate() + " is before start constraint: " + start + ". Skipping.");
-					continue;
+			}
+		}
+		if ( groups == null ) {
+			try (Versions.View view = versions.open()) {
+				int[] ids = matchingIds(query, view);
+				groups = scanPool.invoke(new GroupByTask(view, dateIndex, dimensions, ids, 0, ids.length));
+				LOGGER.debug("aggregate: " + groupBy + " of " + query + " over " + ids.length + " records");
+			}
+		}
+
+		// group values of each requested dimension, as positions in the key
+		int[] positions = new int[dimensions.size()];
+		for (int i = 0; i < positions.length; i++) {
+			String name = dimensions.get(i).getName();
+			for (int k = 0; k < keyOrder.size(); k++) {
+				if ( keyOrder.get(k).getName().equals(name) ) {
+					positions[i] = k;
 				}
-				if ( end != null && recDate.after(end) ) {
-					LOGGER.info("Record date " + rec.getDate() + " is after end constraint: " + end + ". Skipping.");
-					continue;
+			}
+		}
+		List<List<String>> keys = new ArrayList<>(groups.keySet());
+		Comparator<String> values = Comparator.nullsFirst(Comparator.naturalOrder());
+		keys.sort((a, b) -> {
+			for (int position : positions) {
+				int c = values.compare(a.get(position), b.get(position));
+				if ( c != 0 ) {
+					return c;
 				}
-				recList.add(rec);
 			}
+			return 0;
+		});
+		List<AggregateRow> rows = new ArrayList<>(keys.size());
+		for (List<String> key : keys) {
+			Map<String, String> group = new LinkedHashMap<>();
+			for (int i = 0; i < positions.length; i++) {
+				group.put(dimensions.get(i).getName(), key.get(positions[i]));
+			}
+			rows.add(new AggregateRow(group, groups.get(key)));
+		}
+		return rows;
+	}
+
+	/**
+	 * Cross-checks the indexes against the store: each index should hold
+	 * every record (the numeric and date ones, every record with a value)
+	 * and the deleted records not yet reclaimed, each rollup and the current
+	 * version should count every record, and an evenly spread sample of
+	 * records should be indexed under their current values.
+	 *
+	 * Records added or deleted during the check can show up as differences;
+	 * compare getGeneration() before and after to tell.
+	 *
+	 * @param sampleSize about how many records to look up in every index
+	 * @return the inconsistencies found; empty if there are none
+	 */
+	public List<String> checkConsistency(int sampleSize) {
+		List<String> problems = new ArrayList<>();
+		int records = store.size();
+		int indexed = records + versions.getUnreclaimed();
+		for (FieldIndex index : indexes.values()) {
+			if ( index.size() != indexed ) {
+				problems.add(index.getField().getName() + " index holds " + index.size() + " of " + indexed + " records");
+			}
+		}
+		for (NumericIndex index : numericIndexes.values()) {
+			if ( index.size() > indexed ) {
+				problems.add(index.getField().getName() + " range index holds " + index.size() + " of " + indexed + " records");
+			}
+		}
+		if ( dateIndex.size() > indexed ) {
+			problems.add("date index holds " + dateIndex.size() + " of " + indexed + " records");
+		}
+		for (Rollup rollup : rollups) {
+			// both as of the same epoch
+			long[] counts = versions.atomically(() -> new long[] { rollup.count(), versions.size() });
+			if ( counts[0] != counts[1] ) {
+				problems.add("rollup " + rollup + " counts " + counts[0] + " of " + counts[1] + " records");
+			}
+		}
+		try (Versions.View view = versions.open()) {
+			if ( view.size() != records ) {
+				problems.add("current version holds " + view.size() + " of " + records + " records");
+			}
+		}
+
+		int stride = Math.max(1, records / Math.max(1, sampleSize));
+		IdCollector sample = new IdCollector(sampleSize);
+		int[] seen = new int[1];
+		store.forEachId(id -> {
+			if ( seen[0]++ % stride == 0 ) {
+				sample.accept(id);
+			}
+		});
+		for (int id : sample.toArray()) {
+			TimesheetEntry rec = store.get(id);
+			if ( rec == null ) {
+				continue;  // deleted meanwhile
+			}
+			for (FieldIndex index : indexes.values()) {
+				if ( !index.lookup(index.getField().getString(rec)).contains(id) ) {
+					problems.add("record " + id + " missing from " + index.getField().getName() + " index");
+				}
+			}
+			for (NumericIndex index : numericIndexes.values()) {
+				double value = index.getField().getDouble(rec);
+				if ( !Double.isNaN(value) && !index.test(id, NumericRange.between(value, value)) ) {
+					problems.add("record " + id + " missing from " + index.getField().getName() + " range index");
+				}
+			}
+			if ( !Objects.equals(DateIndex.parse(rec.getDate()), dateIndex.dayOf(id)) ) {
+				problems.add("record " + id + " has the wrong date in the date index");
+			}
+		}
+		return problems;
+	}
+
+	private static List<Dimension> dimensions(List<String> names) {
+		List<Dimension> dimensions = new ArrayList<>(names.size());
+		for (String name : names) {
+			if ( !name.trim().isEmpty() ) {
+				dimensions.add(Dimension.of(name));
+			}
+		}
+		return dimensions;
+	}
+
+	// ids of the records matching a query; of every record if it's empty
+	private int[] matchingIds(Query query, Versions.View view) {
+		IdCollector ids = new IdCollector(view.size());
+		if ( query.isEmpty() ) {
+			view.forEachId(ids);
+		} else {
+			plan(query, view).forEachMatch(ids);
+		}
+		return ids.toArray();
+	}
+
+	QueryPlan plan(Query query, Versions.View view) {
+		List<QueryPredicate> predicates = new ArrayList<>();
+		for (Map.Entry<String, String> term : query.getTerms().entrySet()) {
+			FieldIndex index = indexes.get(term.getKey());
+			if ( index != null ) {
+				// Equality lookups on indexed fields only touch the matching records
+				predicates.add(new QueryPredicate.Term(index, term.getValue()));
+			} else {
+				// anything else has to check every record
+				predicates.add(new QueryPredicate.Scan(view, EntryField.forName(term.getKey()), term.getValue()));
+			}
+		}
+		for (Map.Entry<String, NumericRange> range : query.getRanges().entrySet()) {
+			EntryField field = EntryField.forName(range.getKey());
+			NumericIndex index = numericIndexes.get(field.getName());
+			if ( index == null ) {
+				throw new IllegalArgumentException(field + " isn't numeric; it can't be searched by range");
+			}
+			predicates.add(new QueryPredicate.Range(index, range.getValue()));
+		}
+		for (Map.Entry<String, TextMatch> match : query.getMatches().entrySet()) {
+			EntryField field = EntryField.forName(match.getKey());
+			NGramIndex index = ngramIndexes.get(field.getName());
+			if ( index == null ) {
+				throw new IllegalArgumentException(field + " can't be searched by pattern; only "
+						+ String.join(", ", TEXT_TERMS) + " can");
+			}
+			predicates.add(new QueryPredicate.Text(index, match.getValue(), view));
+		}
+		if ( query.hasDateBounds() ) {
+			predicates.add(new QueryPredicate.DateRange(dateIndex,
+					DateIndex.lowerBound(query.getStart()), DateIndex.upperBound(query.getEnd())));
 		}
-		LOGGER.info("findFieldWithValue(" + field + ", " + valueToFind +"): FOUND " + recList.size() + " records.\n");
-		return recList;
+		return QueryPlan.of(predicates, view, scanPool);
 	}
 }
@@ -0,0 +1,190 @@
+package timely.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+import timely.core.EntryField;
+import timely.core.UnknownFieldException;
+
+/**
+ * Sort order of search results, and the keyset cursors that page through it.
+ *
+ * Records are ordered by sort key, then id. A cursor holds the key and id of
+ * the last record of a page; the next page is the records ordered after it.
+ * Since cursors don't count positions, records imported or deleted between
+ * requests don't shift or repeat the records of later pages.
+ *
+ * Only one page is ever sorted: matches are streamed through a bounded heap
+ * keeping the first limit + 1 (the extra one tells whether there's more).
+ */
+class ResultOrder {
+	private static final Base64.Encoder CURSOR_ENCODER = Base64.getUrlEncoder().withoutPadding();
+	private static final Base64.Decoder CURSOR_DECODER = Base64.getUrlDecoder();
+
+	private enum KeyKind { ID, DATE, TEXT, NUMBER }
+
+	private final String spec;
+	private final KeyKind kind;
+	private final EntryField field;
+	private final Versions.View view;
+	private final DateIndex dateIndex;
+	private final Comparator<Hit> comparator;
+
+	/**
+	 * A matching record and its sort key.
+	 */
+	static final class Hit {
+		final int id;
+		final Comparable<Object> key;
+
+		Hit(int id, Comparable<Object> key) {
+			this.id = id;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * @throws UnknownFieldException if the query sorts on a field TimesheetEntry doesn't have
+	 */
+	ResultOrder(Query query, Versions.View view, DateIndex dateIndex) {
+		this.view = view;
+		this.dateIndex = dateIndex;
+		if ( query.getSortField() == null ) {
+			field = null;
+			kind = KeyKind.ID;
+		} else {
+			field = EntryField.forName(query.getSortField());
+			if ( field.getName().equals("date") ) {
+				kind = KeyKind.DATE;
+			} else if ( field.isNumeric() ) {
+				kind = KeyKind.NUMBER;
+			} else {
+				kind = KeyKind.TEXT;
+			}
+		}
+		spec = field == null ? "" : (query.isDescending() ? "-" : "") + field.getName();
+
+		Comparator<Hit> byKey = (a, b) -> a.key.compareTo(b.key);
+		if ( query.isDescending() ) {
+			byKey = byKey.reversed();
+		}
+		comparator = byKey.thenComparingInt(hit -> hit.id);
+	}
+
+	/**
+	 * @param plan plan producing the matching records, in any order
+	 * @param limit page size; 0 for all
+	 * @param cursor cursor of the previous page; null for the first
+	 * @return the page's hits, in order; one more than limit if there are further pages
+	 * @throws IllegalArgumentException if the cursor is invalid, or for another sort order
+	 */
+	List<Hit> select(QueryPlan plan, int limit, String cursor) {
+		Hit after = cursor == null ? null : decode(cursor);
+		if ( limit == 0 ) {
+			// everything after the cursor: just sort it all
+			List<Hit> all = new ArrayList<>();
+			plan.forEachMatch(id -> {
+				Hit hit = new Hit(id, key(id));
+				if ( after == null || comparator.compare(hit, after) > 0 ) {
+					all.add(hit);
+				}
+			});
+			Collections.sort(all, comparator);
+			return all;
+		}
+		// no more than Integer.MAX_VALUE records can match, so that many leaves none over
+		int keep = limit == Integer.MAX_VALUE ? limit : limit + 1;
+
+		// max-heap of the best `keep` hits so far: its head is the one to evict
+		PriorityQueue<Hit> best = new PriorityQueue<>(Math.min(keep, 1024), comparator.reversed());
+		plan.forEachMatch(id -> {
+			Hit hit = new Hit(id, key(id));
+			if ( after != null && comparator.compare(hit, after) <= 0 ) {
+				return;
+			}
+			if ( best.size() < keep ) {
+				best.add(hit);
+			} else if ( comparator.compare(hit, best.peek()) < 0 ) {
+				best.poll();
+				best.add(hit);
+			}
+		});
+
+		List<Hit> page = new ArrayList<>(best);
+		Collections.sort(page, comparator);
+		return page;
+	}
+
+	String cursor(Hit last) {
+		String key = last.key.toString();
+		String raw = spec + "\n" + last.id + "\n" + key;
+		return CURSOR_ENCODER.encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Hit decode(String cursor) {
+		String[] parts;
+		try {
+			parts = new String(CURSOR_DECODER.decode(cursor), StandardCharsets.UTF_8).split("\n", 3);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid cursor");
+		}
+		if ( parts.length != 3 || !parts[0].equals(spec) ) {
+			throw new IllegalArgumentException("Invalid cursor for sort order '" + spec + "'");
+		}
+		try {
+			return new Hit(Integer.parseInt(parts[1]), parseKey(parts[2]));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid cursor");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Comparable<Object> key(int id) {
+		Comparable<?> key;
+		switch (kind) {
+		case DATE:
+			int day = dateIndex.day(id);
+			// undated records sort first
+			key = day == DateIndex.NO_DAY ? Long.MIN_VALUE : (long) day;
+			break;
+		case NUMBER:
+			Object value = view.getValue(id, field);
+			key = value == null ? Double.NEGATIVE_INFINITY : ((Number) value).doubleValue();
+			break;
+		case TEXT:
+			Object text = view.getValue(id, field);
+			key = text == null ? "" : ((String) text).toLowerCase(Locale.ROOT);
+			break;
+		case ID:
+		default:
+			key = (long) id;
+			break;
+		}
+		return (Comparable<Object>) key;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Comparable<Object> parseKey(String key) {
+		Comparable<?> parsed;
+		switch (kind) {
+		case NUMBER:
+			parsed = Double.parseDouble(key);
+			break;
+		case TEXT:
+			parsed = key;
+			break;
+		case DATE:
+		case ID:
+		default:
+			parsed = Long.parseLong(key);
+			break;
+		}
+		return (Comparable<Object>) parsed;
+	}
+}
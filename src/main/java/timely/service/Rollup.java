@@ -0,0 +1,211 @@
+package timely.service;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import timely.core.Totals;
+import timely.core.TimesheetEntry;
+
+/**
+ * Totals grouped by a fixed set of dimensions, kept up to date as records
+ * are added and deleted, so aggregations over that grouping are answered
+ * without touching any records.
+ *
+ * Records are counted in as they're published and out as they're deleted,
+ * under the Versions lock, with the epoch that published or deleted them.
+ * A group's totals change copy-on-write: the first change in an epoch
+ * starts a new version of them, and later ones in that epoch add to it.
+ * Snapshots are read without the lock, as of the latest epoch fully
+ * counted, and older versions are kept while a snapshot may read them.
+ */
+class Rollup {
+	private final List<Dimension> dimensions;
+	// dimension names, for matching requests in any order
+	private final Set<String> names = new TreeSet<>();
+	// group values (in dimension order) -> latest version of that group's totals
+	private final ConcurrentMap<List<String>, Version> groups = new ConcurrentHashMap<>();
+	// latest epoch whose changes are all counted
+	private volatile int counted;
+	// epoch -> number of snapshots being read as of it
+	private final ConcurrentMap<Integer, Integer> readers = new ConcurrentHashMap<>();
+	// epoch being counted, and the oldest any snapshot read as of when it began; guarded by the Versions lock
+	private int counting;
+	private int oldestRead;
+	// versions that emptied their group, to drop once no snapshot reads older ones; guarded by the Versions lock
+	private final Queue<Map.Entry<List<String>, Version>> emptied = new ArrayDeque<>();
+
+	/**
+	 * A group's totals as of an epoch (and until its next version).
+	 */
+	private static final class Version {
+		final int epoch;
+		final Totals totals;
+		// the version before, while a snapshot may read it
+		volatile Version older;
+
+		Version(int epoch, Totals totals, Version older) {
+			this.epoch = epoch;
+			this.totals = totals;
+			this.older = older;
+		}
+
+		// Drops the versions no snapshot reads as of oldest or later would
+		void trim(int oldest) {
+			Version version = this;
+			while ( version.epoch > oldest && version.older != null ) {
+				version = version.older;
+			}
+			version.older = null;
+		}
+	}
+
+	Rollup(List<Dimension> dimensions) {
+		this.dimensions = dimensions;
+		for (Dimension dimension : dimensions) {
+			names.add(dimension.getName());
+		}
+	}
+
+	/**
+	 * @return true if this rollup groups by exactly the given dimensions (in any order)
+	 */
+	boolean groups(List<Dimension> requested) {
+		Set<String> requestedNames = new TreeSet<>();
+		for (Dimension dimension : requested) {
+			requestedNames.add(dimension.getName());
+		}
+		return names.equals(requestedNames);
+	}
+
+	List<Dimension> getDimensions() {
+		return dimensions;
+	}
+
+	/**
+	 * Counts a record in (sign 1) or out of (sign -1) its group, as of the
+	 * given epoch; call counted(epoch) once all its records are counted.
+	 */
+	void add(TimesheetEntry rec, Integer day, int sign, int epoch) {
+		if ( epoch != counting ) {
+			counting = epoch;
+			oldestRead = oldestRead();
+		}
+		List<String> key = key(dimensions, rec, day);
+		Version latest = groups.get(key);
+		if ( latest == null || latest.epoch != epoch ) {
+			Totals totals;
+			if ( latest == null ) {
+				totals = new Totals();
+			} else {
+				totals = latest.totals.copy();
+				latest.trim(oldestRead);
+			}
+			latest = new Version(epoch, totals, latest);
+			groups.put(key, latest);
+		}
+		latest.totals.add(rec, sign);
+		if ( latest.totals.getCount() == 0 ) {
+			emptied.add(new SimpleImmutableEntry<>(key, latest));
+		}
+	}
+
+	/**
+	 * Makes the totals as of an epoch (every record counted in it) the
+	 * ones snapshots read.
+	 */
+	void counted(int epoch) {
+		counted = epoch;
+		// groups that emptied before the oldest snapshot being read are empty in all of them
+		Map.Entry<List<String>, Version> group;
+		while ( (group = emptied.peek()) != null && group.getValue().epoch <= oldestRead ) {
+			emptied.remove();
+			if ( group.getValue().totals.getCount() == 0 ) {
+				groups.remove(group.getKey(), group.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @return number of records counted, over all groups; call under the Versions lock
+	 */
+	long count() {
+		long count = 0;
+		for (Version latest : groups.values()) {
+			count += latest.totals.getCount();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the totals of every group as of the latest epoch counted.
+	 *         They don't change after.
+	 */
+	Map<List<String>, Totals> snapshot() {
+		int epoch;
+		while ( true ) {
+			epoch = counted;
+			readers.merge(epoch, 1, Integer::sum);
+			// had an epoch been counted meanwhile, its versions may have been
+			// trimmed without regard to this snapshot: read as of the newer one
+			if ( counted == epoch ) {
+				break;
+			}
+			release(epoch);
+		}
+		try {
+			Map<List<String>, Totals> snapshot = new HashMap<>();
+			for (Map.Entry<List<String>, Version> group : groups.entrySet()) {
+				Version version = group.getValue();
+				while ( version != null && version.epoch > epoch ) {
+					version = version.older;
+				}
+				if ( version != null && version.totals.getCount() != 0 ) {
+					snapshot.put(group.getKey(), version.totals);
+				}
+			}
+			return snapshot;
+		} finally {
+			release(epoch);
+		}
+	}
+
+	// The oldest epoch a snapshot is read as of, or the latest counted if none is being read
+	private int oldestRead() {
+		// read the epoch before the readers: a snapshot begun in between reads as of this epoch or a later one
+		int oldest = counted;
+		for (Integer epoch : readers.keySet()) {
+			oldest = Math.min(oldest, epoch);
+		}
+		return oldest;
+	}
+
+	private void release(int epoch) {
+		readers.computeIfPresent(epoch, (e, snapshots) -> snapshots == 1 ? null : snapshots - 1);
+	}
+
+	static List<String> key(List<Dimension> dimensions, TimesheetEntry rec, Integer day) {
+		List<String> key = new ArrayList<>(dimensions.size());
+		for (Dimension dimension : dimensions) {
+			key.add(dimension.valueOf(rec, day));
+		}
+		return key;
+	}
+
+	@Override
+	public String toString() {
+		List<String> dimensionNames = new ArrayList<>(dimensions.size());
+		for (Dimension dimension : dimensions) {
+			dimensionNames.add(dimension.getName());
+		}
+		return String.join(",", dimensionNames);
+	}
+}
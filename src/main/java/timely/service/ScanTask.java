@@ -0,0 +1,94 @@
+package timely.service;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel scan of a query plan: the view's id range is split in halves
+ * until a partition is small enough to scan directly, and each partition
+ * checks every one of its records against all the plan's steps. The
+ * partitions' matches are concatenated back up, in id order.
+ *
+ * When counts is non-null, each partition adds what each step took in and
+ * let through to it, as a traced plan's forEachMatch would.
+ */
+class ScanTask extends RecursiveTask<int[]> {
+	private static final long serialVersionUID = 1L;
+	// Ids scanned by one task without splitting further
+	static final int PARTITION_SIZE = 65536;
+
+	private final Versions.View view;
+	private final List<QueryPredicate> steps;
+	private final Counts counts;
+	private final int from;
+	private final int to;
+
+	/**
+	 * Records taken in and let through by each step, summed over partitions.
+	 */
+	static final class Counts {
+		final long[] in;
+		final long[] out;
+		int partitions;
+
+		Counts(int steps) {
+			in = new long[steps];
+			out = new long[steps];
+		}
+	}
+
+	ScanTask(Versions.View view, List<QueryPredicate> steps, Counts counts, int from, int to) {
+		this.view = view;
+		this.steps = steps;
+		this.counts = counts;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected int[] compute() {
+		if ( to - from <= PARTITION_SIZE ) {
+			return scan();
+		}
+		int mid = (from + to) >>> 1;
+		ScanTask left = new ScanTask(view, steps, counts, from, mid);
+		ScanTask right = new ScanTask(view, steps, counts, mid, to);
+		left.fork();
+		int[] rightIds = right.compute();
+		int[] leftIds = left.join();
+		int[] ids = new int[leftIds.length + rightIds.length];
+		System.arraycopy(leftIds, 0, ids, 0, leftIds.length);
+		System.arraycopy(rightIds, 0, ids, leftIds.length, rightIds.length);
+		return ids;
+	}
+
+	private int[] scan() {
+		int checks = steps.size();
+		long[] in = new long[checks];
+		long[] out = new long[checks];
+		IdCollector matches = new IdCollector(0);
+		view.forEachId(from, to, id -> {
+			boolean matched = true;
+			for (int i = 0; i < checks && matched; i++) {
+				in[i]++;
+				matched = steps.get(i).test(id);
+				if ( matched ) {
+					out[i]++;
+				}
+			}
+			if ( matched ) {
+				matches.accept(id);
+			}
+		});
+		if ( counts != null ) {
+			synchronized (counts) {
+				for (int i = 0; i < checks; i++) {
+					counts.in[i] += in[i];
+					counts.out[i] += out[i];
+				}
+				counts.partitions++;
+			}
+		}
+		return matches.toArray();
+	}
+}
@@ -0,0 +1,164 @@
+package timely.service;
+
+import java.util.Locale;
+
+/**
+ * A pattern for searching text fields, case-insensitively. Written in
+ * queries as an operator and the text:
+ *   prefix:Mc (starts with), contains:migration (anywhere in the value),
+ *   fuzzy:Smyth (anywhere, allowing for typos)
+ * A value that would read as a pattern is searched for literally when
+ * escaped with a leading backslash: \prefix:Mc matches just "prefix:Mc".
+ *
+ * A fuzzy pattern matches values holding some stretch of text within a few
+ * edits (a character inserted, deleted or replaced, or two adjacent ones
+ * swapped) of it: none for patterns of under 3 characters, 1 for under 8,
+ * otherwise 2.
+ */
+public final class TextMatch {
+	private static final char ESCAPE = '\\';
+
+	enum Kind {
+		PREFIX, CONTAINS, FUZZY
+	}
+
+	private final Kind kind;
+	// lower-cased
+	private final String text;
+	private final int maxEdits;
+
+	private TextMatch(Kind kind, String text) {
+		this.kind = kind;
+		this.text = text.toLowerCase(Locale.ROOT);
+		this.maxEdits = kind != Kind.FUZZY || text.length() < 3 ? 0 : text.length() < 8 ? 1 : 2;
+	}
+
+	public static TextMatch prefix(String text) {
+		return new TextMatch(Kind.PREFIX, text);
+	}
+
+	public static TextMatch contains(String text) {
+		return new TextMatch(Kind.CONTAINS, text);
+	}
+
+	public static TextMatch fuzzy(String text) {
+		return new TextMatch(Kind.FUZZY, text);
+	}
+
+	/**
+	 * @return true if spec starts with one of the operators; see class comment
+	 */
+	public static boolean isPattern(String spec) {
+		return kindOf(spec) != null;
+	}
+
+	/**
+	 * @return spec as a literal value, without its escape if it has one
+	 */
+	public static String literal(String spec) {
+		return !spec.isEmpty() && spec.charAt(0) == ESCAPE ? spec.substring(1) : spec;
+	}
+
+	/**
+	 * @param spec e.g. prefix:Mc; see class comment
+	 * @throws IllegalArgumentException if spec isn't a pattern
+	 */
+	public static TextMatch parse(String spec) {
+		Kind kind = kindOf(spec);
+		if ( kind == null ) {
+			throw new IllegalArgumentException("Invalid pattern '" + spec
+					+ "'; expected prefix:, contains: or fuzzy: and some text");
+		}
+		return new TextMatch(kind, spec.substring(spec.indexOf(':') + 1));
+	}
+
+	private static Kind kindOf(String spec) {
+		int colon = spec.indexOf(':');
+		if ( colon < 0 ) {
+			return null;
+		}
+		switch (spec.substring(0, colon).trim().toLowerCase(Locale.ROOT)) {
+		case "prefix":
+			return Kind.PREFIX;
+		case "contains":
+			return Kind.CONTAINS;
+		case "fuzzy":
+			return Kind.FUZZY;
+		default:
+			return null;
+		}
+	}
+
+	Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the text to match, lower-cased
+	 */
+	String getText() {
+		return text;
+	}
+
+	/**
+	 * @return edits allowed: 0 unless fuzzy
+	 */
+	int getMaxEdits() {
+		return maxEdits;
+	}
+
+	/**
+	 * @param value a field value, lower-cased
+	 */
+	boolean matches(String value) {
+		switch (kind) {
+		case PREFIX:
+			return value.startsWith(text);
+		case CONTAINS:
+			return value.contains(text);
+		case FUZZY:
+		default:
+			return maxEdits == 0 ? value.contains(text) : withinEdits(value);
+		}
+	}
+
+	// True if some substring of value is at most maxEdits edits from text,
+	// counting a swap of adjacent characters as one edit (Sellers' algorithm:
+	// edit distance with the start and end of the substring free)
+	private boolean withinEdits(String value) {
+		int m = text.length();
+		// distances of text[0, i) from the best substring of value ending at
+		// the current character, the one before, and the one before that
+		int[] distance = new int[m + 1];
+		int[] previous = new int[m + 1];
+		int[] older = new int[m + 1];
+		for (int i = 0; i <= m; i++) {
+			distance[i] = i;
+		}
+		for (int j = 0; j < value.length(); j++) {
+			int[] rotated = older;
+			older = previous;
+			previous = distance;
+			distance = rotated;
+			char c = value.charAt(j);
+			distance[0] = 0;  // a match may start anywhere
+			for (int i = 1; i <= m; i++) {
+				int d = Math.min(Math.min(distance[i - 1], previous[i]) + 1,
+						previous[i - 1] + (text.charAt(i - 1) == c ? 0 : 1));
+				if ( i > 1 && j > 0 && text.charAt(i - 1) == value.charAt(j - 1) && text.charAt(i - 2) == c ) {
+					d = Math.min(d, older[i - 2] + 1);
+				}
+				distance[i] = d;
+			}
+			if ( distance[m] <= maxEdits ) {
+				return true;
+			}
+		}
+		return m <= maxEdits;
+	}
+
+	@Override
+	public String toString() {
+		return kind.name().toLowerCase(Locale.ROOT) + ":" + text;
+	}
+}
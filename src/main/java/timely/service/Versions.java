@@ -0,0 +1,599 @@
+package timely.service;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+import timely.store.RecordStore;
+
+/**
+ * Epochs of the records, so that each search sees one consistent version
+ * of them however many writers are busy meanwhile.
+ *
+ * Writers store and index records first; the records stay invisible until
+ * published. publish() tags a whole batch with the next epoch and then
+ * advances the current epoch past it, so readers see all of a batch or none
+ * of it. A search opens a View, which pins the current epoch: it sees the
+ * records published up to then and not yet deleted.
+ *
+ * Deleted records leave the store at once (so they can't be found, fetched
+ * by id or re-deleted) but are kept aside, still indexed, while a view from
+ * before the delete is open; they're unindexed once the last such view
+ * closes. Readers never wait for writers, nor writers for readers; writers
+ * only take a short lock to publish. Whatever a writer runs under that lock
+ * (e.g. journaling the change) sees the changes in epoch order.
+ *
+ * Every record published and every delete is also appended to a log of
+ * changes, numbered in sequence; a view sees the changes made up to its
+ * epoch. So the log doesn't grow without bound, it's compacted whenever it
+ * doubles: adds of records since deleted go (no later view would show
+ * them), as do deletes more than changeRetention changes old. Compaction
+ * writes a new log; open views keep reading the one they started with.
+ *
+ * Epochs are ints, bumped once per published batch or delete.
+ */
+class Versions {
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	// Fewest log entries worth compacting
+	private static final int MIN_COMPACTION = 1024;
+
+	/**
+	 * A deleted record that some open view may still see.
+	 */
+	private static final class Deleted {
+		final int id;
+		final TimesheetEntry rec;
+		final int epoch;
+
+		Deleted(int id, TimesheetEntry rec, int epoch) {
+			this.id = id;
+			this.rec = rec;
+			this.epoch = epoch;
+		}
+	}
+
+	/**
+	 * An epoch, the number of records visible in it, the sequence number of
+	 * the latest change made up to it, and the log entries holding them.
+	 */
+	private static final class Epoch {
+		final int number;
+		final int records;
+		final long sequence;
+		final ChangeLog log;
+		final int entries;
+
+		Epoch(int number, int records, long sequence, ChangeLog log, int entries) {
+			this.number = number;
+			this.records = records;
+			this.sequence = sequence;
+			this.log = log;
+			this.entries = entries;
+		}
+	}
+
+	/**
+	 * Changes in sequence order: each one's sequence number, and the id
+	 * added or ~id deleted. Appended under the lock, past the entries any
+	 * epoch holds, and read without one.
+	 */
+	private static final class ChangeLog {
+		final long[] sequences;
+		final int[] changes;
+		// deletes numbered up to floor may have been compacted away
+		final long floor;
+
+		ChangeLog(int capacity, long floor) {
+			this.sequences = new long[capacity];
+			this.changes = new int[capacity];
+			this.floor = floor;
+		}
+
+		// index of the first entry numbered after sequence, of the first entries
+		int after(long sequence, int entries) {
+			int lo = 0;
+			int hi = entries;
+			while ( lo < hi ) {
+				int mid = (lo + hi) >>> 1;
+				if ( sequences[mid] <= sequence ) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+	}
+
+	private final RecordStore store;
+	// unindexes a deleted record once no view can see it
+	private final ObjIntConsumer<TimesheetEntry> reclaimer;
+
+	// id -> epoch it was published in, 0 if it hasn't been; in chunks, written under this
+	private volatile int[][] published = new int[0][];
+	// id -> epoch it was deleted in, 0 if it hasn't been; in chunks, written under this
+	private volatile int[][] deleted = new int[0][];
+	private volatile Epoch current = new Epoch(0, 0, 0, new ChangeLog(64, 0), 0);
+	// log entries left by the last compaction; guarded by this
+	private int compacted;
+	// deletes kept in the log, in changes
+	private volatile long changeRetention = Long.MAX_VALUE;
+
+	// epoch -> number of views open on it
+	private final ConcurrentMap<Integer, Integer> readers = new ConcurrentHashMap<>();
+	// deleted records by id, until reclaimed
+	private final ConcurrentMap<Integer, TimesheetEntry> graveyard = new ConcurrentHashMap<>();
+	// the same, in order of deletion; guarded by this
+	private final Queue<Deleted> unreclaimed = new ArrayDeque<>();
+
+	Versions(RecordStore store, ObjIntConsumer<TimesheetEntry> reclaimer) {
+		this.store = store;
+		this.reclaimer = reclaimer;
+	}
+
+	/**
+	 * @return the current epoch
+	 */
+	int getEpoch() {
+		return current.number;
+	}
+
+	/**
+	 * @return sequence number of the latest change
+	 */
+	long getSequence() {
+		return current.sequence;
+	}
+
+	/**
+	 * @return sequence number up to which deletes may have been dropped from the log
+	 */
+	long getFloor() {
+		return current.log.floor;
+	}
+
+	/**
+	 * @return number of log entries kept
+	 */
+	int getLogSize() {
+		return current.entries;
+	}
+
+	/**
+	 * @param changeRetention how many of the latest changes to keep deletes
+	 *        for; feeds more than that far behind have to start over
+	 */
+	void setChangeRetention(long changeRetention) {
+		this.changeRetention = changeRetention;
+	}
+
+	/**
+	 * @return deleted records still indexed because a view may see them
+	 */
+	int getUnreclaimed() {
+		return graveyard.size();
+	}
+
+	/**
+	 * @return number of views open
+	 */
+	int getReaders() {
+		int open = 0;
+		for (int views : readers.values()) {
+			open += views;
+		}
+		return open;
+	}
+
+	/**
+	 * Makes stored and indexed records visible to views opened from now on,
+	 * all at once.
+	 *
+	 * @param ids ids of the records; ids[from, to) are published
+	 */
+	void publish(int[] ids, int from, int to) {
+		publish(ids, from, to, () -> {});
+	}
+
+	/**
+	 * Publishes records as publish(ids, from, to) does, and runs then under
+	 * the same lock: after them, before any later publish or delete.
+	 */
+	void publish(int[] ids, int from, int to, Runnable then) {
+		publish(ids, from, to, 0, then);
+	}
+
+	/**
+	 * Publishes records as publish(ids, from, to, then) does, numbering
+	 * their adds from firstSequence on (e.g. as they were numbered before a
+	 * restart), or from the next sequence number if that's higher.
+	 */
+	void publish(int[] ids, int from, int to, long firstSequence, Runnable then) {
+		if ( from == to ) {
+			return;
+		}
+		synchronized (this) {
+			int epoch = current.number + 1;
+			int records = current.records;
+			long sequence = Math.max(current.sequence, firstSequence - 1);
+			ChangeLog log = grown(current.log, current.entries + to - from);
+			int entries = current.entries;
+			for (int i = from; i < to; i++) {
+				int id = ids[i];
+				published = grown(published, id);
+				set(published, id, epoch);
+				if ( get(deleted, id) == 0 ) {
+					records++;
+				}
+				log.sequences[entries] = ++sequence;
+				log.changes[entries++] = id;
+			}
+			current = compactIfDue(new Epoch(epoch, records, sequence, log, entries));
+			then.run();
+		}
+		reclaim();
+	}
+
+	/**
+	 * Removes a record from the store, hiding it from views opened from now
+	 * on. Views opened earlier still see it, so it stays indexed until they
+	 * close.
+	 *
+	 * @return the record removed, or null if there is none with that id
+	 */
+	TimesheetEntry delete(int id) {
+		return delete(id, rec -> {});
+	}
+
+	/**
+	 * Deletes a record as delete(id) does, and passes it to then under the
+	 * same lock: after it, before any later publish or delete.
+	 *
+	 * @return the record removed, or null if there is none with that id
+	 */
+	TimesheetEntry delete(int id, Consumer<TimesheetEntry> then) {
+		return delete(id, 0, then);
+	}
+
+	/**
+	 * Deletes a record as delete(id, then) does, numbering the delete
+	 * sequence (e.g. as it was numbered before a restart), or the next
+	 * sequence number if that's higher.
+	 *
+	 * @return the record removed, or null if there is none with that id
+	 */
+	TimesheetEntry delete(int id, long sequence, Consumer<TimesheetEntry> then) {
+		TimesheetEntry rec = store.get(id);
+		// set aside before it leaves the store, so earlier views can always
+		// read it; only one of several concurrent deletes gets to do so
+		if ( rec == null || graveyard.putIfAbsent(id, rec) != null ) {
+			return null;
+		}
+		if ( store.remove(id) == null ) {
+			// deleted and reclaimed since we read it
+			graveyard.remove(id, rec);
+			return null;
+		}
+		synchronized (this) {
+			int epoch = current.number + 1;
+			deleted = grown(deleted, id);
+			set(deleted, id, epoch);
+			unreclaimed.add(new Deleted(id, rec, epoch));
+			long numbered = Math.max(current.sequence + 1, sequence);
+			ChangeLog log = grown(current.log, current.entries + 1);
+			log.sequences[current.entries] = numbered;
+			log.changes[current.entries] = ~id;
+			current = compactIfDue(new Epoch(epoch, current.records - (get(published, id) != 0 ? 1 : 0), numbered,
+					log, current.entries + 1));
+			then.accept(rec);
+		}
+		reclaim();
+		return rec;
+	}
+
+	/**
+	 * Runs read under the lock publishes and deletes take, so whatever they
+	 * ran under it (see publish and delete) is seen as of the current epoch.
+	 *
+	 * @return what read returned
+	 */
+	synchronized <T> T atomically(Supplier<T> read) {
+		return read.get();
+	}
+
+	/**
+	 * @return number of records visible in the current epoch
+	 */
+	int size() {
+		return current.records;
+	}
+
+	/**
+	 * Logs the delete of a record that isn't here (e.g. one restored from a
+	 * snapshot, whose add is long gone), so feeds still list it.
+	 */
+	synchronized void logDelete(int id, long sequence) {
+		long numbered = Math.max(current.sequence + 1, sequence);
+		ChangeLog log = grown(current.log, current.entries + 1);
+		log.sequences[current.entries] = numbered;
+		log.changes[current.entries] = ~id;
+		current = new Epoch(current.number, current.records, numbered, log, current.entries + 1);
+	}
+
+	/**
+	 * Carries on the numbering of changes from before a restart.
+	 *
+	 * @param sequence the latest sequence number given out
+	 * @param floor sequence number up to which deletes were dropped from the log
+	 */
+	synchronized void restoreSequence(long sequence, long floor) {
+		ChangeLog log = current.log;
+		if ( floor > log.floor ) {
+			ChangeLog raised = new ChangeLog(log.changes.length, floor);
+			System.arraycopy(log.sequences, 0, raised.sequences, 0, current.entries);
+			System.arraycopy(log.changes, 0, raised.changes, 0, current.entries);
+			log = raised;
+		}
+		current = new Epoch(current.number, current.records, Math.max(current.sequence, sequence), log, current.entries);
+	}
+
+	/**
+	 * @return a view of the records as of the current epoch; close it when done
+	 */
+	View open() {
+		while ( true ) {
+			Epoch epoch = current;
+			readers.merge(epoch.number, 1, Integer::sum);
+			// had a writer published meanwhile, reclaim() may have missed
+			// this view and dropped records it should see: take the newer epoch
+			if ( current == epoch ) {
+				return new View(epoch);
+			}
+			release(epoch.number);
+		}
+	}
+
+	/**
+	 * @return true if the record is visible in the current epoch
+	 */
+	boolean isVisible(int id) {
+		return isVisible(id, current.number);
+	}
+
+	private boolean isVisible(int id, int epoch) {
+		int publishedIn = get(published, id);
+		if ( publishedIn == 0 || publishedIn > epoch ) {
+			return false;
+		}
+		int deletedIn = get(deleted, id);
+		return deletedIn == 0 || deletedIn > epoch;
+	}
+
+	private void release(int epoch) {
+		readers.computeIfPresent(epoch, (e, views) -> views == 1 ? null : views - 1);
+	}
+
+	// Unindexes the deleted records no open view can see
+	private void reclaim() {
+		if ( graveyard.isEmpty() ) {
+			return;
+		}
+		// read the epoch before the views: a view opened in between is on this epoch or a later one
+		int oldest = current.number;
+		for (Integer epoch : readers.keySet()) {
+			oldest = Math.min(oldest, epoch);
+		}
+		while ( true ) {
+			Deleted gone;
+			synchronized (this) {
+				gone = unreclaimed.peek();
+				if ( gone == null || gone.epoch > oldest ) {
+					return;
+				}
+				unreclaimed.remove();
+			}
+			reclaimer.accept(gone.rec, gone.id);
+			graveyard.remove(gone.id);
+		}
+	}
+
+	// The log, or a copy with room for the given number of entries; callers hold the lock
+	private ChangeLog grown(ChangeLog log, int entries) {
+		if ( entries <= log.changes.length ) {
+			return log;
+		}
+		ChangeLog grown = new ChangeLog(Math.max(entries, log.changes.length * 2), log.floor);
+		System.arraycopy(log.sequences, 0, grown.sequences, 0, current.entries);
+		System.arraycopy(log.changes, 0, grown.changes, 0, current.entries);
+		return grown;
+	}
+
+	// The epoch, with its log compacted if it's doubled since the last
+	// compaction; callers hold the lock
+	private Epoch compactIfDue(Epoch epoch) {
+		if ( epoch.entries < Math.max(MIN_COMPACTION, 2 * compacted) ) {
+			return epoch;
+		}
+		ChangeLog log = epoch.log;
+		long floor = Math.max(log.floor, epoch.sequence - changeRetention);
+		ChangeLog kept = new ChangeLog(Math.max(64, epoch.entries), floor);
+		int entries = 0;
+		for (int i = 0; i < epoch.entries; i++) {
+			int change = log.changes[i];
+			// adds of deleted records, and old deletes, are never read again
+			if ( change >= 0 ? get(deleted, change) == 0 : log.sequences[i] > floor ) {
+				kept.sequences[entries] = log.sequences[i];
+				kept.changes[entries++] = change;
+			}
+		}
+		compacted = entries;
+		return new Epoch(epoch.number, epoch.records, epoch.sequence, kept, entries);
+	}
+
+	private static int get(int[][] chunks, int index) {
+		int chunk = index >>> CHUNK_BITS;
+		return index < 0 || chunk >= chunks.length ? 0 : chunks[chunk][index & CHUNK_MASK];
+	}
+
+	private static void set(int[][] chunks, int index, int value) {
+		chunks[index >>> CHUNK_BITS][index & CHUNK_MASK] = value;
+	}
+
+	// The chunks, or a copy with chunks added up to the one holding index
+	private static int[][] grown(int[][] chunks, int index) {
+		int chunk = index >>> CHUNK_BITS;
+		if ( chunk < chunks.length ) {
+			return chunks;
+		}
+		int allocated = chunks.length;
+		chunks = Arrays.copyOf(chunks, chunk + 1);
+		for (int i = allocated; i <= chunk; i++) {
+			chunks[i] = new int[CHUNK_SIZE];
+		}
+		return chunks;
+	}
+
+	/**
+	 * The records as of one epoch: those published by then and not deleted
+	 * by then. Reads through a view never see a later write.
+	 */
+	final class View implements AutoCloseable {
+		private final Epoch epoch;
+		private boolean closed;
+
+		private View(Epoch epoch) {
+			this.epoch = epoch;
+		}
+
+		int getEpoch() {
+			return epoch.number;
+		}
+
+		/**
+		 * @return number of records visible
+		 */
+		int size() {
+			return epoch.records;
+		}
+
+		/**
+		 * @return true if the record is visible
+		 */
+		boolean contains(int id) {
+			return isVisible(id, epoch.number);
+		}
+
+		/**
+		 * @return the record with the given id, or null if it isn't visible
+		 */
+		TimesheetEntry get(int id) {
+			if ( !contains(id) ) {
+				return null;
+			}
+			TimesheetEntry rec = store.get(id);
+			return rec != null ? rec : graveyard.get(id);
+		}
+
+		/**
+		 * @return a single field of the record with the given id, or null if it isn't visible
+		 */
+		Object getValue(int id, EntryField field) {
+			if ( !contains(id) ) {
+				return null;
+			}
+			Object value = store.getValue(id, field);
+			if ( value == null ) {
+				TimesheetEntry rec = graveyard.get(id);
+				value = rec == null ? null : field.get(rec);
+			}
+			return value;
+		}
+
+		/**
+		 * @return a bound on the ids of the visible records: all are below it
+		 */
+		int idLimit() {
+			return store.idLimit();
+		}
+
+		/**
+		 * Calls action with the id of every visible record, in id order.
+		 */
+		void forEachId(IntConsumer action) {
+			forEachId(0, idLimit(), action);
+		}
+
+		/**
+		 * Calls action with the id of every visible record in [from, to), in
+		 * id order. Disjoint ranges may be walked concurrently.
+		 */
+		void forEachId(int from, int to, IntConsumer action) {
+			int number = epoch.number;
+			for (int id = from; id < to; id++) {
+				if ( isVisible(id, number) ) {
+					action.accept(id);
+				}
+			}
+		}
+
+		/**
+		 * @return sequence number of the latest change visible
+		 */
+		long getSequence() {
+			return epoch.sequence;
+		}
+
+		/**
+		 * @return sequence number up to which deletes may have been dropped
+		 *         from the log: changes after any earlier one but 0 can't be
+		 *         listed in full
+		 */
+		long getFloor() {
+			return epoch.log.floor;
+		}
+
+		/**
+		 * Calls action with every change visible numbered after the given
+		 * sequence, in order. Adds of records deleted by the view's epoch are
+		 * left out; their deletes follow.
+		 *
+		 * @throws IllegalStateException if after is below the floor (and not 0)
+		 */
+		void forEachChange(long after, Consumer<Change> action) {
+			ChangeLog log = epoch.log;
+			if ( after > 0 && after < log.floor ) {
+				throw new IllegalStateException("Changes after " + after + " have been compacted away, up to " + log.floor);
+			}
+			for (int i = log.after(after, epoch.entries); i < epoch.entries; i++) {
+				int change = log.changes[i];
+				if ( change < 0 ) {
+					action.accept(new Change(log.sequences[i], ~change, null));
+				} else {
+					TimesheetEntry rec = get(change);
+					if ( rec != null ) {
+						action.accept(new Change(log.sequences[i], change, rec));
+					}
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			if ( !closed ) {
+				closed = true;
+				release(epoch.number);
+				reclaim();
+			}
+		}
+	}
+}
@@ -0,0 +1,496 @@
+package timely.store;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+
+/**
+ * Column-oriented record store. Rather than one TimesheetEntry (and 14
+ * Strings) per record, each field is kept in its own column:
+ *  - text fields as int codes into a per-column dictionary of distinct values
+ *  - the yes/no flags as bitsets
+ *  - hours, rates and amounts as primitive arrays
+ * A TimesheetEntry is only materialized when a record is read.
+ *
+ * Record ids are row numbers. Rows are appended and never reused; deleting
+ * a record just clears its row's live bit. Columns grow in fixed-size chunks
+ * so existing rows never move.
+ *
+ * Writes (add/remove/find) are serialized on the store. Reads don't lock:
+ * a row is fully written before its id is handed out, and callers publish
+ * ids through concurrent structures (e.g. the RecordsService indexes).
+ */
+public class ColumnarRecordStore implements RecordStore {
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final StringColumn date = new StringColumn();
+	private final StringColumn client = new StringColumn();
+	private final StringColumn project = new StringColumn();
+	private final StringColumn projectCode = new StringColumn();
+	private final StringColumn task = new StringColumn();
+	private final DoubleColumn hours = new DoubleColumn();
+	private final DoubleColumn hoursRounded = new DoubleColumn();
+	private final FlagColumn isBillable = new FlagColumn();
+	private final FlagColumn isInvoiced = new FlagColumn();
+	private final FlagColumn isApproved = new FlagColumn();
+	private final StringColumn firstName = new StringColumn();
+	private final StringColumn lastName = new StringColumn();
+	private final StringColumn department = new StringColumn();
+	private final FlagColumn isEmployee = new FlagColumn();
+	private final IntColumn billableRate = new IntColumn();
+	private final IntColumn costRate = new IntColumn();
+	private final IntColumn costAmount = new IntColumn();
+	private final StringColumn currency = new StringColumn();
+	private final StringColumn externalRefURL = new StringColumn();
+
+	// TimesheetEntry field name -> its column
+	private final Map<String, Column> columns = new HashMap<>();
+
+	private final Bits live = new Bits();
+	// ContentHash of each row, for duplicate detection
+	private final Longs hashes = new Longs();
+	// open-addressed hash table of (row + 1); 0 marks an empty slot
+	private int[] slots = new int[1024];
+	private int usedSlots;
+
+	private volatile int rowCount;
+	private volatile int liveCount;
+
+	public ColumnarRecordStore() {
+		columns.put("date", date);
+		columns.put("client", client);
+		columns.put("project", project);
+		columns.put("projectCode", projectCode);
+		columns.put("task", task);
+		columns.put("hours", hours);
+		columns.put("hoursRounded", hoursRounded);
+		columns.put("isBillable", isBillable);
+		columns.put("isInvoiced", isInvoiced);
+		columns.put("isApproved", isApproved);
+		columns.put("firstName", firstName);
+		columns.put("lastName", lastName);
+		columns.put("department", department);
+		columns.put("isEmployee", isEmployee);
+		columns.put("billableRate", billableRate);
+		columns.put("costRate", costRate);
+		columns.put("costAmount", costAmount);
+		columns.put("currency", currency);
+		columns.put("externalRefURL", externalRefURL);
+		for (EntryField field : EntryField.all()) {
+			if ( !columns.containsKey(field.getName()) ) {
+				throw new IllegalStateException("No column for TimesheetEntry." + field.getName());
+			}
+		}
+	}
+
+	@Override
+	public synchronized int add(TimesheetEntry entry, long hash) {
+		if ( findRow(entry, hash) != NO_ID ) {
+			return NO_ID;
+		}
+
+		int row = rowCount;
+		write(row, entry, hash);
+		rowCount = row + 1;
+		return row;
+	}
+
+	@Override
+	public synchronized boolean restore(int id, TimesheetEntry entry, long contentHash) {
+		if ( id < 0 || isLive(id) ) {
+			return false;
+		}
+		// rows skipped over (deleted before the records were persisted) stay dead
+		write(id, entry, contentHash);
+		// written even when unchanged: like add's, the volatile write publishes the row to readers
+		rowCount = Math.max(rowCount, id + 1);
+		return true;
+	}
+
+	@Override
+	public synchronized void restoreIdLimit(int limit) {
+		// rows skipped over stay dead, as in restore
+		if ( limit > rowCount ) {
+			rowCount = limit;
+		}
+	}
+
+	@Override
+	public TimesheetEntry get(int id) {
+		if ( !isLive(id) ) {
+			return null;
+		}
+		return materialize(id);
+	}
+
+	@Override
+	public Object getValue(int id, EntryField field) {
+		if ( !isLive(id) ) {
+			return null;
+		}
+		return columns.get(field.getName()).get(id);
+	}
+
+	@Override
+	public synchronized int find(TimesheetEntry entry, long hash) {
+		return findRow(entry, hash);
+	}
+
+	@Override
+	public synchronized TimesheetEntry remove(int id) {
+		if ( !isLive(id) ) {
+			return null;
+		}
+		TimesheetEntry rec = materialize(id);
+		// the row's slot stays behind as a tombstone until the next rehash
+		live.set(id, false);
+		liveCount--;
+		return rec;
+	}
+
+	@Override
+	public void forEachId(IntConsumer action) {
+		int rows = rowCount;
+		for (int row = 0; row < rows; row++) {
+			if ( live.get(row) ) {
+				action.accept(row);
+			}
+		}
+	}
+
+	@Override
+	public int idLimit() {
+		return rowCount;
+	}
+
+	@Override
+	public int size() {
+		return liveCount;
+	}
+
+	private boolean isLive(int id) {
+		return id >= 0 && id < rowCount && live.get(id);
+	}
+
+	// Fills in a row and makes it live; callers hold the store lock
+	private void write(int row, TimesheetEntry entry, long hash) {
+		date.set(row, entry.getDate());
+		client.set(row, entry.getClient());
+		project.set(row, entry.getProject());
+		projectCode.set(row, entry.getProjectCode());
+		task.set(row, entry.getTask());
+		hours.set(row, entry.getHours());
+		hoursRounded.set(row, entry.getHoursRounded());
+		isBillable.set(row, entry.getIsBillable());
+		isInvoiced.set(row, entry.getIsInvoiced());
+		isApproved.set(row, entry.getIsApproved());
+		firstName.set(row, entry.getFirstName());
+		lastName.set(row, entry.getLastName());
+		department.set(row, entry.getDepartment());
+		isEmployee.set(row, entry.getIsEmployee());
+		billableRate.set(row, entry.getBillableRate());
+		costRate.set(row, entry.getCostRate());
+		costAmount.set(row, entry.getCostAmount());
+		currency.set(row, entry.getCurrency());
+		externalRefURL.set(row, entry.getExternalRefURL());
+		hashes.set(row, hash);
+		live.set(row, true);
+
+		insertSlot(row, hash);
+		liveCount++;
+	}
+
+	private TimesheetEntry materialize(int row) {
+		return new TimesheetEntry(date.get(row),
+				client.get(row),
+				project.get(row),
+				projectCode.get(row),
+				task.get(row),
+				hours.getDouble(row),
+				hoursRounded.getDouble(row),
+				isBillable.get(row),
+				isInvoiced.get(row),
+				isApproved.get(row),
+				firstName.get(row),
+				lastName.get(row),
+				department.get(row),
+				isEmployee.get(row),
+				billableRate.getInt(row),
+				costRate.getInt(row),
+				costAmount.getInt(row),
+				currency.get(row),
+				externalRefURL.get(row));
+	}
+
+	// Callers hold the store lock
+	private int findRow(TimesheetEntry entry, long hash) {
+		int mask = slots.length - 1;
+		for (int i = mix(hash) & mask; slots[i] != 0; i = (i + 1) & mask) {
+			int row = slots[i] - 1;
+			if ( hashes.get(row) == hash && live.get(row) && materialize(row).equals(entry) ) {
+				return row;
+			}
+		}
+		return NO_ID;
+	}
+
+	// Callers hold the store lock
+	private void insertSlot(int row, long hash) {
+		if ( (usedSlots + 1) * 2 > slots.length ) {
+			rehash();
+		}
+		int mask = slots.length - 1;
+		int i = mix(hash) & mask;
+		while ( slots[i] != 0 ) {
+			i = (i + 1) & mask;
+		}
+		slots[i] = row + 1;
+		usedSlots++;
+	}
+
+	// Resizes the slot table for the live rows, dropping tombstones
+	private void rehash() {
+		int capacity = slots.length;
+		while ( (liveCount + 1) * 4 > capacity ) {
+			capacity <<= 1;
+		}
+		int[] newSlots = new int[capacity];
+		int mask = capacity - 1;
+		int used = 0;
+		for (int slot : slots) {
+			if ( slot != 0 && live.get(slot - 1) ) {
+				int i = mix(hashes.get(slot - 1)) & mask;
+				while ( newSlots[i] != 0 ) {
+					i = (i + 1) & mask;
+				}
+				newSlots[i] = slot;
+				used++;
+			}
+		}
+		slots = newSlots;
+		usedSlots = used;
+	}
+
+	private static int mix(long hash) {
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * A column of one TimesheetEntry field.
+	 */
+	private interface Column {
+		Object get(int row);
+	}
+
+	/**
+	 * Dictionary-encoded text: each row holds the code of its value.
+	 */
+	private static final class StringColumn implements Column {
+		private final Map<String, Integer> codes = new HashMap<>();
+		private volatile String[] values = new String[16];
+		private int valueCount;
+		private final Ints rowCodes = new Ints();
+
+		// Callers hold the store lock
+		void set(int row, String value) {
+			if ( value == null ) {
+				rowCodes.set(row, -1);
+				return;
+			}
+			Integer code = codes.get(value);
+			if ( code == null ) {
+				code = valueCount++;
+				String[] v = values;
+				if ( code == v.length ) {
+					v = Arrays.copyOf(v, v.length * 2);
+				}
+				v[code] = value;
+				values = v;
+				codes.put(value, code);
+			}
+			rowCodes.set(row, code);
+		}
+
+		@Override
+		public String get(int row) {
+			int code = rowCodes.get(row);
+			return code < 0 ? null : values[code];
+		}
+	}
+
+	/**
+	 * Yes/no text as a bitset. The (rare) rows holding anything other
+	 * than exactly "Yes" or "No" keep their value on the side.
+	 */
+	private static final class FlagColumn implements Column {
+		private static final String YES = "Yes";
+		private static final String NO = "No";
+
+		private final Bits yes = new Bits();
+		private final Bits other = new Bits();
+		private final Map<Integer, String> others = new ConcurrentHashMap<>();
+
+		// Callers hold the store lock
+		void set(int row, String value) {
+			boolean isYes = YES.equals(value);
+			boolean isOther = !isYes && !NO.equals(value);
+			yes.set(row, isYes);
+			other.set(row, isOther);
+			if ( isOther && value != null ) {
+				others.put(row, value);
+			} else {
+				others.remove(row);
+			}
+		}
+
+		@Override
+		public String get(int row) {
+			if ( other.get(row) ) {
+				return others.get(row);  // null if the value was null
+			}
+			return yes.get(row) ? YES : NO;
+		}
+	}
+
+	private static final class DoubleColumn implements Column {
+		private volatile double[][] chunks = new double[0][];
+
+		// Callers hold the store lock
+		void set(int row, double value) {
+			int chunk = row >>> CHUNK_BITS;
+			double[][] c = chunks;
+			if ( chunk >= c.length ) {
+				int allocated = c.length;
+				c = Arrays.copyOf(c, chunk + 1);
+				for (int i = allocated; i <= chunk; i++) {
+					c[i] = new double[CHUNK_SIZE];
+				}
+				chunks = c;
+			}
+			c[chunk][row & CHUNK_MASK] = value;
+		}
+
+		double getDouble(int row) {
+			return chunks[row >>> CHUNK_BITS][row & CHUNK_MASK];
+		}
+
+		@Override
+		public Object get(int row) {
+			return getDouble(row);
+		}
+	}
+
+	private static final class IntColumn implements Column {
+		private final Ints values = new Ints();
+
+		// Callers hold the store lock
+		void set(int row, int value) {
+			values.set(row, value);
+		}
+
+		int getInt(int row) {
+			return values.get(row);
+		}
+
+		@Override
+		public Object get(int row) {
+			return getInt(row);
+		}
+	}
+
+	/**
+	 * Chunked, append-only int array.
+	 */
+	private static final class Ints {
+		private volatile int[][] chunks = new int[0][];
+
+		// Callers hold the store lock
+		void set(int row, int value) {
+			int chunk = row >>> CHUNK_BITS;
+			int[][] c = chunks;
+			if ( chunk >= c.length ) {
+				int allocated = c.length;
+				c = Arrays.copyOf(c, chunk + 1);
+				for (int i = allocated; i <= chunk; i++) {
+					c[i] = new int[CHUNK_SIZE];
+				}
+				chunks = c;
+			}
+			c[chunk][row & CHUNK_MASK] = value;
+		}
+
+		int get(int row) {
+			return chunks[row >>> CHUNK_BITS][row & CHUNK_MASK];
+		}
+	}
+
+	/**
+	 * Chunked, append-only long array.
+	 */
+	private static final class Longs {
+		private volatile long[][] chunks = new long[0][];
+
+		// Callers hold the store lock
+		void set(int row, long value) {
+			int chunk = row >>> CHUNK_BITS;
+			long[][] c = chunks;
+			if ( chunk >= c.length ) {
+				int allocated = c.length;
+				c = Arrays.copyOf(c, chunk + 1);
+				for (int i = allocated; i <= chunk; i++) {
+					c[i] = new long[CHUNK_SIZE];
+				}
+				chunks = c;
+			}
+			c[chunk][row & CHUNK_MASK] = value;
+		}
+
+		long get(int row) {
+			return chunks[row >>> CHUNK_BITS][row & CHUNK_MASK];
+		}
+	}
+
+	/**
+	 * Chunked, append-only bitset.
+	 */
+	private static final class Bits {
+		private volatile long[][] chunks = new long[0][];
+
+		// Callers hold the store lock
+		void set(int row, boolean value) {
+			int chunk = row >>> CHUNK_BITS;
+			long[][] c = chunks;
+			if ( chunk >= c.length ) {
+				int allocated = c.length;
+				c = Arrays.copyOf(c, chunk + 1);
+				for (int i = allocated; i <= chunk; i++) {
+					c[i] = new long[CHUNK_SIZE >>> 6];
+				}
+				chunks = c;
+			}
+			int bit = row & CHUNK_MASK;
+			if ( value ) {
+				c[chunk][bit >>> 6] |= 1L << bit;
+			} else {
+				c[chunk][bit >>> 6] &= ~(1L << bit);
+			}
+		}
+
+		boolean get(int row) {
+			long[][] c = chunks;
+			int chunk = row >>> CHUNK_BITS;
+			if ( chunk >= c.length ) {
+				return false;
+			}
+			int bit = row & CHUNK_MASK;
+			return (c[chunk][bit >>> 6] & (1L << bit)) != 0;
+		}
+	}
+}
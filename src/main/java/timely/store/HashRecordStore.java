@@ -0,0 +1,116 @@
+package timely.store;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import timely.core.ContentHash;
+import timely.core.TimesheetEntry;
+
+/**
+ * Keeps each record as its TimesheetEntry object, in concurrent hash maps
+ * (by id, and by content for duplicate detection).
+ */
+public class HashRecordStore implements RecordStore {
+	private final Map<Integer, TimesheetEntry> records = new ConcurrentHashMap<>();
+	private final Map<ContentKey, Integer> recordIds = new ConcurrentHashMap<>();
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	@Override
+	public int add(TimesheetEntry entry, long contentHash) {
+		ContentKey key = new ContentKey(entry, contentHash);
+		if ( recordIds.containsKey(key) ) {
+			return NO_ID;
+		}
+		int id = nextId.getAndIncrement();
+		if ( recordIds.putIfAbsent(key, id) != null ) {
+			return NO_ID;
+		}
+		records.put(id, entry);
+		return id;
+	}
+
+	@Override
+	public boolean restore(int id, TimesheetEntry entry, long contentHash) {
+		if ( records.putIfAbsent(id, entry) != null ) {
+			return false;
+		}
+		recordIds.putIfAbsent(new ContentKey(entry, contentHash), id);
+		nextId.accumulateAndGet(id + 1, Math::max);
+		return true;
+	}
+
+	@Override
+	public void restoreIdLimit(int limit) {
+		nextId.accumulateAndGet(limit, Math::max);
+	}
+
+	@Override
+	public TimesheetEntry get(int id) {
+		return records.get(id);
+	}
+
+	@Override
+	public int find(TimesheetEntry entry, long contentHash) {
+		Integer id = recordIds.get(new ContentKey(entry, contentHash));
+		return id == null ? NO_ID : id;
+	}
+
+	@Override
+	public TimesheetEntry remove(int id) {
+		TimesheetEntry rec = records.remove(id);
+		if ( rec != null ) {
+			recordIds.remove(new ContentKey(rec, ContentHash.of(rec)), id);
+		}
+		return rec;
+	}
+
+	@Override
+	public void forEachId(IntConsumer action) {
+		for (Integer id : records.keySet()) {
+			action.accept(id);
+		}
+	}
+
+	@Override
+	public int idLimit() {
+		return nextId.get();
+	}
+
+	@Override
+	public int size() {
+		return records.size();
+	}
+
+	/**
+	 * Map key for an entry that carries its precomputed ContentHash, so map
+	 * lookups compare hashes first and only fall back to equals() on a match.
+	 */
+	private static final class ContentKey {
+		private final TimesheetEntry entry;
+		private final long hash;
+
+		ContentKey(TimesheetEntry entry, long hash) {
+			this.entry = entry;
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (hash ^ (hash >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if ( this == o ) {
+				return true;
+			}
+			if ( !(o instanceof ContentKey) ) {
+				return false;
+			}
+			ContentKey other = (ContentKey) o;
+			return hash == other.hash && entry.equals(other.entry);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package timely.store;
+
+import java.util.function.IntConsumer;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+
+/**
+ * Storage engine holding the TimesheetEntry records behind RecordsService.
+ *
+ * Records are addressed by int ids assigned by the store; an id stays with
+ * its record for as long as it's stored and is never reused. Duplicate
+ * (equal) entries are refused, so each distinct entry has exactly one id.
+ * Callers pass each entry's ContentHash, computed once, so stores never
+ * rehash stored entries to detect duplicates.
+ * Implementations must allow concurrent readers alongside a writer; an id
+ * handed out by add() is readable as soon as add() returns.
+ */
+public interface RecordStore {
+	// Returned in place of an id when there is none to give
+	int NO_ID = -1;
+
+	enum Type {
+		// one TimesheetEntry object per record, in hash maps
+		HASH,
+		// dictionary-encoded columns; entries materialized on read
+		COLUMNAR
+	}
+
+	/**
+	 * @return a new, empty store of the given type
+	 */
+	static RecordStore create(Type type) {
+		switch (type) {
+		case COLUMNAR:
+			return new ColumnarRecordStore();
+		case HASH:
+		default:
+			return new HashRecordStore();
+		}
+	}
+
+	/**
+	 * @param contentHash ContentHash of entry
+	 * @return id of the newly stored entry, or NO_ID if an equal entry is already stored
+	 */
+	int add(TimesheetEntry entry, long contentHash);
+
+	/**
+	 * Stores an entry under an id it was given earlier, as when reloading
+	 * persisted records. Later add()s are given higher ids.
+	 *
+	 * @param contentHash ContentHash of entry
+	 * @return false (storing nothing) if the id is already in use
+	 */
+	boolean restore(int id, TimesheetEntry entry, long contentHash);
+
+	/**
+	 * Raises idLimit() to at least limit, so ids given out before a reload
+	 * (including those of records deleted since) aren't given out again.
+	 */
+	void restoreIdLimit(int limit);
+
+	/**
+	 * @return the entry with the given id, or null if there is none
+	 */
+	TimesheetEntry get(int id);
+
+	/**
+	 * @return a single field of the entry with the given id, or null if there is none
+	 */
+	default Object getValue(int id, EntryField field) {
+		TimesheetEntry rec = get(id);
+		return rec == null ? null : field.get(rec);
+	}
+
+	/**
+	 * @param contentHash ContentHash of entry
+	 * @return id of the stored entry equal to the given one, or NO_ID if there is none
+	 */
+	int find(TimesheetEntry entry, long contentHash);
+
+	/**
+	 * @return the removed entry, or null if there is no entry with that id
+	 */
+	TimesheetEntry remove(int id);
+
+	/**
+	 * Calls action with the id of every stored record.
+	 */
+	void forEachId(IntConsumer action);
+
+	/**
+	 * @return a bound on the ids handed out so far: every id is below it
+	 */
+	int idLimit();
+
+	int size();
+}
@@ -0,0 +1,329 @@
+package timely.tasks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+import timely.service.RecordsService;
+
+/**
+ * Streams CSV timesheet exports into RecordsService.
+ *
+ * Lines are read in batches; each batch is parsed, validated and imported
+ * on the given executor while the next one is being read. At most a fixed
+ * number of batches are in flight at once, so memory use is bounded by the
+ * batch size rather than the size of the upload. Bad lines are reported
+ * (with their line number) and skipped; the rest of the upload goes on.
+ *
+ * Fields may be quoted as RFC 4180 has it: a field in double quotes may hold
+ * commas, line breaks and doubled double quotes (one double quote each). A
+ * record is at most MAX_RECORD_LENGTH chars long, so a stray opening quote
+ * can't join the rest of the upload into one record.
+ */
+public class CsvImporter {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CsvImporter.class);
+	private static final int timesheetEntryFieldCount = EntryField.all().size();
+	private static final Pattern SEPARATOR = Pattern.compile(",");
+	// Longest record (in chars) that a quoted field's line breaks may join lines into
+	static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+	final RecordsService recSvc;
+	private final ExecutorService executor;
+	private final int batchSize;
+	private final int maxBatchesInFlight;
+	private final Meter rowsRead;
+	private final Meter rowsRejected;
+
+	public CsvImporter(RecordsService recSvc, ExecutorService executor, int threads, int batchSize, MetricRegistry metrics) {
+		this.recSvc = recSvc;
+		this.executor = executor;
+		this.batchSize = batchSize;
+		this.maxBatchesInFlight = 2 * threads;
+		this.rowsRead = metrics.meter(MetricRegistry.name(CsvImporter.class, "rowsRead"));
+		this.rowsRejected = metrics.meter(MetricRegistry.name(CsvImporter.class, "rowsRejected"));
+	}
+
+	/**
+	 * Imports every record of a CSV export. The first line (column headings)
+	 * is skipped.
+	 *
+	 * @param csv reader over the CSV text
+	 * @return counts of what was imported/rejected, and how fast
+	 * @throws IOException if the CSV can't be read
+	 * @throws InterruptedException if interrupted waiting for batches to finish
+	 */
+	public ImportReport importFrom(Reader csv) throws IOException, InterruptedException {
+		long startNanos = System.nanoTime();
+		ImportReport report = new ImportReport();
+		Semaphore inFlight = new Semaphore(maxBatchesInFlight);
+
+		BufferedReader reader = csv instanceof BufferedReader ? (BufferedReader) csv : new BufferedReader(csv);
+		RecordReader records = new RecordReader(reader);
+		String line = records.next();  // skip headings
+		List<String> batch = new ArrayList<>(batchSize);
+		long[] lineNumbers = new long[batchSize];
+		try {
+			while ( (line = records.next()) != null ) {
+				lineNumbers[batch.size()] = records.lineNumber();
+				batch.add(line);
+				if ( batch.size() == batchSize ) {
+					submit(batch, lineNumbers, report, inFlight);
+					batch = new ArrayList<>(batchSize);
+					lineNumbers = new long[batchSize];
+				}
+			}
+			if ( !batch.isEmpty() ) {
+				submit(batch, lineNumbers, report, inFlight);
+			}
+		} finally {
+			// wait for the batches still being imported
+			inFlight.acquire(maxBatchesInFlight);
+			inFlight.release(maxBatchesInFlight);
+		}
+
+		report.finish(System.nanoTime() - startNanos);
+		LOGGER.info("importFrom: " + report.summary());
+		return report;
+	}
+
+	/**
+	 * Reads the records of a CSV text: a line, and the lines after it while a
+	 * quoted field is still open. A record that would run past
+	 * MAX_RECORD_LENGTH (or the end of the text) has an unclosed quote: its
+	 * first line is returned alone, for parseLine to reject, and reading
+	 * resumes at the line after it.
+	 */
+	static final class RecordReader {
+		private final BufferedReader reader;
+		// lines read ahead for a record that was cut short, to be read again
+		private final Deque<String> readAgain = new ArrayDeque<>();
+		private long linesRead;
+		private long lineNumber;
+
+		RecordReader(BufferedReader reader) {
+			this.reader = reader;
+		}
+
+		/**
+		 * @return the next record, or null at the end of the text
+		 */
+		String next() throws IOException {
+			String line = nextLine();
+			if ( line == null ) {
+				return null;
+			}
+			lineNumber = linesRead;
+			if ( line.indexOf('"') < 0 || !inQuotes(line, false) ) {
+				return line;
+			}
+			List<String> more = new ArrayList<>();
+			int length = line.length();
+			boolean quoted = true;
+			while ( quoted ) {
+				String next = nextLine();
+				if ( next != null ) {
+					more.add(next);
+					length += 1 + next.length();
+				}
+				if ( next == null || length > MAX_RECORD_LENGTH ) {
+					for (int i = more.size() - 1; i >= 0; i--) {
+						readAgain.push(more.get(i));
+					}
+					linesRead -= more.size();
+					return line;
+				}
+				quoted = inQuotes(next, true);
+			}
+			StringBuilder record = new StringBuilder(length).append(line);
+			for (String next : more) {
+				record.append('\n').append(next);
+			}
+			return record.toString();
+		}
+
+		/**
+		 * @return number of the first line of the record last read
+		 */
+		long lineNumber() {
+			return lineNumber;
+		}
+
+		private String nextLine() throws IOException {
+			String line = readAgain.isEmpty() ? reader.readLine() : readAgain.pop();
+			if ( line != null ) {
+				linesRead++;
+			}
+			return line;
+		}
+	}
+
+	// true if a line ends inside a quoted field, given whether it starts in
+	// one. Only a quote starting a field opens one; stray quotes are left for
+	// parseLine to reject.
+	private static boolean inQuotes(String line, boolean quoted) {
+		boolean fieldStart = true;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if ( quoted ) {
+				if ( c == '"' ) {
+					if ( i + 1 < line.length() && line.charAt(i + 1) == '"' ) {
+						i++;  // doubled: a quote in the value
+					} else {
+						quoted = false;
+					}
+				}
+			} else if ( c == '"' && fieldStart ) {
+				quoted = true;
+			}
+			fieldStart = !quoted && c == ',';
+		}
+		return quoted;
+	}
+
+	private void submit(List<String> lines, long[] lineNumbers, ImportReport report, Semaphore inFlight) throws InterruptedException {
+		long firstLineNumber = lineNumbers[0];
+		inFlight.acquire();
+		try {
+			executor.execute(() -> {
+				try {
+					importBatch(lines, lineNumbers, report);
+				} catch (RuntimeException e) {
+					LOGGER.warn("importBatch: batch at line " + firstLineNumber + " failed", e);
+					report.reject(firstLineNumber, "batch of " + lines.size() + " lines failed: " + e);
+				} finally {
+					inFlight.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			inFlight.release();
+			throw e;
+		}
+	}
+
+	private void importBatch(List<String> lines, long[] lineNumbers, ImportReport report) {
+		List<TimesheetEntry> records = new ArrayList<>(lines.size());
+		for (int i = 0; i < lines.size(); i++) {
+			try {
+				records.add(parseLine(lines.get(i)));
+			} catch (InvalidRecordException e) {
+				report.reject(lineNumbers[i], e.getMessage());
+			}
+		}
+		report.addRead(lines.size());
+		rowsRead.mark(lines.size());
+		rowsRejected.mark(lines.size() - records.size());
+		report.addImported(recSvc.importRecords(records));
+		report.addValid(records.size());
+	}
+
+	/**
+	 * Parses one CSV record (a line, unless a quoted field holds line
+	 * breaks) into a TimesheetEntry.
+	 *
+	 * @throws InvalidRecordException if the line has the wrong number of
+	 *         fields, a numeric field isn't a number, or a quote is misplaced
+	 */
+	static TimesheetEntry parseLine(String line) {
+		String[] x = line.indexOf('"') < 0
+				? SEPARATOR.split(line, -1)   // -1 causes it to recognize final blank field
+				: splitQuoted(line);
+		int len = x.length;
+
+		if ( len != timesheetEntryFieldCount ) {
+			throw new InvalidRecordException("Illegal # of fields: " + len
+					+ ". Expected " + timesheetEntryFieldCount
+					+ ". line: \"" + line + "\"");
+		}
+
+		try {
+			return new TimesheetEntry(x[0],         // date
+					x[1],                     // client
+					x[2],                     // project
+					x[3],                     // project code
+					x[4],                     // task
+					Double.parseDouble(x[5]), // hours
+					Double.parseDouble(x[6]), // hoursRounded
+					x[7],                     // isBillable
+					x[8],                     // isInvoiced
+					x[9],                     // isApproved
+					x[10],                    // firstName
+					x[11],                    // lastName
+					x[12],                    // department
+					x[13],                    // isEmployee
+					Integer.parseInt(x[14]),  // billableRate
+					Integer.parseInt(x[15]),  // costRate
+					Integer.parseInt(x[16]),  // costAmount
+					x[17],                    // currency
+					x[18]);                   // externalRefUrl
+		} catch (NumberFormatException e) {
+			throw new InvalidRecordException("Bad number (" + e.getMessage() + "). line: \"" + line + "\"");
+		}
+	}
+
+	// Splits a line with quoted fields
+	private static String[] splitQuoted(String line) {
+		List<String> fields = new ArrayList<>(timesheetEntryFieldCount);
+		StringBuilder field = new StringBuilder();
+		int i = 0;
+		while ( true ) {
+			field.setLength(0);
+			if ( i < line.length() && line.charAt(i) == '"' ) {
+				i++;
+				while ( true ) {
+					int quote = line.indexOf('"', i);
+					if ( quote < 0 ) {
+						throw new InvalidRecordException("Unclosed quote. line: \"" + line + "\"");
+					}
+					field.append(line, i, quote);
+					i = quote + 1;
+					if ( i < line.length() && line.charAt(i) == '"' ) {
+						field.append('"');  // doubled: a quote in the value
+						i++;
+					} else {
+						break;
+					}
+				}
+				if ( i < line.length() && line.charAt(i) != ',' ) {
+					throw new InvalidRecordException("Text after closing quote. line: \"" + line + "\"");
+				}
+			} else {
+				int comma = line.indexOf(',', i);
+				int end = comma < 0 ? line.length() : comma;
+				int quote = line.indexOf('"', i);
+				if ( quote >= 0 && quote < end ) {
+					throw new InvalidRecordException("Quote inside unquoted field. line: \"" + line + "\"");
+				}
+				field.append(line, i, end);
+				i = end;
+			}
+			fields.add(field.toString());
+			if ( i == line.length() ) {
+				return fields.toArray(new String[fields.size()]);
+			}
+			i++;  // past the comma
+		}
+	}
+
+	static class InvalidRecordException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public InvalidRecordException(String message) {
+			super(message);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package timely.tasks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outcome of one import (CSV or JSON). Safe to update from several
+ * importing threads at once.
+ */
+public class ImportReport {
+	// Rejected records listed in a report; the rest are only counted
+	private static final int MAX_REPORTED_REJECTS = 100;
+
+	private final AtomicLong read = new AtomicLong();
+	private final AtomicLong valid = new AtomicLong();
+	private final AtomicLong imported = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final List<String> rejects = Collections.synchronizedList(new ArrayList<>());
+	private volatile long elapsedNanos;
+
+	void reject(long lineNumber, String reason) {
+		if ( rejected.incrementAndGet() <= MAX_REPORTED_REJECTS ) {
+			rejects.add("line " + lineNumber + ": " + reason);
+		}
+	}
+
+	void addRead(long records) {
+		read.addAndGet(records);
+	}
+
+	void addValid(long records) {
+		valid.addAndGet(records);
+	}
+
+	void addImported(long records) {
+		imported.addAndGet(records);
+	}
+
+	void finish(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/** @return records read (for CSV, data lines excluding the headings) */
+	public long getRead() {
+		return read.get();
+	}
+
+	/** @return records that parsed (imported or duplicate) */
+	public long getValid() {
+		return valid.get();
+	}
+
+	/** @return records newly added to the store */
+	public long getImported() {
+		return imported.get();
+	}
+
+	/** @return records that couldn't be parsed */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/** @return the first few rejected records, with line number and reason (unordered) */
+	public List<String> getRejects() {
+		synchronized (rejects) {
+			return new ArrayList<>(rejects);
+		}
+	}
+
+	public double getRowsPerSecond() {
+		return elapsedNanos == 0 ? 0 : read.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+
+	public String summary() {
+		return "imported " + getImported() + " of " + getValid() + " valid records ("
+				+ getRead() + " read, " + getRejected() + " rejected) in "
+				+ TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms, "
+				+ Math.round(getRowsPerSecond()) + " rows/sec";
+	}
+}
@@ -0,0 +1,121 @@
+package timely.tasks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import timely.core.TimesheetEntry;
+import timely.service.RecordsService;
+
+/**
+ * Streams JSON timesheet entries into RecordsService: either a JSON array of
+ * entries, or newline-delimited JSON (one entry per line). Entries are
+ * parsed one at a time and imported in batches, so memory use is bounded by
+ * the batch size rather than the size of the request.
+ *
+ * An entry that is valid JSON but not a valid TimesheetEntry is reported and
+ * skipped. Malformed JSON ends the import, since nothing after it can be
+ * trusted to line up; the entries before it are kept.
+ */
+public class JsonImporter {
+	private static final Logger LOGGER = LoggerFactory.getLogger(JsonImporter.class);
+
+	private final RecordsService recSvc;
+	private final ObjectReader entryReader;
+	private final int batchSize;
+
+	public JsonImporter(RecordsService recSvc, ObjectMapper mapper, int batchSize) {
+		this.recSvc = recSvc;
+		this.entryReader = mapper.readerFor(TimesheetEntry.class);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param json stream of a JSON array, or of newline-delimited JSON entries
+	 * @return counts of what was imported/rejected; check isComplete()
+	 * @throws IOException if the stream can't be read
+	 */
+	public JsonImportReport importFrom(InputStream json) throws IOException {
+		long startNanos = System.nanoTime();
+		JsonImportReport report = new JsonImportReport();
+		List<TimesheetEntry> batch = new ArrayList<>(batchSize);
+
+		// readValues() walks the elements of a top-level array, or a sequence of top-level values
+		try (MappingIterator<TimesheetEntry> entries = entryReader.readValues(json)) {
+			while ( hasNext(entries, report) ) {
+				long line = entries.getCurrentLocation().getLineNr();
+				try {
+					TimesheetEntry entry = entries.nextValue();
+					report.addRead(1);
+					if ( entry == null ) {
+						report.reject(line, "null entry");
+						continue;
+					}
+					batch.add(entry);
+				} catch (JsonMappingException e) {
+					// the parser has skipped past the bad entry; carry on with the next
+					report.addRead(1);
+					report.reject(line, e.getOriginalMessage());
+					continue;
+				} catch (JsonProcessingException e) {
+					stop(report, e);
+					break;
+				}
+				if ( batch.size() == batchSize ) {
+					importBatch(batch, report);
+					batch = new ArrayList<>(batchSize);
+				}
+			}
+		} finally {
+			if ( !batch.isEmpty() ) {
+				importBatch(batch, report);
+			}
+			report.finish(System.nanoTime() - startNanos);
+		}
+		LOGGER.info("importFrom: " + report.summary());
+		return report;
+	}
+
+	// false at the end of the entries, or at malformed JSON (which is reported)
+	private static boolean hasNext(MappingIterator<TimesheetEntry> entries, JsonImportReport report) throws IOException {
+		try {
+			return entries.hasNextValue();
+		} catch (JsonProcessingException e) {
+			stop(report, e);
+			return false;
+		}
+	}
+
+	private static void stop(JsonImportReport report, JsonProcessingException e) {
+		long line = e.getLocation() == null ? -1 : e.getLocation().getLineNr();
+		report.reject(line, "malformed JSON, import stopped: " + e.getOriginalMessage());
+		report.incomplete = true;
+	}
+
+	private void importBatch(List<TimesheetEntry> batch, ImportReport report) {
+		report.addImported(recSvc.importRecords(batch));
+		report.addValid(batch.size());
+	}
+
+	/**
+	 * ImportReport noting whether the whole request could be read.
+	 */
+	public static class JsonImportReport extends ImportReport {
+		private volatile boolean incomplete;
+
+		/** @return false if malformed JSON stopped the import part way */
+		public boolean isComplete() {
+			return !incomplete;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package timely.tasks;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Admin servlet importing a CSV export straight from the request stream,
+ * so uploads of any size are imported in bounded memory. The CSV is read in
+ * the request's charset, or UTF-8 (as /tasks/upload reads it) if it has none.
+ *
+ * <pre>curl -X POST -H "Content-Type: text/csv" --data-binary @export.csv http://localhost:8081/upload</pre>
+ */
+public class UploadServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+	private static final Logger LOGGER = LoggerFactory.getLogger(UploadServlet.class);
+
+	private final transient CsvImporter importer;
+
+	public UploadServlet(CsvImporter importer) {
+		this.importer = importer;
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		Charset charset;
+		try {
+			charset = req.getCharacterEncoding() == null ? StandardCharsets.UTF_8
+					: Charset.forName(req.getCharacterEncoding());
+		} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+			resp.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported charset " + req.getCharacterEncoding());
+			return;
+		}
+		ImportReport report;
+		try (Reader csv = new InputStreamReader(req.getInputStream(), charset)) {
+			report = importer.importFrom(csv);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.warn("doPost: interrupted while importing");
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			return;
+		}
+
+		resp.setContentType("text/plain");
+		resp.setCharacterEncoding("UTF-8");
+		try (PrintWriter output = resp.getWriter()) {
+			printReport(report, output);
+		}
+	}
+
+	static void printReport(ImportReport report, PrintWriter output) {
+		output.print("Thank you. We imported " + report.getImported() + " of " + report.getValid() + " records.\n");
+		output.print(report.summary() + "\n");
+		for (String reject : report.getRejects()) {
+			output.print("Trouble importing " + reject + "\n");
+		}
+		if ( report.getRejected() > report.getRejects().size() ) {
+			output.print("... and " + (report.getRejected() - report.getRejects().size()) + " more rejected lines\n");
+		}
+	}
+}
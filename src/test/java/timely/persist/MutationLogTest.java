@@ -0,0 +1,206 @@
+package timely.persist;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * A log cut short anywhere (in an entry's length, CRC or payload, or
+ * between segments) replays exactly the entries written in full before the
+ * cut, and takes appends after them.
+ */
+public class MutationLogTest {
+	private static final int SEGMENT_SIZE = 1024;
+	private static final String FIRST_SEGMENT = "log-0000000000.dat";
+	private static final String SECOND_SEGMENT = "log-0000000001.dat";
+
+	@Rule
+	public final TemporaryFolder temp = new TemporaryFolder();
+
+	@Test
+	public void replaysWhatWasAppended() throws IOException {
+		Path dir = temp.newFolder().toPath();
+		List<byte[]> payloads = payloads(30);
+		write(dir, payloads);
+
+		assertPayloads(payloads, replay(dir));
+	}
+
+	@Test
+	public void truncatedAtEveryOffsetReplaysTheCompleteEntries() throws IOException {
+		Path written = temp.newFolder().toPath();
+		List<byte[]> payloads = payloads(8);
+		write(written, payloads);
+		byte[] segment = Files.readAllBytes(written.resolve(FIRST_SEGMENT));
+		List<Integer> ends = entryEnds(segment);
+		assertEquals(payloads.size(), ends.size());
+
+		for (int cut = 0; cut <= ends.get(ends.size() - 1); cut++) {
+			Path dir = temp.newFolder().toPath();
+			Files.write(dir.resolve(FIRST_SEGMENT), zeroedFrom(segment, cut));
+			int complete = completeEntries(segment, ends, cut);
+
+			assertPayloads(payloads.subList(0, complete), replay(dir));
+			assertAppendsFollow(dir, payloads.subList(0, complete));
+		}
+	}
+
+	@Test
+	public void shortFileAtEveryOffsetReplaysTheCompleteEntries() throws IOException {
+		Path written = temp.newFolder().toPath();
+		List<byte[]> payloads = payloads(8);
+		write(written, payloads);
+		byte[] segment = Files.readAllBytes(written.resolve(FIRST_SEGMENT));
+		List<Integer> ends = entryEnds(segment);
+
+		for (int cut = 0; cut <= ends.get(ends.size() - 1); cut++) {
+			Path dir = temp.newFolder().toPath();
+			byte[] shortened = new byte[cut];
+			System.arraycopy(segment, 0, shortened, 0, cut);
+			Files.write(dir.resolve(FIRST_SEGMENT), shortened);
+
+			assertPayloads(payloads.subList(0, completeEntries(segment, ends, cut)), replay(dir));
+		}
+	}
+
+	@Test
+	public void cutInALaterSegmentKeepsTheEarlierOnes() throws IOException {
+		Path written = temp.newFolder().toPath();
+		List<byte[]> payloads = payloads(30);
+		write(written, payloads);
+		byte[] first = Files.readAllBytes(written.resolve(FIRST_SEGMENT));
+		byte[] second = Files.readAllBytes(written.resolve(SECOND_SEGMENT));
+		int inFirst = entryEnds(first).size();
+		List<Integer> ends = entryEnds(second);
+
+		for (int cut = 0; cut <= ends.get(ends.size() - 1); cut++) {
+			Path dir = temp.newFolder().toPath();
+			Files.write(dir.resolve(FIRST_SEGMENT), first);
+			Files.write(dir.resolve(SECOND_SEGMENT), zeroedFrom(second, cut));
+
+			List<byte[]> expected = payloads.subList(0, inFirst + completeEntries(second, ends, cut));
+			assertPayloads(expected, replay(dir));
+			assertAppendsFollow(dir, expected);
+		}
+	}
+
+	@Test
+	public void corruptEntryDropsTheRestOfTheLog() throws IOException {
+		Path dir = temp.newFolder().toPath();
+		List<byte[]> payloads = payloads(30);
+		write(dir, payloads);
+		byte[] first = Files.readAllBytes(dir.resolve(FIRST_SEGMENT));
+		List<Integer> ends = entryEnds(first);
+		// flip a payload byte of the third entry
+		first[ends.get(1) + 8] ^= 1;
+		Files.write(dir.resolve(FIRST_SEGMENT), first);
+
+		assertPayloads(payloads.subList(0, 2), replay(dir));
+		assertFalse(Files.exists(dir.resolve(SECOND_SEGMENT)));
+	}
+
+	// Payloads of varied lengths, with a zero last byte now and then
+	static List<byte[]> payloads(int count) {
+		List<byte[]> payloads = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			byte[] payload = ("entry " + i + " " + new String(new char[i * 7 % 40]).replace('\0', 'x'))
+					.getBytes(StandardCharsets.UTF_8);
+			if ( i % 3 == 0 ) {
+				payload = ByteBuffer.allocate(payload.length + 2).put(payload).array();
+			}
+			payloads.add(payload);
+		}
+		return payloads;
+	}
+
+	private static void write(Path dir, List<byte[]> payloads) throws IOException {
+		try (MutationLog log = new MutationLog(dir, SEGMENT_SIZE)) {
+			log.open(0, payload -> {
+				throw new IOException("empty log replayed something");
+			});
+			for (byte[] payload : payloads) {
+				log.append(payload);
+			}
+		}
+	}
+
+	private static List<byte[]> replay(Path dir) throws IOException {
+		List<byte[]> replayed = new ArrayList<>();
+		try (MutationLog log = new MutationLog(dir, SEGMENT_SIZE)) {
+			log.open(0, replayed::add);
+		}
+		return replayed;
+	}
+
+	// Appending after recovery, then recovering again, yields the entries
+	// kept and the new one: nothing of the cut-off tail comes back
+	private static void assertAppendsFollow(Path dir, List<byte[]> kept) throws IOException {
+		byte[] added = "appended after recovery".getBytes(StandardCharsets.UTF_8);
+		try (MutationLog log = new MutationLog(dir, SEGMENT_SIZE)) {
+			log.open(0, payload -> { });
+			log.append(added);
+		}
+		List<byte[]> expected = new ArrayList<>(kept);
+		expected.add(added);
+		assertPayloads(expected, replay(dir));
+	}
+
+	private static void assertPayloads(List<byte[]> expected, List<byte[]> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertArrayEquals("entry " + i, expected.get(i), actual.get(i));
+		}
+	}
+
+	/**
+	 * @return the offset just past each entry of a segment, in order
+	 */
+	static List<Integer> entryEnds(byte[] segment) {
+		ByteBuffer buffer = ByteBuffer.wrap(segment);
+		List<Integer> ends = new ArrayList<>();
+		int position = 0;
+		while ( position + 8 <= segment.length && buffer.getInt(position) > 0 ) {
+			position += 8 + buffer.getInt(position);
+			ends.add(position);
+		}
+		return ends;
+	}
+
+	/**
+	 * @return number of entries a segment cut at offset cut (the rest
+	 *         zeros) still holds in full: those ending by the cut, and the
+	 *         next if the bytes it lost were zeros anyway
+	 */
+	static int completeEntries(byte[] segment, List<Integer> ends, int cut) {
+		int complete = 0;
+		for (int end : ends) {
+			for (int i = cut; i < end; i++) {
+				if ( segment[i] != 0 ) {
+					return complete;
+				}
+			}
+			complete++;
+		}
+		return complete;
+	}
+
+	static byte[] zeroedFrom(byte[] bytes, int from) {
+		byte[] cut = bytes.clone();
+		for (int i = from; i < cut.length; i++) {
+			cut[i] = 0;
+		}
+		return cut;
+	}
+}
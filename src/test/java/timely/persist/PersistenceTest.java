@@ -0,0 +1,320 @@
+package timely.persist;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import timely.core.TimesheetEntry;
+import timely.service.RecordsService;
+
+/**
+ * Records, and the numbering of their changes, come back after a crash at
+ * any point: mid log entry, or anywhere in taking a snapshot. A crash is a
+ * copy of the data directory taken while the service runs (what's in the
+ * page cache survives a process dying).
+ */
+public class PersistenceTest {
+	private static final int SEGMENT_SIZE = 4096;
+	private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+	@Rule
+	public final TemporaryFolder temp = new TemporaryFolder();
+
+	// every change made, in order
+	private final List<Op> ops = new ArrayList<>();
+	private final List<Persistence> running = new ArrayList<>();
+	private int nextEntry;
+
+	// A change made, with the sequence number it was given
+	private static final class Op {
+		final long sequence;
+		final int id;
+		// null for a delete
+		final TimesheetEntry entry;
+
+		Op(long sequence, int id, TimesheetEntry entry) {
+			this.sequence = sequence;
+			this.id = id;
+			this.entry = entry;
+		}
+	}
+
+	@After
+	public void stopAll() throws Exception {
+		for (Persistence persistence : running) {
+			persistence.stop();
+		}
+	}
+
+	@Test
+	public void crashKeepsRecordsAndNumbering() throws IOException {
+		Path dir = temp.newFolder().toPath();
+		RecordsService recSvc = new RecordsService();
+		start(dir, recSvc);
+		change(recSvc, 60, 10);
+
+		RecordsService restored = new RecordsService();
+		start(crash(dir), restored);
+
+		assertSameState(recSvc, restored);
+	}
+
+	@Test
+	public void stopKeepsRecordsAndNumbering() throws Exception {
+		Path dir = temp.newFolder().toPath();
+		RecordsService recSvc = new RecordsService();
+		Persistence persistence = start(dir, recSvc);
+		change(recSvc, 60, 10);
+		persistence.snapshot();
+		change(recSvc, 10, 5);
+		running.remove(persistence);
+		persistence.stop();
+
+		RecordsService restored = new RecordsService();
+		start(dir, restored);
+		assertSameState(recSvc, restored);
+
+		// and numbering carries on from there
+		change(restored, 1, 1);
+		assertEquals(recSvc.getSequence() + 2, restored.getSequence());
+	}
+
+	@Test
+	public void logCutAtEveryOffsetRestoresTheChangesBeforeTheCut() throws Exception {
+		Path dir = temp.newFolder().toPath();
+		RecordsService recSvc = new RecordsService();
+		Persistence persistence = start(dir, recSvc);
+		change(recSvc, 20, 5);
+		persistence.snapshot();
+		long snapshotSequence = recSvc.getSequence();
+		change(recSvc, 6, 3);
+
+		Path crashed = crash(dir);
+		Path segment = latestSegment(crashed);
+		byte[] log = Files.readAllBytes(segment);
+		List<Integer> ends = MutationLogTest.entryEnds(log);
+		assertEquals(8, ends.size());
+		List<Long> sequences = sequences(log, ends);
+
+		for (int cut = 0; cut <= ends.get(ends.size() - 1); cut++) {
+			Path copy = copy(crashed);
+			Files.write(copy.resolve(segment.getFileName()), MutationLogTest.zeroedFrom(log, cut));
+			int complete = MutationLogTest.completeEntries(log, ends, cut);
+			long sequence = complete == 0 ? snapshotSequence : sequences.get(complete - 1);
+
+			RecordsService restored = new RecordsService();
+			Persistence reopened = start(copy, restored);
+			assertEquals("cut at " + cut, sequence, restored.getSequence());
+			assertEquals("cut at " + cut, recordsAsOf(sequence), records(restored));
+			assertEquals(recSvc.getFeedId(), restored.getFeedId());
+			running.remove(reopened);
+			reopened.stop();
+		}
+	}
+
+	@Test
+	public void crashAnywhereInASnapshotRestoresEverything() throws Exception {
+		Path dir = temp.newFolder().toPath();
+		RecordsService recSvc = new RecordsService();
+		Persistence persistence = start(dir, recSvc);
+		change(recSvc, 30, 5);
+		persistence.snapshot();
+		change(recSvc, 30, 5);
+		Path before = crash(dir);
+		persistence.snapshot();
+		change(recSvc, 10, 4);
+		Path after = crash(dir);
+		Path newSegment = latestSegment(after);
+
+		// rolled, snapshot half written: the old snapshot, every segment, and a temporary file
+		Path rolled = copy(before);
+		Files.copy(newSegment, rolled.resolve(newSegment.getFileName()));
+		Files.write(rolled.resolve("snapshot-tmp"), "half a snapshot".getBytes(StandardCharsets.UTF_8));
+		assertRestores(recSvc, rolled);
+
+		// snapshot in place, but nothing before it deleted yet
+		Path renamed = copy(before);
+		copyInto(after, renamed);
+		assertRestores(recSvc, renamed);
+
+		// done
+		assertRestores(recSvc, after);
+	}
+
+	@Test
+	public void changesInBothSnapshotAndLogAreRestoredOnce() throws Exception {
+		Path dir = temp.newFolder().toPath();
+		RecordsService recSvc = new RecordsService();
+		Persistence persistence = start(dir, recSvc);
+		change(recSvc, 30, 5);
+		persistence.snapshot();
+		// changes logged after the roll, and read by the snapshot too
+		change(recSvc, 10, 4);
+		Path crashed = crash(dir);
+		long firstSegment = Long.parseLong(latestSegment(crashed).getFileName().toString().replaceAll("\\D", ""));
+		Snapshot.write(crashed, firstSegment, recSvc);
+
+		assertRestores(recSvc, crashed);
+	}
+
+	@Test
+	public void idsOfDeletedRecordsAreNotReused() throws Exception {
+		Path dir = temp.newFolder().toPath();
+		RecordsService recSvc = new RecordsService();
+		// so the snapshot keeps no trace of the deletes
+		recSvc.setChangeRetention(0);
+		Persistence persistence = start(dir, recSvc);
+		change(recSvc, 1000, Integer.MAX_VALUE);
+		int top = ops.get(ops.size() - 1).id;
+		// the newest records, until the change log is compacted
+		for (int id = top; recSvc.getChangeFloor() < recSvc.getSequence(); id--) {
+			recSvc.deleteEntry(id);
+		}
+		// from the log
+		Path crashed = crash(dir);
+		persistence.snapshot();
+		running.remove(persistence);
+		persistence.stop();
+
+		for (Path restart : new Path[] { crashed, dir }) {
+			RecordsService restored = new RecordsService();
+			start(copy(restart), restored);
+			assertEquals(recSvc.getIdLimit(), restored.getIdLimit());
+			int id = restored.createEntry(entry(nextEntry++));
+			assertTrue(restart + ": " + id, id > top);
+		}
+	}
+
+	// Adds count entries, deleting every deleteEvery-th one added
+	private void change(RecordsService recSvc, int count, int deleteEvery) {
+		for (int i = 0; i < count; i++) {
+			TimesheetEntry entry = entry(nextEntry++);
+			int id = recSvc.createEntry(entry);
+			ops.add(new Op(recSvc.getSequence(), id, entry));
+			if ( i % deleteEvery == deleteEvery - 1 ) {
+				recSvc.deleteEntry(id);
+				ops.add(new Op(recSvc.getSequence(), id, null));
+			}
+		}
+	}
+
+	private static TimesheetEntry entry(int i) {
+		return new TimesheetEntry((i % 12 + 1) + "/" + (i % 28 + 1) + "/2017", "Client " + i % 5, "Proj " + i % 7,
+				"P" + i % 3, "Task " + i, 1 + i % 8, 1 + i % 8, i % 2 == 0 ? "Yes" : "No", "No", "Yes",
+				"First" + i % 11, "Last" + i % 13, i % 4 == 0 ? "" : "Dept " + i % 4, "Yes",
+				150, 50, 50 * (1 + i % 8), "USD", "");
+	}
+
+	private Persistence start(Path dir, RecordsService recSvc) throws IOException {
+		Persistence persistence = new Persistence(dir, SEGMENT_SIZE, NEVER, NEVER, recSvc);
+		persistence.start();
+		running.add(persistence);
+		return persistence;
+	}
+
+	private void assertRestores(RecordsService expected, Path dir) throws Exception {
+		RecordsService restored = new RecordsService();
+		Persistence persistence = start(copy(dir), restored);
+		assertSameState(expected, restored);
+		running.remove(persistence);
+		persistence.stop();
+	}
+
+	private void assertSameState(RecordsService expected, RecordsService restored) {
+		assertEquals(expected.getSequence(), restored.getSequence());
+		assertEquals(recordsAsOf(expected.getSequence()), records(restored));
+		assertEquals(records(expected), records(restored));
+		assertEquals(changes(expected), changes(restored));
+		assertEquals(expected.getFeedId(), restored.getFeedId());
+	}
+
+	// The records as of a sequence number, by id, from the changes made
+	private Map<Integer, TimesheetEntry> recordsAsOf(long sequence) {
+		Map<Integer, TimesheetEntry> records = new HashMap<>();
+		for (Op op : ops) {
+			if ( op.sequence > sequence ) {
+				break;
+			}
+			if ( op.entry == null ) {
+				records.remove(op.id);
+			} else {
+				records.put(op.id, op.entry);
+			}
+		}
+		return records;
+	}
+
+	private static Map<Integer, TimesheetEntry> records(RecordsService recSvc) {
+		Map<Integer, TimesheetEntry> records = new HashMap<>();
+		recSvc.forEachEntry((rec, id) -> records.put(id, rec));
+		return records;
+	}
+
+	private static List<String> changes(RecordsService recSvc) {
+		List<String> changes = new ArrayList<>();
+		recSvc.forEachChange(0, change -> changes.add(change.getSequence() + (change.isDelete() ? " delete " : " add ")
+				+ change.getId()));
+		return changes;
+	}
+
+	private static List<Long> sequences(byte[] log, List<Integer> ends) throws IOException {
+		List<Long> sequences = new ArrayList<>();
+		int start = 0;
+		for (int end : ends) {
+			byte[] payload = new byte[end - start - 8];
+			System.arraycopy(log, start + 8, payload, 0, payload.length);
+			sequences.add(EntryCodec.decode(payload).sequence);
+			start = end;
+		}
+		return sequences;
+	}
+
+	// The data directory as a process killed now would leave it
+	private Path crash(Path dir) throws IOException {
+		return copy(dir);
+	}
+
+	private Path copy(Path dir) throws IOException {
+		Path copy = temp.newFolder().toPath();
+		copyInto(dir, copy);
+		return copy;
+	}
+
+	private static void copyInto(Path from, Path to) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(from)) {
+			for (Path file : files) {
+				Path target = to.resolve(file.getFileName());
+				if ( !Files.exists(target) ) {
+					Files.copy(file, target);
+				}
+			}
+		}
+	}
+
+	private static Path latestSegment(Path dir) throws IOException {
+		Path latest = null;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "log-*.dat")) {
+			for (Path file : files) {
+				if ( latest == null || file.getFileName().toString().compareTo(latest.getFileName().toString()) > 0 ) {
+					latest = file;
+				}
+			}
+		}
+		return latest;
+	}
+}
@@ -0,0 +1,164 @@
+package timely.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.JsonFactory;
+
+import io.dropwizard.util.Duration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.After;
+import org.junit.Test;
+
+import timely.core.TimesheetEntry;
+import timely.service.RecordsService;
+import timely.tasks.CsvImporter;
+import timely.tasks.ImportReport;
+
+/**
+ * A CSV change feed reads back through the upload importer, and a consumer
+ * too far behind the change floor is told to start over.
+ */
+public class ChangeFeedTest {
+	private final SearchExecutor exports = new SearchExecutor("export", 1, 4, Duration.seconds(1), new MetricRegistry());
+
+	@After
+	public void stopExports() throws InterruptedException {
+		exports.stop();
+	}
+
+	@Test
+	public void csvReadsBackThroughTheImporter() throws Exception {
+		RecordsService recSvc = new RecordsService();
+		Set<TimesheetEntry> expected = new HashSet<>();
+		String[] awkward = { "plain", "Acme, Inc.", "Say \"hi\"", "two\nlines", "\"quoted\"", ",", "", "trailing\n" };
+		for (int i = 0; i < awkward.length; i++) {
+			TimesheetEntry entry = entry(i, awkward[i]);
+			recSvc.createEntry(entry);
+			expected.add(entry);
+		}
+		recSvc.deleteEntry(recSvc.createEntry(entry(99, "deleted")));
+
+		String csv = csv(recSvc, 0);
+		// the upload columns only; the delete is rejected, having none
+		String upload = csv.replaceAll(",\\d+,(add|delete),\\d+\n", "\n");
+		RecordsService imported = new RecordsService();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			ImportReport report = new CsvImporter(imported, executor, 1, 3, new MetricRegistry())
+					.importFrom(new StringReader(upload));
+			assertEquals(report.getRejects().toString(), expected.size(), report.getImported());
+			assertEquals(1, report.getRejected());
+		} finally {
+			executor.shutdown();
+		}
+		Set<TimesheetEntry> actual = new HashSet<>();
+		imported.forEachEntry((rec, id) -> actual.add(rec));
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void changesBelowTheFloorAreGone() throws Exception {
+		RecordsService recSvc = new RecordsService();
+		recSvc.setChangeRetention(10);
+		// enough changes to compact the log
+		for (int i = 0; i < 2000; i++) {
+			int id = recSvc.createEntry(entry(i, "Client " + i));
+			if ( i % 2 == 0 ) {
+				recSvc.deleteEntry(id);
+			}
+		}
+		long floor = recSvc.getChangeFloor();
+		assertTrue("floor " + floor, floor > 0);
+
+		Response gone = changes(recSvc, floor - 1);
+		assertEquals(Response.Status.GONE.getStatusCode(), gone.getStatus());
+		assertEquals(recSvc.getFeedId(), gone.getHeaderString(ChangeFeed.FEED_ID_HEADER));
+
+		Response caughtUp = changes(recSvc, floor);
+		assertEquals(Response.Status.OK.getStatusCode(), caughtUp.getStatus());
+		// a line per change, and a heading line
+		assertEquals(changeCount(recSvc, floor) + 1, stream(caughtUp).split("\n").length);
+
+		Response fromScratch = changes(recSvc, 0);
+		assertEquals(Response.Status.OK.getStatusCode(), fromScratch.getStatus());
+		assertEquals(changeCount(recSvc, 0) + 1, stream(fromScratch).split("\n").length);
+	}
+
+	private static long changeCount(RecordsService recSvc, long since) {
+		long[] count = new long[1];
+		recSvc.forEachChange(since, change -> count[0]++);
+		return count[0];
+	}
+
+	private static TimesheetEntry entry(int i, String client) {
+		return new TimesheetEntry("1/" + (i % 28 + 1) + "/2017", client, "Proj " + i % 7, "P" + i % 3, "Task " + i,
+				1.5, 1.5, "Yes", "No", "Yes", "First" + i % 11, "Last", "", "Yes", 150, 50, 75, "USD", "");
+	}
+
+	private static String csv(RecordsService recSvc, long since) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ChangeFeed.asCsv(recSvc, since).write(out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static String stream(Response response) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		((StreamingOutput) response.getEntity()).write(out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	// GET /timeEntry/changes?since=since, in CSV
+	private Response changes(RecordsService recSvc, long since) throws Exception {
+		TimesheetEntryResource resource = new TimesheetEntryResource(recSvc, null, null, new JsonFactory(), null,
+				null, exports, new MetricRegistry());
+		MultivaluedMap<String, String> query = new MultivaluedHashMap<>();
+		query.putSingle("since", Long.toString(since));
+		UriInfo uriInfo = stub(UriInfo.class, "getQueryParameters", query);
+		HttpHeaders headers = stub(HttpHeaders.class, "getAcceptableMediaTypes",
+				Collections.singletonList(MediaType.valueOf(ChangeFeed.CSV)));
+		CompletableFuture<Object> resumed = new CompletableFuture<>();
+		AsyncResponse response = (AsyncResponse) Proxy.newProxyInstance(AsyncResponse.class.getClassLoader(),
+				new Class<?>[] { AsyncResponse.class }, (proxy, method, args) -> {
+					if ( method.getName().equals("resume") ) {
+						return resumed.complete(args[0]);
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+		resource.changes(uriInfo, headers, response);
+		return (Response) resumed.get(10, TimeUnit.SECONDS);
+	}
+
+	// An implementation of type answering one method
+	private static <T> T stub(Class<T> type, String methodName, Object answer) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			if ( method.getName().equals(methodName) ) {
+				return answer;
+			}
+			throw new UnsupportedOperationException(method.getName());
+		}));
+	}
+}
@@ -0,0 +1,95 @@
+package timely.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.dropwizard.util.Duration;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Every request submitted is answered: with its response, what it threw
+ * (errors included), or 503 if the queue is full.
+ */
+public class SearchExecutorTest {
+	private final SearchExecutor searches = new SearchExecutor("search", 1, 1, Duration.seconds(5), new MetricRegistry());
+
+	@After
+	public void stopSearches() throws InterruptedException {
+		searches.stop();
+	}
+
+	@Test
+	public void answersWithTheResponse() throws Exception {
+		Response ok = Response.ok().build();
+		assertSame(ok, resumed(() -> ok));
+	}
+
+	@Test
+	public void answersWithWhatTheRequestThrew() throws Exception {
+		IllegalStateException exception = new IllegalStateException("thrown");
+		assertSame(exception, resumed(() -> {
+			throw exception;
+		}));
+		OutOfMemoryError error = new OutOfMemoryError("thrown");
+		assertSame(error, resumed(() -> {
+			throw error;
+		}));
+		// and the pool carries on without the thread the error ended
+		Response ok = Response.ok().build();
+		assertSame(ok, resumed(() -> ok));
+	}
+
+	@Test
+	public void turnsRequestsAwayWhenTheQueueIsFull() throws Exception {
+		CompletableFuture<Void> started = new CompletableFuture<>();
+		CompletableFuture<Void> release = new CompletableFuture<>();
+		Supplier<Response> blocked = () -> {
+			started.complete(null);
+			release.join();
+			return Response.ok().build();
+		};
+		CompletableFuture<Object> running = submit(blocked);
+		// off the queue, so there's room for one more
+		started.get(10, TimeUnit.SECONDS);
+		CompletableFuture<Object> queued = submit(blocked);
+
+		Response turnedAway = (Response) submit(blocked).get(10, TimeUnit.SECONDS);
+		assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), turnedAway.getStatus());
+		assertEquals("5", turnedAway.getHeaderString(HttpHeaders.RETRY_AFTER));
+
+		release.complete(null);
+		assertEquals(Response.Status.OK.getStatusCode(), ((Response) running.get(10, TimeUnit.SECONDS)).getStatus());
+		assertEquals(Response.Status.OK.getStatusCode(), ((Response) queued.get(10, TimeUnit.SECONDS)).getStatus());
+	}
+
+	private Object resumed(Supplier<Response> request) throws Exception {
+		return submit(request).get(10, TimeUnit.SECONDS);
+	}
+
+	// Submits a request, completing the future with what its response is resumed with
+	private CompletableFuture<Object> submit(Supplier<Response> request) {
+		CompletableFuture<Object> resumed = new CompletableFuture<>();
+		AsyncResponse response = (AsyncResponse) Proxy.newProxyInstance(AsyncResponse.class.getClassLoader(),
+				new Class<?>[] { AsyncResponse.class }, (proxy, method, args) -> {
+					if ( method.getName().equals("resume") ) {
+						return resumed.complete(args[0]);
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+		searches.submit(response, request);
+		return resumed;
+	}
+}
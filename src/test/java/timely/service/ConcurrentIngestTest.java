@@ -0,0 +1,145 @@
+package timely.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.After;
+import org.junit.Test;
+
+import timely.core.TimesheetEntry;
+import timely.store.RecordStore;
+
+/**
+ * Searches running alongside imports and deletes see each batch imported
+ * whole or not at all, and a batch being deleted as of one point in its
+ * deletion, never a mix of states; deleted records are reclaimed all the
+ * while. Each store type is ingested into for a fixed time; see
+ * ConcurrentIngestBenchmark (in benchmarks) for search latency under ingest.
+ *
+ * All the entries of batch k have project code Bk and department Dk, and
+ * nothing else has either, so a search for both terms (driven by one index
+ * and checked against the other) finds exactly the entries of batch k that
+ * its version holds.
+ */
+public class ConcurrentIngestTest {
+	private static final long DURATION = TimeUnit.SECONDS.toMillis(2);
+	private static final int BATCH_SIZE = 200;
+	// batches kept before the oldest is deleted
+	private static final int KEEP = 3;
+	private static final int READERS = 2;
+
+	private final ExecutorService threads = Executors.newFixedThreadPool(1 + READERS);
+	// batches whose import has started, and whose deletion has
+	private volatile int imports;
+	private volatile int deletions;
+	private volatile boolean done;
+
+	@After
+	public void stopThreads() {
+		threads.shutdownNow();
+	}
+
+	@Test
+	public void hashStoreReadsAreNeverTorn() throws Exception {
+		assertNoTornReads(RecordStore.Type.HASH);
+	}
+
+	@Test
+	public void columnarStoreReadsAreNeverTorn() throws Exception {
+		assertNoTornReads(RecordStore.Type.COLUMNAR);
+	}
+
+	private void assertNoTornReads(RecordStore.Type type) throws Exception {
+		MetricRegistry metrics = new MetricRegistry();
+		RecordsService recSvc = new RecordsService(RecordStore.create(type), Collections.emptyList(), metrics);
+		List<Future<Integer>> readers = new ArrayList<>();
+		for (int i = 0; i < READERS; i++) {
+			int seed = i;
+			readers.add(threads.submit(() -> read(recSvc, new SplittableRandom(seed))));
+		}
+		Future<?> writer = threads.submit(() -> write(recSvc));
+		Thread.sleep(DURATION);
+		done = true;
+		writer.get(10, TimeUnit.SECONDS);
+		for (Future<Integer> reader : readers) {
+			assertTrue("no searches ran", reader.get(10, TimeUnit.SECONDS) > 0);
+		}
+		assertTrue("only " + deletions + " batches deleted", deletions > 1);
+
+		for (int batch = 0; batch < imports; batch++) {
+			assertEquals("batch " + batch, batch < deletions ? 0 : BATCH_SIZE, search(recSvc, batch).size());
+		}
+		// with no view left open, every deleted record has been reclaimed
+		assertEquals(0, metrics.getGauges().get(MetricRegistry.name(RecordsService.class, "versions", "unreclaimed"))
+				.getValue());
+		assertEquals(Collections.emptyList(), recSvc.checkConsistency(1000));
+		assertEquals((imports - deletions) * BATCH_SIZE, recSvc.size());
+	}
+
+	// Imports batches, deleting (a record at a time, in order) all but the newest few
+	private void write(RecordsService recSvc) {
+		while ( !done ) {
+			int batch = imports++;
+			assertEquals(BATCH_SIZE, recSvc.importRecords(batch(batch)));
+			if ( batch >= KEEP ) {
+				int deleted = deletions++;
+				for (TimesheetEntry entry : batch(deleted)) {
+					assertTrue(recSvc.deleteEntry(entry));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches random batches until done, failing on a torn read.
+	 *
+	 * @return number of searches
+	 */
+	private int read(RecordsService recSvc, SplittableRandom random) {
+		int searches = 0;
+		while ( !done ) {
+			int batch = random.nextInt(imports + 1);
+			Set<TimesheetEntry> found = new HashSet<>(search(recSvc, batch));
+			List<TimesheetEntry> entries = batch(batch);
+			if ( batch >= deletions ) {
+				// not deleted from before the search ended: imported or not
+				if ( !found.isEmpty() && !found.equals(new HashSet<>(entries)) ) {
+					throw new AssertionError("Torn read: " + found.size() + " of the entries of batch " + batch);
+				}
+			} else if ( !found.equals(new HashSet<>(entries.subList(BATCH_SIZE - found.size(), BATCH_SIZE))) ) {
+				// deleted in order, so any one version holds the last few
+				throw new AssertionError("Torn read: " + found.size() + " entries of batch " + batch
+						+ ", not the last " + found.size());
+			}
+			searches++;
+		}
+		return searches;
+	}
+
+	private static List<TimesheetEntry> search(RecordsService recSvc, int batch) {
+		return recSvc.find(new Query().where("projectCode", "B" + batch).where("department", "D" + batch)).getEntries();
+	}
+
+	private static List<TimesheetEntry> batch(int batch) {
+		List<TimesheetEntry> entries = new ArrayList<>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			entries.add(new TimesheetEntry((i % 12 + 1) + "/" + (i % 28 + 1) + "/2017", "Client " + i % 5,
+					"Proj " + i % 7, "B" + batch, "Task " + i, 1 + i % 8, 1 + i % 8, "Yes", "No", "Yes",
+					"First" + i % 11, "Last", "D" + batch, "Yes", 150, 50, 50 * (1 + i % 8), "USD", ""));
+		}
+		return entries;
+	}
+}
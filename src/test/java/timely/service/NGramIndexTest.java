@@ -0,0 +1,123 @@
+package timely.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import timely.core.EntryField;
+import timely.core.TimesheetEntry;
+
+/**
+ * Looking a pattern up in the trigram index finds exactly the values
+ * checking every value would: pruning by shared trigrams (an edit touches
+ * at most 4 of them) never drops a match.
+ */
+public class NGramIndexTest {
+	private static final String[] WORDS = { "migration", "design", "testing", "support", "review", "smith",
+			"smyth", "mcdonald", "o'brien", "data", "platform", "an", "x" };
+	private static final String LETTERS = "abcdeimnorstxy";
+
+	private final FieldIndex tasks = new FieldIndex(EntryField.forName("task"));
+	private final NGramIndex ngrams = new NGramIndex(tasks);
+	private final List<String> values = new ArrayList<>();
+	private int nextId;
+
+	@Test
+	public void lookupFindsWhatCheckingEveryValueFinds() {
+		Random random = new Random(42);
+		for (String first : WORDS) {
+			add(first);
+			for (String second : WORDS) {
+				add(first + " " + second);
+			}
+		}
+
+		for (int i = 0; i < 3000; i++) {
+			String word = WORDS[random.nextInt(WORDS.length)];
+			String text = edited(word, random.nextInt(4), random);
+			assertLookup(TextMatch.fuzzy(text));
+			assertLookup(TextMatch.contains(text));
+			assertLookup(TextMatch.prefix(text));
+		}
+	}
+
+	@Test
+	public void valuesGoOnceNoRecordHoldsThem() {
+		int id = add("data migration");
+		int other = add("data migration");
+		assertEquals(1, ngrams.lookup(TextMatch.contains("migration")).size());
+
+		remove(id, "data migration");
+		assertEquals(1, ngrams.lookup(TextMatch.contains("migration")).size());
+		remove(other, "data migration");
+		assertTrue(ngrams.lookup(TextMatch.contains("migration")).isEmpty());
+		assertTrue(ngrams.lookup(TextMatch.fuzzy("migraiton")).isEmpty());
+		assertEquals(0, ngrams.distinctValues());
+	}
+
+	private void assertLookup(TextMatch match) {
+		Set<String> expected = new HashSet<>();
+		for (String value : values) {
+			if ( match.matches(value) ) {
+				expected.add(value);
+			}
+		}
+		assertEquals(match.toString(), expected, new HashSet<>(ngrams.lookup(match)));
+	}
+
+	// word with some random edits: characters inserted, deleted, replaced or swapped
+	private static String edited(String word, int edits, Random random) {
+		StringBuilder text = new StringBuilder(word);
+		for (int e = 0; e < edits && text.length() > 1; e++) {
+			int at = random.nextInt(text.length());
+			char c = LETTERS.charAt(random.nextInt(LETTERS.length()));
+			switch (random.nextInt(4)) {
+			case 0:
+				text.insert(at, c);
+				break;
+			case 1:
+				text.deleteCharAt(at);
+				break;
+			case 2:
+				text.setCharAt(at, c);
+				break;
+			default:
+				if ( at + 1 < text.length() ) {
+					char swapped = text.charAt(at);
+					text.setCharAt(at, text.charAt(at + 1));
+					text.setCharAt(at + 1, swapped);
+				}
+			}
+		}
+		return text.toString();
+	}
+
+	private int add(String task) {
+		int id = nextId++;
+		TimesheetEntry rec = entry(task);
+		tasks.add(id, rec);
+		ngrams.add(rec);
+		if ( !values.contains(task) ) {
+			values.add(task);
+		}
+		return id;
+	}
+
+	private void remove(int id, String task) {
+		TimesheetEntry rec = entry(task);
+		tasks.remove(id, rec);
+		ngrams.remove(rec);
+	}
+
+	private static TimesheetEntry entry(String task) {
+		return new TimesheetEntry("1/2/2017", "Acme", "Proj", "P1", task, 1.5, 1.5, "Yes", "No", "Yes",
+				"First", "Last", "Dept", "Yes", 150, 50, 75, "USD", "");
+	}
+}
@@ -0,0 +1,137 @@
+package timely.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import timely.core.TimesheetEntry;
+
+/**
+ * Searches come back sorted by key then id, and cursors page through them
+ * without gaps or repeats, even with records imported and deleted between
+ * pages.
+ */
+public class ResultOrderTest {
+	private final RecordsService recSvc = new RecordsService();
+	private final List<TimesheetEntry> entries = new ArrayList<>();
+
+	@Before
+	public void addEntries() {
+		for (int i = 0; i < 100; i++) {
+			// repeated keys, so ties are broken by id; some undated
+			TimesheetEntry entry = entry(i, i % 10 == 9 ? "" : (i % 12 + 1) + "/" + (i % 5 + 1) + "/2017");
+			recSvc.createEntry(entry);
+			entries.add(entry);
+		}
+	}
+
+	@Test
+	public void sortsByKeyThenId() {
+		assertEquals(sorted(Comparator.comparingDouble(TimesheetEntry::getHours), false),
+				recSvc.find(all().orderBy("hours", false)).getEntries());
+		assertEquals(sorted(Comparator.comparingDouble(TimesheetEntry::getHours), true),
+				recSvc.find(all().orderBy("hours", true)).getEntries());
+		assertEquals(sorted(Comparator.comparing(rec -> rec.getTask().toLowerCase(Locale.ROOT)), false),
+				recSvc.find(all().orderBy("task", false)).getEntries());
+		// undated first
+		assertEquals(sorted(Comparator.comparingLong(rec -> day(rec)), false),
+				recSvc.find(all().orderBy("date", false)).getEntries());
+		assertEquals(entries, recSvc.find(all()).getEntries());
+	}
+
+	@Test
+	public void pagesCoverEveryRecordOnce() {
+		for (String field : new String[] { null, "hours", "task", "date" }) {
+			for (boolean descending : new boolean[] { false, true }) {
+				for (int limit : new int[] { 1, 7, 100, 101 }) {
+					Query query = all().orderBy(field, descending);
+					assertEquals(field + " " + descending + " " + limit, recSvc.find(query).getEntries(),
+							pages(query, limit));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void pagesDontShiftWithChangesBetweenThem() {
+		Query query = all().orderBy("hours", false).limit(10);
+		Page first = recSvc.find(query);
+		TimesheetEntry last = first.getEntries().get(9);
+		// a delete before the cursor, and an add (of a tie with the last) after it
+		recSvc.deleteEntry(0);
+		recSvc.createEntry(entry(1000, "1/1/2017"));
+
+		Page second = recSvc.find(query.after(first.getNextCursor()));
+		List<TimesheetEntry> expected = new ArrayList<>();
+		List<TimesheetEntry> all = recSvc.find(all().orderBy("hours", false)).getEntries();
+		expected.addAll(all.subList(all.indexOf(last) + 1, all.indexOf(last) + 11));
+		assertEquals(expected, second.getEntries());
+	}
+
+	@Test
+	public void noLimitIsTheLargest() {
+		Page page = recSvc.find(all().orderBy("hours", true).limit(Integer.MAX_VALUE));
+		assertEquals(recSvc.find(all().orderBy("hours", true)).getEntries(), page.getEntries());
+		assertNull(page.getNextCursor());
+	}
+
+	@Test
+	public void cursorsAreForOneOrder() {
+		String cursor = recSvc.find(all().orderBy("hours", false).limit(5)).getNextCursor();
+		try {
+			recSvc.find(all().orderBy("hours", true).after(cursor));
+			fail("cursor taken for another order");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid cursor for sort order '-hours'", e.getMessage());
+		}
+		try {
+			recSvc.find(all().orderBy("hours", false).after("not a cursor!"));
+			fail("invalid cursor taken");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid cursor", e.getMessage());
+		}
+	}
+
+	// A query every record matches
+	private static Query all() {
+		return new Query().where("project", "Proj");
+	}
+
+	// Every page of a query, limit records at a time
+	private List<TimesheetEntry> pages(Query query, int limit) {
+		List<TimesheetEntry> all = new ArrayList<>();
+		String cursor = null;
+		do {
+			Page page = recSvc.find(query.limit(limit).after(cursor));
+			all.addAll(page.getEntries());
+			cursor = page.getNextCursor();
+		} while ( cursor != null );
+		query.limit(0).after(null);
+		return all;
+	}
+
+	// The entries by key, ties in id (here, insertion) order
+	private List<TimesheetEntry> sorted(Comparator<TimesheetEntry> byKey, boolean descending) {
+		List<TimesheetEntry> sorted = new ArrayList<>(entries);
+		sorted.sort(descending ? byKey.reversed() : byKey);
+		return sorted;
+	}
+
+	private static long day(TimesheetEntry rec) {
+		Integer day = DateIndex.parse(rec.getDate());
+		return day == null ? Long.MIN_VALUE : day;
+	}
+
+	private static TimesheetEntry entry(int i, String date) {
+		return new TimesheetEntry(date, "Client " + i % 3, "Proj", "P1", (i % 4 == 0 ? "task " : "Task ") + i % 13,
+				i % 8 * 0.5, i % 8 * 0.5, "Yes", "No", "Yes", "First", "Last", "Dept", "Yes", 150, 50, i, "USD", "");
+	}
+}
@@ -0,0 +1,78 @@
+package timely.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Patterns parse from their operators (unless escaped), and fuzzy ones
+ * allow as many edits as their length calls for, and no more.
+ */
+public class TextMatchTest {
+	@Test
+	public void operatorsMakePatterns() {
+		assertEquals(TextMatch.Kind.PREFIX, TextMatch.parse("prefix:Mc").getKind());
+		assertEquals(TextMatch.Kind.CONTAINS, TextMatch.parse("Contains:Migration").getKind());
+		assertEquals(TextMatch.Kind.FUZZY, TextMatch.parse("fuzzy:Smyth").getKind());
+		assertEquals("mc", TextMatch.parse("prefix:Mc").getText());
+		// only the first colon separates
+		assertEquals("a:b", TextMatch.parse("contains:a:b").getText());
+		assertFalse(TextMatch.isPattern("Acme"));
+		assertFalse(TextMatch.isPattern("http://example.com"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void otherTextIsNoPattern() {
+		TextMatch.parse("suffix:son");
+	}
+
+	@Test
+	public void escapedPatternsAreLiterals() {
+		assertFalse(TextMatch.isPattern("\\prefix:Mc"));
+		assertEquals("prefix:Mc", TextMatch.literal("\\prefix:Mc"));
+		assertEquals("\\Acme", TextMatch.literal("\\\\Acme"));
+		assertEquals("Acme", TextMatch.literal("Acme"));
+		assertEquals("", TextMatch.literal(""));
+	}
+
+	@Test
+	public void fuzzyEditsGrowWithLength() {
+		assertEquals(0, TextMatch.fuzzy("ab").getMaxEdits());
+		assertEquals(1, TextMatch.fuzzy("abc").getMaxEdits());
+		assertEquals(1, TextMatch.fuzzy("abcdefg").getMaxEdits());
+		assertEquals(2, TextMatch.fuzzy("abcdefgh").getMaxEdits());
+		assertEquals(0, TextMatch.prefix("abcdefgh").getMaxEdits());
+		assertEquals(0, TextMatch.contains("abcdefgh").getMaxEdits());
+	}
+
+	@Test
+	public void fuzzyMatchesWithinItsEdits() {
+		TextMatch smyth = TextMatch.fuzzy("Smyth");
+		assertTrue(smyth.matches("john smith"));   // replaced
+		assertTrue(smyth.matches("smth"));         // deleted
+		assertTrue(smyth.matches("smyyth"));       // inserted
+		assertTrue(smyth.matches("msyth"));        // swapped
+		assertFalse(smyth.matches("smiht"));       // two edits
+		assertFalse(smyth.matches("jones"));
+
+		TextMatch migration = TextMatch.fuzzy("migration");
+		assertTrue(migration.matches("data migraiton project"));  // swapped
+		assertTrue(migration.matches("mgraton"));                 // two deleted
+		assertFalse(migration.matches("mgrtin"));                // three deleted
+
+		// too short for edits: a plain substring match
+		TextMatch ab = TextMatch.fuzzy("ab");
+		assertTrue(ab.matches("cab"));
+		assertFalse(ab.matches("ba"));
+	}
+
+	@Test
+	public void prefixAndContains() {
+		assertTrue(TextMatch.prefix("Mc").matches("mcdonald"));
+		assertFalse(TextMatch.prefix("Mc").matches("amcdonald"));
+		assertTrue(TextMatch.contains("DON").matches("mcdonald"));
+		assertFalse(TextMatch.contains("donn").matches("mcdonald"));
+	}
+}
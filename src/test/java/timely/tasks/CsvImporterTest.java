@@ -0,0 +1,150 @@
+package timely.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.junit.Test;
+
+import timely.core.TimesheetEntry;
+import timely.service.RecordsService;
+
+/**
+ * Records are read as RFC 4180 has them (quoted fields holding commas, line
+ * breaks and doubled quotes), and a stray quote costs only its own line.
+ */
+public class CsvImporterTest {
+	private static final String HEADINGS = "Date,Client,Project,Project Code,Task,Hours,Hours Rounded,"
+			+ "Billable?,Invoiced?,Approved?,First Name,Last Name,Department,Employee?,"
+			+ "Billable Rate,Cost Rate,Cost Amount,Currency,External Reference URL";
+
+	@Test
+	public void readsALineARecord() throws IOException {
+		assertRecords("a,b\nc,d\n\ne", "a,b", 1, "c,d", 2, "", 3, "e", 4);
+	}
+
+	@Test
+	public void quotedLineBreaksJoinLines() throws IOException {
+		assertRecords("\"a\nb\",c\nd,\"e\n\nf\"\ng",
+				"\"a\nb\",c", 1,
+				"d,\"e\n\nf\"", 3,
+				"g", 6);
+	}
+
+	@Test
+	public void doubledQuotesDontCloseAField() throws IOException {
+		assertRecords("\"a\"\",\nb\"\"\",c\nd", "\"a\"\",\nb\"\"\",c", 1, "d", 3);
+		assertRecords("\"\"\"\"\nd", "\"\"\"\"", 1, "d", 2);
+	}
+
+	@Test
+	public void quotesInsideAFieldDontOpenOne() throws IOException {
+		assertRecords("a\"b,c\nd", "a\"b,c", 1, "d", 2);
+	}
+
+	@Test
+	public void unclosedQuoteAtTheEndResumesAtTheNextLine() throws IOException {
+		assertRecords("a\n\"b,c\nd\ne", "a", 1, "\"b,c", 2, "d", 3, "e", 4);
+	}
+
+	@Test
+	public void recordsRunningPastTheLimitResumeAtTheNextLine() throws IOException {
+		StringBuilder csv = new StringBuilder("x,\"stray\n");
+		int lines = 0;
+		while ( csv.length() <= CsvImporter.MAX_RECORD_LENGTH ) {
+			csv.append("line ").append(++lines).append(",plain\n");
+		}
+		csv.append("last");
+		CsvImporter.RecordReader reader = reader(csv.toString());
+
+		assertEquals("x,\"stray", reader.next());
+		for (int i = 1; i <= lines; i++) {
+			assertEquals("line " + i + ",plain", reader.next());
+			assertEquals(i + 1, reader.lineNumber());
+		}
+		assertEquals("last", reader.next());
+		assertNull(reader.next());
+	}
+
+	@Test
+	public void parsesQuotedFields() {
+		TimesheetEntry entry = CsvImporter.parseLine("1/2/2017,\"Acme, Inc.\",\"Say \"\"hi\"\"\",P1,\"Line\nbreak\","
+				+ "1.5,1.5,Yes,No,Yes,First,Last,\"\",Yes,150,50,75,USD,");
+		assertEquals("Acme, Inc.", entry.getClient());
+		assertEquals("Say \"hi\"", entry.getProject());
+		assertEquals("Line\nbreak", entry.getTask());
+		assertEquals("", entry.getDepartment());
+	}
+
+	@Test
+	public void rejectsMisplacedQuotes() {
+		String rest = ",P1,Task,1.5,1.5,Yes,No,Yes,First,Last,Dept,Yes,150,50,75,USD,";
+		assertRejected("Unclosed quote", "1/2/2017,\"Acme,Proj" + rest);
+		assertRejected("Text after closing quote", "1/2/2017,\"Acme\"x,Proj" + rest);
+		assertRejected("Quote inside unquoted field", "1/2/2017,Ac\"me,Proj" + rest);
+		assertRejected("Illegal # of fields", "1/2/2017,\"Acme\"" + rest);
+	}
+
+	@Test
+	public void importSkipsAStrayQuotesLineOnly() throws Exception {
+		List<String> lines = new ArrayList<>(Arrays.asList(HEADINGS));
+		for (int i = 0; i < 10; i++) {
+			lines.add("1/" + (i + 1) + "/2017,\"Client, " + i + "\",Proj,P1,\"Task\n" + i + "\","
+					+ "1.5,1.5,Yes,No,Yes,First,Last,Dept,Yes,150,50,75,USD,");
+		}
+		// line 22 opens a quote that's never closed
+		lines.add("1/1/2017,\"Client,Proj,P1,Task,1.5,1.5,Yes,No,Yes,First,Last,Dept,Yes,150,50,75,USD,");
+		for (int i = 10; i < 20; i++) {
+			lines.add("1/" + (i + 1) + "/2017,Client " + i + ",Proj,P1,Task,1.5,1.5,Yes,No,Yes,First,Last,Dept,Yes,"
+					+ "150,50,75,USD,");
+		}
+		RecordsService recSvc = new RecordsService();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CsvImporter importer = new CsvImporter(recSvc, executor, 1, 4, new MetricRegistry());
+			ImportReport report = importer.importFrom(new StringReader(String.join("\n", lines)));
+
+			assertEquals(20, report.getImported());
+			assertEquals(1, report.getRejected());
+			assertTrue(report.getRejects().get(0), report.getRejects().get(0).startsWith("line 22: Unclosed quote"));
+			assertEquals(20, recSvc.size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static CsvImporter.RecordReader reader(String csv) {
+		return new CsvImporter.RecordReader(new BufferedReader(new StringReader(csv)));
+	}
+
+	// expected: each record, then the number of its first line
+	private static void assertRecords(String csv, Object... expected) throws IOException {
+		CsvImporter.RecordReader reader = reader(csv);
+		for (int i = 0; i < expected.length; i += 2) {
+			assertEquals(expected[i], reader.next());
+			assertEquals(((Integer) expected[i + 1]).longValue(), reader.lineNumber());
+		}
+		assertNull(reader.next());
+	}
+
+	private static void assertRejected(String reason, String line) {
+		try {
+			CsvImporter.parseLine(line);
+			fail("parsed " + line);
+		} catch (CsvImporter.InvalidRecordException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(reason));
+		}
+	}
+}